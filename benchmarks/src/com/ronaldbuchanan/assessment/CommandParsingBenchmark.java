@@ -0,0 +1,76 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * per-command parsing cost: the original trim/split/toUpperCase/switch against the in-place CommandTokenizer
+ *
+ * both sides produce the same thing (the verb plus the argument Strings the database needs), so the
+ * difference is purely the parsing - run with "-prof gc" to see the allocation per command as well
+ *
+ * @author ronbuchanan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandParsingBenchmark {
+	@Param({"SET user:12345:status active", "get user:12345:status", "COUNT active", "ROLLBACK"})
+	String line;
+
+	private final CommandTokenizer tokenizer = new CommandTokenizer();
+	private static final CommandInterpreter.Verb[] VERBS = CommandInterpreter.Verb.values();
+
+	@Benchmark
+	public void split(Blackhole bh) {
+		if (line.trim().length()==0)
+			return;
+
+		String[] input = line.split(" ");
+		switch (input[0].toUpperCase()) {
+		case "SET":
+			bh.consume(input[1]);
+			bh.consume(input[2]);
+			break;
+		case "GET":
+		case "COUNT":
+			bh.consume(input[1]);
+			break;
+		default:
+			bh.consume(input.length);
+		}
+	}
+
+	@Benchmark
+	public void tokenizer(Blackhole bh) {
+		if (tokenizer.reset(line)==0)
+			return;
+
+		switch (tokenizer.verb(VERBS)) {
+		case SET:
+			bh.consume(tokenizer.token(1));
+			bh.consume(tokenizer.token(2));
+			break;
+		case GET:
+		case COUNT:
+			bh.consume(tokenizer.token(1));
+			break;
+		default:
+			bh.consume(tokenizer.count());
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * throughput of one database shared by many threads: the concurrent engine against the undo log engine
+ * behind a single lock (the only way to share it safely)
+ *
+ * runs on every core by default, compare against a single thread to see the scaling:
+ * 		java -jar benchmarks/target/benchmarks.jar ConcurrentThroughput -t 1
+ * 		java -jar benchmarks/target/benchmarks.jar ConcurrentThroughput -t max
+ *
+ * @author ronbuchanan
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(Threads.MAX)
+@Fork(1)
+public class ConcurrentThroughputBenchmark {
+	@Param({"concurrent", "locked"})
+	String engine;
+
+	@Param({"100000"})
+	int names;
+
+	@Param({"1000"})
+	int values;
+
+	private InMemDB db;
+	private String[] nameStrings;
+	private String[] valueStrings;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		db = "locked".equals(engine) ? new Locked(new ToyInMemDB()) : new ConcurrentInMemDB();
+		nameStrings = new String[names];
+		valueStrings = new String[values];
+		for (int i=0; i<values; i++)
+			valueStrings[i] = "value" + i;
+		for (int i=0; i<names; i++) {
+			nameStrings[i] = "name" + i;
+			db.set(nameStrings[i], valueStrings[i % values]);
+		}
+	}
+
+	@Benchmark
+	public String get() {
+		return db.get(nameStrings[ThreadLocalRandom.current().nextInt(names)]);
+	}
+
+	@Benchmark
+	public int count() {
+		return db.count(valueStrings[ThreadLocalRandom.current().nextInt(values)]);
+	}
+
+	@Benchmark
+	public void set() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		db.set(nameStrings[random.nextInt(names)], valueStrings[random.nextInt(values)]);
+	}
+
+	/**
+	 * 95% reads, 5% writes
+	 */
+	@Benchmark
+	public Object mixed() {
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		String name = nameStrings[random.nextInt(names)];
+		if (random.nextInt(100)<5) {
+			db.set(name, valueStrings[random.nextInt(values)]);
+			return null;
+		}
+		return db.get(name);
+	}
+
+	/**
+	 * the baseline - every operation under the same lock
+	 */
+	private static final class Locked implements InMemDB {
+		private final InMemDB db;
+
+		Locked(InMemDB db) {
+			this.db = db;
+		}
+
+		@Override public synchronized void set(String name, String value) { db.set(name, value); }
+		@Override public synchronized void delete(String name) { db.delete(name); }
+		@Override public synchronized String lookup(String name) { return db.lookup(name); }
+		@Override public synchronized int count(String value) { return db.count(value); }
+		@Override public synchronized int size() { return db.size(); }
+		@Override public synchronized int distinctValues() { return db.distinctValues(); }
+		@Override public synchronized void begin() { db.begin(); }
+		@Override public synchronized boolean rollback() { return db.rollback(); }
+		@Override public synchronized void commit() { db.commit(); }
+		@Override public synchronized int transactionDepth() { return db.transactionDepth(); }
+		@Override public synchronized Iterable<java.util.Map.Entry<String,String>> snapshot() { return db.snapshot(); }
+		@Override public synchronized void dump(java.io.PrintWriter out) { db.dump(out); }
+	}
+}
@@ -0,0 +1,112 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * the open addressing, off-heap, dictionary encoded and radix tree stores against the HashMap baseline:
+ * lookups (hits and misses) and overwrites on a table too big for the caches, names picked at random so
+ * every operation is a cache miss or two
+ *
+ * the setup also prints the heap taken by the table, divided by the number of entries - each entry is
+ * loaded with its own copy of its name and of one of 1000 values, the way SET hands over fresh Strings
+ * parsed from the command (so a store that doesn't keep the name Strings gets the credit for it).  The
+ * names are flat (name123) or hierarchical (user:30:cart).
+ *
+ * @author ronbuchanan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class KeyStoreBenchmark {
+	@Param({"hash", "open", "offheap", "dictionary", "radix"})
+	String store;
+
+	@Param({"1000000"})
+	int entries;
+
+	@Param({"flat", "hierarchical"})
+	String keys;
+
+	private KeyStore keyStore;
+	private String[] names;
+	private String[] missing;
+	private String[] values;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		names = new String[entries];
+		missing = new String[entries];
+		values = new String[1000];
+		for (int i=0; i<values.length; i++)
+			values[i] = "value" + i;
+		String[] fields = {"session", "cart", "profile", "settings"};
+		for (int i=0; i<entries; i++) {
+			names[i] = "flat".equals(keys) ? "name" + i : "user:" + i/fields.length + ":" + fields[i % fields.length];
+			missing[i] = "flat".equals(keys) ? "missing" + i : "user:" + i/fields.length + ":orders" + i % fields.length;
+			names[i].hashCode();
+			missing[i].hashCode();
+		}
+
+		long before = heapUsed();
+		keyStore = KeyStore.create(store);
+		for (int i=0; i<entries; i++)
+			keyStore.put(new String(names[i].toCharArray()), new String(values[i % values.length].toCharArray()));
+		long after = heapUsed();
+		System.out.printf("%n  %s: %d entries, %.1f bytes per entry%n", store, keyStore.size(), (after-before)/(double) entries);
+
+		//visit the names in a random order, so the benchmark isn't walking the table in sequence
+		Random random = new Random(42);
+		Collections.shuffle(Arrays.asList(names), random);
+		Collections.shuffle(Arrays.asList(missing), random);
+	}
+
+	private int nextIndex() {
+		int i = next++;
+		if (next==entries)
+			next = 0;
+		return i;
+	}
+
+	@Benchmark
+	public String get() {
+		return keyStore.get(names[nextIndex()]);
+	}
+
+	@Benchmark
+	public String getMissing() {
+		return keyStore.get(missing[nextIndex()]);
+	}
+
+	@Benchmark
+	public String overwrite() {
+		int i = nextIndex();
+		return keyStore.put(names[i], values[i % values.length]);
+	}
+
+	private static long heapUsed() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i=0; i<3; i++)
+			System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,72 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * an undo log engine (ToyInMemDB, as it starts by default) loaded with name0... each holding one of value0...,
+ * and a fixed random sequence (the same every run) of names and values to pick - shared by OperationBenchmark
+ * and TransactionBenchmark, so they vary the key space and the number of distinct values the same way
+ *
+ * @author ronbuchanan
+ */
+@State(Scope.Thread)
+public class LoadedDatabase {
+	private static final int PICKS = 1 << 20;
+
+	@Param({"10000", "1000000"})
+	int names;
+
+	@Param({"10", "100000"})
+	int values;
+
+	ToyInMemDB db;
+	private String[] nameStrings;
+	private String[] valueStrings;
+	private int[] namePicks;
+	private int[] valuePicks;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		db = new ToyInMemDB();
+		nameStrings = new String[names];
+		valueStrings = new String[values];
+		for (int i=0; i<values; i++)
+			valueStrings[i] = "value" + i;
+		for (int i=0; i<names; i++) {
+			nameStrings[i] = "name" + i;
+			db.set(nameStrings[i], valueStrings[i % values]);
+		}
+
+		Random random = new Random(42);
+		namePicks = new int[PICKS];
+		valuePicks = new int[PICKS];
+		for (int i=0; i<PICKS; i++) {
+			namePicks[i] = random.nextInt(names);
+			valuePicks[i] = random.nextInt(values);
+		}
+	}
+
+	/**
+	 * move on to the next pick
+	 */
+	int next() {
+		int i = next;
+		next = (next+1) & (PICKS-1);
+		return i;
+	}
+
+	String name(int pick) {
+		return nameStrings[namePicks[pick]];
+	}
+
+	String value(int pick) {
+		return valueStrings[valuePicks[pick]];
+	}
+}
@@ -0,0 +1,52 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * the single name operations of the undo log engine (ToyInMemDB, as it starts by default) against a loaded
+ * database, by the number of names and the number of distinct values they hold
+ *
+ * names and values are picked from LoadedDatabase's fixed random sequence, so set moves the value counts
+ * around the way real use would.  delete puts the name straight back so the database doesn't drain,
+ * which makes it a delete plus a set (compare it with set).
+ *
+ * @author ronbuchanan
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class OperationBenchmark {
+	@Benchmark
+	public void set(LoadedDatabase loaded) {
+		int i = loaded.next();
+		loaded.db.set(loaded.name(i), loaded.value(i));
+	}
+
+	@Benchmark
+	public String get(LoadedDatabase loaded) {
+		return loaded.db.get(loaded.name(loaded.next()));
+	}
+
+	@Benchmark
+	public void delete(LoadedDatabase loaded) {
+		int i = loaded.next();
+		String name = loaded.name(i);
+		loaded.db.delete(name);
+		loaded.db.set(name, loaded.value(i));
+	}
+
+	@Benchmark
+	public int count(LoadedDatabase loaded) {
+		return loaded.db.count(loaded.value(loaded.next()));
+	}
+}
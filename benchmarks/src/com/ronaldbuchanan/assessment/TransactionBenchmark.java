@@ -0,0 +1,71 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * whole transactions on the undo log engine: begin a number of nested levels, spread the writes across them,
+ * then roll every level back or commit
+ *
+ * untransacted does the same writes with no transaction open, so the difference is what the undo log (and
+ * the rollback itself) costs.  Each operation is one whole transaction, so divide by the number of writes
+ * for the cost per write.  The database is a LoadedDatabase, as in OperationBenchmark, so the two vary the key
+ * space and the number of distinct values alike and can be compared.
+ *
+ * @author ronbuchanan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class TransactionBenchmark {
+	@Param({"1", "16", "256"})
+	int writes;
+
+	@Param({"1", "4"})
+	int depth;
+
+	/**
+	 * the writes, level by level - begin() opens each level first
+	 */
+	private void write(LoadedDatabase loaded, boolean begin) {
+		for (int level=0; level<depth; level++) {
+			if (begin)
+				loaded.db.begin();
+			for (int w=level; w<writes; w+=depth) {
+				int i = loaded.next();
+				loaded.db.set(loaded.name(i), loaded.value(i));
+			}
+		}
+	}
+
+	@Benchmark
+	public void rollback(LoadedDatabase loaded) {
+		write(loaded, true);
+		for (int level=0; level<depth; level++)
+			loaded.db.rollback();
+	}
+
+	@Benchmark
+	public void commit(LoadedDatabase loaded) {
+		write(loaded, true);
+		loaded.db.commit();
+	}
+
+	@Benchmark
+	public void untransacted(LoadedDatabase loaded) {
+		write(loaded, false);
+	}
+}
@@ -0,0 +1,65 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * soak test for the value index: a fixed set of names is overwritten with values that are never reused
+ * (think timestamps or uuids), so memory only stays flat if the index lets go of values nobody uses anymore
+ *
+ * after every iteration it prints the live size of the index and the heap in use after a gc - both should
+ * level off at the size of the key space instead of growing with the number of writes (the small heap makes
+ * a leak show up as an OutOfMemoryError rather than a slow drift)
+ *
+ * @author ronbuchanan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 10, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx256m"})
+public class ValueIndexSoakBenchmark {
+	@Param({"undo", "snapshot"})
+	String engine;
+
+	@Param({"10000"})
+	int names;
+
+	private InMemDB db;
+	private long sequence;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		db = "snapshot".equals(engine) ? new SnapshotInMemDB() : new ToyInMemDB();
+		sequence = 0;
+	}
+
+	@Benchmark
+	public void churn() {
+		long n = sequence++;
+		db.set("name" + (n % names), Long.toString(n));
+	}
+
+	@TearDown(Level.Iteration)
+	public void report() {
+		System.gc();
+		Runtime runtime = Runtime.getRuntime();
+		long used = runtime.totalMemory() - runtime.freeMemory();
+		System.out.printf("%n  writes: %d, distinct values: %d, heap used after gc: %d KB%n",
+				sequence, db.distinctValues(), used/1024);
+	}
+}
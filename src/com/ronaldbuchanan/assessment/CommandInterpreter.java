@@ -0,0 +1,266 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Iterator;
+
+/**
+ * the (pretty dumb) command language of the toy database - runs one line at a time against an InMemDB
+ *
+ * lines are tokenized in place (see CommandTokenizer), so the only Strings created per command are the
+ * arguments handed to the database
+ *
+ * all output goes through PrintWriters, so the same interpreter serves the interactive console (flushed
+ * after every line) and batch mode (one big buffer, flushed when it fills up, whenever the input runs dry and
+ * at the end)
+ *
+ * @author ronbuchanan
+ */
+public class CommandInterpreter {
+	private final InMemDB db;
+	private final PrintWriter out;
+	private final PrintWriter err;
+	private final boolean debug;
+	private final Snapshotter snapshots;
+	private final CommandTokenizer tokenizer = new CommandTokenizer();
+	private final CommandStats stats = new CommandStats();
+
+	/**
+	 * the commands, matched against the first token of a line ignoring case
+	 */
+	enum Verb { SET, GET, DELETE, COUNT, KEYS_WITH, SCAN, PREFIX, BEGIN, ROLLBACK, COMMIT, SNAPSHOT, STATS, MEMORY, END, DUMP }
+	private static final Verb[] VERBS = Verb.values();
+
+	/**
+	 * @param db
+	 * @param out - command output
+	 * @param err - input errors
+	 * @param debug - enables DUMP
+	 */
+	public CommandInterpreter(InMemDB db, PrintWriter out, PrintWriter err, boolean debug) {
+		this(db, out, err, debug, null);
+	}
+
+	/**
+	 * @param db
+	 * @param out - command output
+	 * @param err - input errors
+	 * @param debug - enables DUMP
+	 * @param snapshots - enables SNAPSHOT and the background snapshots (null if snapshots aren't configured)
+	 */
+	public CommandInterpreter(InMemDB db, PrintWriter out, PrintWriter err, boolean debug, Snapshotter snapshots) {
+		this.db = db;
+		this.out = out;
+		this.err = err;
+		this.debug = debug;
+		this.snapshots = snapshots;
+	}
+
+	/**
+	 * run the commands from a script back to back - stops at END or at the end of the input
+	 *
+	 * the output is only flushed when there's nothing more to read, so a pipelined client gets all the replies
+	 * to a burst of commands at once, and one waiting on each reply still gets it
+	 * @param in
+	 */
+	public void run(BufferedReader in) throws IOException {
+		String line;
+		while ((line = in.readLine())!=null) {
+			if (!execute(line))
+				break;
+			if (!in.ready())
+				out.flush();
+		}
+		out.flush();
+	}
+
+	/**
+	 * execute a single command line
+	 * @param sysin
+	 * @return false once the session has been ended
+	 */
+	public boolean execute(String sysin) {
+		if (snapshots!=null)
+			snapshots.poll(db);
+		if (tokenizer.reset(sysin)==0)
+			return true;
+
+		int arguments = tokenizer.count()-1;
+		Verb verb = tokenizer.verb(VERBS);
+		if (verb==null) {
+			out.println("unrecognized function: " + tokenizer.token(0));
+			return true;
+		}
+
+		long started = System.nanoTime();
+		try {
+			switch (verb) {
+			case SET:
+				{
+					if (arguments!=2)
+						throw new BadInput("improper command: SET accepts 2 parameters: [name] and [value]");
+
+					String name = tokenizer.token(1);
+					String value = tokenizer.token(2);
+					db.set(name, value);
+				}
+				break;
+			case GET:
+				{
+					if (arguments!=1)
+						throw new BadInput("improper command: GET accepts 1 parameter: [name]");
+					String name = tokenizer.token(1);
+					String value = db.get(name);
+					out.println(value);
+				}
+				break;
+			case DELETE:
+				{
+					if (arguments!=1)
+						throw new BadInput("improper command: DELETE accepts 1 parameter: [name]");
+
+					String name = tokenizer.token(1);
+					db.delete(name);
+				}
+				break;
+			case COUNT:
+				{
+					if (arguments!=1)
+						throw new BadInput("improper command: COUNT accepts 1 parameter: [value]");
+
+					String value = tokenizer.token(1);
+					int count = db.count(value);
+					out.println(count);
+				}
+				break;
+			case KEYS_WITH:
+				{
+					if (arguments!=1)
+						throw new BadInput("improper command: KEYS_WITH accepts 1 parameter: [value]");
+
+					String value = tokenizer.token(1);
+					Iterator<String> names = db.keysWith(value);
+					while (names.hasNext())
+						out.println(names.next());
+				}
+				break;
+			case SCAN:
+				{
+					if (arguments!=2)
+						throw new BadInput("improper command: SCAN accepts 2 parameters: [start] and [end]");
+
+					String start = tokenizer.token(1);
+					String end = tokenizer.token(2);
+					Iterator<String> names = db.scan(start, end);
+					while (names.hasNext())
+						out.println(names.next());
+				}
+				break;
+			case PREFIX:
+				{
+					if (arguments!=1)
+						throw new BadInput("improper command: PREFIX accepts 1 parameter: [prefix]");
+
+					String prefix = tokenizer.token(1);
+					Iterator<String> names = db.prefix(prefix);
+					while (names.hasNext())
+						out.println(names.next());
+				}
+				break;
+			case BEGIN:
+				{
+					if (arguments!=0)
+						throw new BadInput("improper command: BEGIN does not accept any parameters");
+					db.begin();
+				}
+				break;
+			case ROLLBACK:
+				{
+					if (arguments!=0)
+						throw new BadInput("improper command: ROLLBACK does not accept any parameters");
+					//the number of undo records is taken first, the rollback replays (and discards) them
+					int undone = db.transactionWrites();
+					if (!db.rollback())
+						out.println("TRANSACTION NOT FOUND");
+					else if (undone>=0)
+						stats.rollback(undone);
+				}
+				break;
+			case COMMIT:
+				{
+					if (arguments!=0)
+						throw new BadInput("improper command: COMMIT does not accept any parameters");
+					db.commit();
+				}
+				break;
+			case SNAPSHOT:
+				{
+					if (arguments!=0)
+						throw new BadInput("improper command: SNAPSHOT does not accept any parameters");
+					if (snapshots==null)
+						throw new UnsupportedOperationException("SNAPSHOT requires a snapshot file (start with -save [path])");
+					if (db.transactionDepth()>0) {
+						out.println("SNAPSHOT NOT ALLOWED IN A TRANSACTION");
+						break;
+					}
+					try {
+						out.println("SNAPSHOT SAVED: " + snapshots.snapshot(db) + " entries");
+					} catch (IOException e) {
+						out.println("SNAPSHOT FAILED: " + e.getMessage());
+					}
+				}
+				break;
+			case STATS:
+				{
+					if (arguments==0) {
+						stats.print(out);
+						return true;
+					}
+					if (arguments!=1 || !tokenizer.token(1).equalsIgnoreCase("RESET"))
+						throw new BadInput("improper command: STATS accepts 1 optional parameter: RESET");
+					stats.reset();
+					out.println("STATS RESET");
+				}
+				return true;
+			case MEMORY:
+				{
+					if (arguments!=0)
+						throw new BadInput("improper command: MEMORY does not accept any parameters");
+					db.memory(out);
+				}
+				return true;
+			case END:
+				out.println("\nsession complete, terminating ...");
+				return false;
+			case DUMP:
+				if (debug) { db.dump(out); break; }
+			default:
+				out.println("unrecognized function: " + tokenizer.token(0));
+				return true;
+			}
+			//only commands that succeeded are counted
+			stats.record(verb, System.nanoTime()-started);
+		} catch (BadInput e) {
+			err.println(e.getMessage());
+		} catch (UnsupportedOperationException e) {
+			out.println(e.getMessage());
+		} catch (TransactionConflictException e) {
+			out.println(e.getMessage());
+		} catch (MemoryLimitException e) {
+			out.println(e.getMessage());
+		}
+		return true;
+	}
+
+	/**
+	 * utility exception to clean up the handling of input errors
+	 * @author ronbuchanan
+	 */
+	private static class BadInput extends Exception {
+		private static final long serialVersionUID = -9124882605241878066L;
+		public BadInput(String msg){
+			super(msg);
+		}
+	}
+}
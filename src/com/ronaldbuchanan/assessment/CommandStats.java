@@ -0,0 +1,62 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.PrintWriter;
+
+/**
+ * what the command interpreter has been doing: a count and a latency histogram per verb, and the number of
+ * undo records each rollback replayed (a big rollback is the slowest thing the database does)
+ *
+ * recording is a System.nanoTime() either side of the command and an increment in a fixed array - nothing
+ * is allocated, so it is always on.  The latency covers the whole command, including writing its output.
+ *
+ * one per interpreter, so not thread safe
+ *
+ * @author ronbuchanan
+ */
+final class CommandStats {
+	private static final CommandInterpreter.Verb[] VERBS = CommandInterpreter.Verb.values();
+
+	private final LatencyHistogram[] latencies = new LatencyHistogram[VERBS.length];
+	private final LatencyHistogram rollbacks = new LatencyHistogram();
+
+	CommandStats() {
+		for (int i=0; i<latencies.length; i++)
+			latencies[i] = new LatencyHistogram();
+	}
+
+	/**
+	 * @param verb
+	 * @param nanos - how long the command took
+	 */
+	void record(CommandInterpreter.Verb verb, long nanos) {
+		latencies[verb.ordinal()].record(nanos);
+	}
+
+	/**
+	 * @param undone - the number of undo records a rollback replayed
+	 */
+	void rollback(int undone) {
+		rollbacks.record(undone);
+	}
+
+	void reset() {
+		for (LatencyHistogram latency : latencies)
+			latency.reset();
+		rollbacks.reset();
+	}
+
+	/**
+	 * the latencies of every verb used since the last reset, in microseconds, then the rollback sizes
+	 * @param out
+	 */
+	void print(PrintWriter out) {
+		out.println(LatencyHistogram.header("microseconds"));
+		for (int i=0; i<VERBS.length; i++)
+			if (latencies[i].count()>0)
+				out.println(latencies[i].summary(VERBS[i].toString(), 1e3));
+		if (rollbacks.count()>0) {
+			out.println(LatencyHistogram.header("undo records per rollback"));
+			out.println(rollbacks.summary("ROLLBACK", 1));
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.ronaldbuchanan.assessment;
+
+/**
+ * splits a command line into whitespace separated tokens without copying anything - the tokens are just
+ * offsets into the line, the verb is matched in place (ignoring case), and a String is only created for
+ * an argument that is actually asked for
+ *
+ * one instance is reused for every line, so it isn't thread safe
+ *
+ * @author ronbuchanan
+ */
+final class CommandTokenizer {
+	//no command takes more than a couple of arguments, anything past this is only counted
+	private static final int MAX_TOKENS = 8;
+
+	private final int[] starts = new int[MAX_TOKENS];
+	private final int[] ends = new int[MAX_TOKENS];
+	private String line;
+	private int count;
+
+	/**
+	 * tokenize a new line
+	 * @param line
+	 * @return the number of tokens
+	 */
+	int reset(String line) {
+		this.line = line;
+		count = 0;
+
+		int length = line.length();
+		int pos = 0;
+		while (true) {
+			while (pos<length && line.charAt(pos)<=' ')
+				pos++;
+			if (pos==length)
+				return count;
+
+			int start = pos;
+			while (pos<length && line.charAt(pos)>' ')
+				pos++;
+			if (count<MAX_TOKENS) {
+				starts[count] = start;
+				ends[count] = pos;
+			}
+			count++;
+		}
+	}
+
+	/**
+	 * the number of tokens on the line
+	 */
+	int count() {
+		return count;
+	}
+
+	/**
+	 * match the first token against a set of verbs (by constant name, ignoring case)
+	 * @param verbs
+	 * @return the matching verb, null if there isn't one
+	 */
+	<E extends Enum<E>> E verb(E[] verbs) {
+		if (count==0)
+			return null;
+
+		int length = ends[0]-starts[0];
+		char first = Character.toUpperCase(line.charAt(starts[0]));
+		for (E verb : verbs) {
+			String name = verb.name();
+			//cheap length and first letter checks before the full case-insensitive compare
+			if (name.length()==length && name.charAt(0)==first && line.regionMatches(true, starts[0], name, 0, length))
+				return verb;
+		}
+		return null;
+	}
+
+	/**
+	 * get a token as a String (this is the only place that allocates)
+	 * @param index - 0 is the verb
+	 */
+	String token(int index) {
+		return line.substring(starts[index], ends[index]);
+	}
+}
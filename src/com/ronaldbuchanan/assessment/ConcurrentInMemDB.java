@@ -0,0 +1,173 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * thread safe engine - one instance can be shared by any number of threads
+ *
+ * get() and count() are plain (lock free) ConcurrentHashMap reads.  set() and delete() go through
+ * ConcurrentHashMap.compute(), which locks just the bin holding the name, so the old value => new value
+ * transition and the matching count updates happen atomically per name while writes to other names proceed
+ * in parallel.  The counts are updated with merge()/computeIfPresent(), which are atomic per value and (unlike
+ * LongAdder cells) let a value be dropped the moment its count reaches zero.
+ *
+ * transactions belong to the thread that began them, each thread having its own undo log.  They are not
+ * isolated from each other: other threads see uncommitted writes, and a rollback restores the pre-images
+ * even if another thread has written the same name since.
+ *
+ * @author ronbuchanan
+ */
+public class ConcurrentInMemDB implements InMemDB {
+	/*
+	 * Principal data structures:
+	 *
+	 * 		database - the key-value map
+	 *
+	 * 		valueCount - contains the counts of the values (values no longer in use are removed)
+	 *
+	 * 		transactionLog - each thread's undo log
+	 */
+
+	private final ConcurrentHashMap<String,String> database = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String,Integer> valueCount = new ConcurrentHashMap<>();
+	private final ThreadLocal<UndoLog> transactionLog = ThreadLocal.withInitial(UndoLog::new);
+
+	public ConcurrentInMemDB() {
+	}
+
+	@Override
+	public void set(String name, String value) {
+		UndoLog log = transactionLog.get();
+		database.compute(name, (n, oldValue) -> {
+			if (value.equals(oldValue))
+				return oldValue; //no change, it's a push
+
+			if (log.depth()>0)
+				log.record(name, oldValue, value);
+
+			if (oldValue!=null)
+				countDown(oldValue);
+			countUp(value);
+			return value;
+		});
+	}
+
+	@Override
+	public void delete(String name) {
+		UndoLog log = transactionLog.get();
+		database.computeIfPresent(name, (n, oldValue) -> {
+			if (log.depth()>0)
+				log.record(name, oldValue, null);
+
+			countDown(oldValue);
+			return null;
+		});
+	}
+
+	@Override
+	public String lookup(String name) {
+		return database.get(name);
+	}
+
+	@Override
+	public int count(String value) {
+		return valueCount.getOrDefault(value, 0);
+	}
+
+	@Override
+	public int size() {
+		return database.size();
+	}
+
+	@Override
+	public int distinctValues() {
+		return valueCount.size();
+	}
+
+	private void countUp(String value) {
+		valueCount.merge(value, 1, Integer::sum);
+	}
+
+	private void countDown(String value) {
+		valueCount.computeIfPresent(value, (v, count) -> count==1 ? null : count-1);
+	}
+
+	@Override
+	public void begin() {
+		transactionLog.get().begin();
+	}
+
+	@Override
+	public boolean rollback() {
+		UndoLog log = transactionLog.get();
+		if (log.depth()==0)
+			return false;
+
+		int start = log.levelStart(log.depth());
+		for (int record = log.size()-1; record>=start; record--) {
+			String oldValue = log.oldValue(record);
+
+			//restore against whatever is there now, so the counts stay right even if another thread wrote it
+			database.compute(log.name(record), (name, current) -> {
+				if (current!=null)
+					countDown(current);
+				if (oldValue!=null)
+					countUp(oldValue);
+				return oldValue;
+			});
+		}
+
+		log.end();
+		return true;
+	}
+
+	@Override
+	public void commit() {
+		transactionLog.get().clear();
+	}
+
+	@Override
+	public int transactionDepth() {
+		return transactionLog.get().depth();
+	}
+
+	@Override
+	public int transactionWrites() {
+		UndoLog log = transactionLog.get();
+		return log.depth()==0 ? 0 : log.size()-log.levelStart(log.depth());
+	}
+
+	/**
+	 * a copy of the database - only weakly consistent if other threads are writing at the same time
+	 */
+	@Override
+	public Iterable<Map.Entry<String,String>> snapshot() {
+		if (transactionLog.get().depth()>0)
+			throw new IllegalStateException("snapshots can't be taken inside a transaction");
+		return new HashMap<>(database).entrySet();
+	}
+
+	@Override
+	public void dump(PrintWriter out) {
+		out.println("database entries");
+		for (Map.Entry<String,String> entry : database.entrySet())
+			out.println("\t"+entry.getKey()+"="+entry.getValue());
+
+		out.println("index entries");
+		for (Map.Entry<String,Integer> entry : valueCount.entrySet())
+			out.println("\t"+entry.getKey()+" is the value for "+ entry.getValue() + " entries");
+
+		UndoLog log = transactionLog.get();
+		out.println("currentTxId = "+log.depth()+" (this thread)");
+		out.println("pending transactions");
+		for (int txId = 1; txId<=log.depth(); txId++) {
+			out.println("\t transaction #"+txId+" contains:");
+			int end = txId<log.depth() ? log.levelStart(txId+1) : log.size();
+			for (int record = log.levelStart(txId); record<end; record++)
+				out.println("\t\t"+log.name(record)+" ==>> old:"+log.oldValue(record) + ", new:"+log.newValue(record));
+		}
+	}
+}
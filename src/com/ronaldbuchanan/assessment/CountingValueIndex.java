@@ -0,0 +1,42 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * value index that only keeps the number of occurrences of each value
+ * @author ronbuchanan
+ */
+final class CountingValueIndex implements ValueIndex {
+	private final HashMap<String,Integer> valueCount = new HashMap<>();
+
+	@Override
+	public void add(String value, String name) {
+		valueCount.merge(value, 1, Integer::sum);
+	}
+
+	@Override
+	public void remove(String value, String name) {
+		valueCount.computeIfPresent(value, (v, count) -> count==1 ? null : count-1);
+	}
+
+	@Override
+	public int count(String value) {
+		return valueCount.getOrDefault(value, 0);
+	}
+
+	@Override
+	public int size() {
+		return valueCount.size();
+	}
+
+	@Override
+	public Iterable<String> values() {
+		return valueCount.keySet();
+	}
+
+	@Override
+	public Iterator<String> names(String value) {
+		throw new UnsupportedOperationException("KEYS_WITH requires the inverted value index (start with -index)");
+	}
+}
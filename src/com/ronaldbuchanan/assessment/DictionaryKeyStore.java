@@ -0,0 +1,198 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+
+/**
+ * dictionary encoded store - the open addressing table of OpenAddressingKeyStore, holding a value id from a
+ * ValueDictionary rather than the value itself
+ *
+ * when a few values (status codes, flags) are repeated across many names, every SET otherwise keeps its own
+ * copy of the value; here it's 4 bytes per name and one String per distinct value.  The dictionary keeps
+ * the value counts too, so ToyInMemDB uses it as its value index rather than keeping another.
+ *
+ * @author ronbuchanan
+ */
+final class DictionaryKeyStore implements KeyStore {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private final ValueDictionary dictionary = new ValueDictionary();
+	private int[] hashes = new int[INITIAL_CAPACITY];
+	private String[] names = new String[INITIAL_CAPACITY];
+	private int[] ids = new int[INITIAL_CAPACITY];
+	private int size = 0;
+
+	@Override
+	public String get(String name) {
+		int hash = OpenAddressingKeyStore.hash(name);
+		int mask = names.length-1;
+		for (int pos = hash & mask; ; pos = (pos+1) & mask) {
+			int slot = hashes[pos];
+			if (slot==0)
+				return null;
+			if (slot==hash && (names[pos]==name || names[pos].equals(name)))
+				return dictionary.value(ids[pos]);
+		}
+	}
+
+	@Override
+	public String put(String name, String value) {
+		int hash = OpenAddressingKeyStore.hash(name);
+		int mask = names.length-1;
+		int pos = hash & mask;
+		for (int slot; (slot = hashes[pos])!=0; pos = (pos+1) & mask) {
+			if (slot==hash && (names[pos]==name || names[pos].equals(name))) {
+				//acquire first, so setting the same value never frees its id
+				int oldId = ids[pos];
+				String oldValue = dictionary.value(oldId);
+				ids[pos] = dictionary.acquire(value);
+				dictionary.release(oldId);
+				return oldValue;
+			}
+		}
+
+		hashes[pos] = hash;
+		names[pos] = name;
+		ids[pos] = dictionary.acquire(value);
+		if (++size*4>names.length*3)
+			resize(names.length*2);
+		return null;
+	}
+
+	@Override
+	public String remove(String name) {
+		int hash = OpenAddressingKeyStore.hash(name);
+		int mask = names.length-1;
+		for (int pos = hash & mask; ; pos = (pos+1) & mask) {
+			int slot = hashes[pos];
+			if (slot==0)
+				return null;
+			if (slot==hash && (names[pos]==name || names[pos].equals(name))) {
+				int oldId = ids[pos];
+				String oldValue = dictionary.value(oldId);
+				dictionary.release(oldId);
+				removeSlot(pos, mask);
+				if (--size*8<names.length && names.length>INITIAL_CAPACITY)
+					resize(names.length/2);
+				return oldValue;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * the number of slots in the table
+	 */
+	int capacity() {
+		return names.length;
+	}
+
+	/**
+	 * O(n) - the ids are decoded as they're copied, since an id can be reused once its value is gone
+	 */
+	@Override
+	public Iterable<Map.Entry<String,String>> copy() {
+		String[] names = Arrays.copyOf(this.names, this.names.length);
+		String[] values = new String[names.length];
+		for (int pos=0; pos<names.length; pos++)
+			if (names[pos]!=null)
+				values[pos] = dictionary.value(ids[pos]);
+		return () -> new EntryIterator(names, pos -> values[pos]);
+	}
+
+	@Override
+	public Iterator<Map.Entry<String,String>> iterator() {
+		int[] ids = this.ids;
+		return new EntryIterator(names, pos -> dictionary.value(ids[pos]));
+	}
+
+	/**
+	 * the dictionary keeps the value counts
+	 */
+	@Override
+	public ValueIndex valueCounts() {
+		return dictionary;
+	}
+
+	private void resize(int capacity) {
+		int[] oldHashes = hashes;
+		String[] oldNames = names;
+		int[] oldIds = ids;
+		hashes = new int[capacity];
+		names = new String[capacity];
+		ids = new int[capacity];
+
+		int mask = capacity-1;
+		for (int i=0; i<oldNames.length; i++) {
+			if (oldHashes[i]==0)
+				continue;
+			int pos = oldHashes[i] & mask;
+			while (hashes[pos]!=0)
+				pos = (pos+1) & mask;
+			hashes[pos] = oldHashes[i];
+			names[pos] = oldNames[i];
+			ids[pos] = oldIds[i];
+		}
+	}
+
+	/**
+	 * backward shift deletion (see OpenAddressingKeyStore)
+	 */
+	private void removeSlot(int hole, int mask) {
+		for (int pos = (hole+1) & mask; hashes[pos]!=0; pos = (pos+1) & mask) {
+			int home = hashes[pos] & mask;
+			boolean movable = hole<=pos ? (home<=hole || home>pos) : (home<=hole && home>pos);
+			if (movable) {
+				hashes[hole] = hashes[pos];
+				names[hole] = names[pos];
+				ids[hole] = ids[pos];
+				hole = pos;
+			}
+		}
+		hashes[hole] = 0;
+		names[hole] = null;
+	}
+
+	/**
+	 * walks the occupied slots
+	 */
+	private static final class EntryIterator implements Iterator<Map.Entry<String,String>> {
+		private final String[] names;
+		private final IntFunction<String> values;
+		private int pos = 0;
+
+		EntryIterator(String[] names, IntFunction<String> values) {
+			this.names = names;
+			this.values = values;
+			skip();
+		}
+
+		private void skip() {
+			while (pos<names.length && names[pos]==null)
+				pos++;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return pos<names.length;
+		}
+
+		@Override
+		public Map.Entry<String,String> next() {
+			if (pos>=names.length)
+				throw new NoSuchElementException();
+			Map.Entry<String,String> entry = new AbstractMap.SimpleImmutableEntry<>(names[pos], values.apply(pos));
+			pos++;
+			skip();
+			return entry;
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * makes any of the engines durable by logging its committed writes to a WriteAheadLog
+ *
+ * writes made inside a transaction are encoded into a batch as they happen, rolling back a nested transaction
+ * truncates the batch to where that transaction started, and commit() hands the whole batch to the log as a
+ * single group.  Writes made outside of a transaction are logged (and made durable) as they happen.
+ *
+ * the engine is changed before its writes are logged, so a write the log fails on is already in memory
+ * without being durable.  The wrapper then fails for good: every later command (reads included, so the
+ * write is never seen) throws the same UncheckedIOException, and the process is expected to stop.
+ *
+ * @author ronbuchanan
+ */
+public class DurableInMemDB implements InMemDB {
+	private final InMemDB db;
+	private final WriteAheadLog wal;
+	private final WriteAheadLog.Batch batch = new WriteAheadLog.Batch();
+	private final ArrayDeque<Integer> marks = new ArrayDeque<>();
+	private IOException failure;
+
+	/**
+	 * @param db - already brought up to date with WriteAheadLog.replay()
+	 * @param wal
+	 */
+	public DurableInMemDB(InMemDB db, WriteAheadLog wal) {
+		this.db = db;
+		this.wal = wal;
+	}
+
+	@Override
+	public void set(String name, String value) {
+		check();
+		try {
+			db.set(name, value);
+		} catch (TransactionConflictException e) {
+			discard();
+			throw e;
+		}
+		batch.set(name, value);
+		if (marks.isEmpty())
+			flush();
+	}
+
+	@Override
+	public void delete(String name) {
+		check();
+		try {
+			db.delete(name);
+		} catch (TransactionConflictException e) {
+			discard();
+			throw e;
+		}
+		batch.delete(name);
+		if (marks.isEmpty())
+			flush();
+	}
+
+	@Override
+	public String lookup(String name) {
+		check();
+		return db.lookup(name);
+	}
+
+	@Override
+	public int count(String value) {
+		check();
+		return db.count(value);
+	}
+
+	@Override
+	public int size() {
+		check();
+		return db.size();
+	}
+
+	@Override
+	public int distinctValues() {
+		check();
+		return db.distinctValues();
+	}
+
+	@Override
+	public Iterator<String> keysWith(String value) {
+		check();
+		return db.keysWith(value);
+	}
+
+	@Override
+	public Iterator<String> scan(String start, String end) {
+		check();
+		return db.scan(start, end);
+	}
+
+	@Override
+	public Iterator<String> prefix(String prefix) {
+		check();
+		return db.prefix(prefix);
+	}
+
+	@Override
+	public void begin() {
+		check();
+		db.begin();
+		marks.push(batch.mark());
+	}
+
+	@Override
+	public boolean rollback() {
+		if (!db.rollback())
+			return false;
+		batch.truncate(marks.pop());
+		return true;
+	}
+
+	@Override
+	public void commit() {
+		check();
+		try {
+			db.commit();
+		} catch (TransactionConflictException e) {
+			discard();
+			throw e;
+		}
+		marks.clear();
+		flush();
+	}
+
+	/**
+	 * the engine has discarded the whole transaction (a conflict on a write or on commit), and so is its batch
+	 */
+	private void discard() {
+		marks.clear();
+		batch.truncate(0);
+	}
+
+	@Override
+	public int transactionDepth() {
+		return db.transactionDepth();
+	}
+
+	@Override
+	public int transactionWrites() {
+		return db.transactionWrites();
+	}
+
+	@Override
+	public void memory(PrintWriter out) {
+		db.memory(out);
+	}
+
+	@Override
+	public Iterable<Map.Entry<String,String>> snapshot() {
+		check();
+		return db.snapshot();
+	}
+
+	/**
+	 * hand the batch to the log - a failure here means the write can't be made durable, which isn't
+	 * something the caller can carry on from, so nothing else is allowed afterwards
+	 */
+	private void flush() {
+		try {
+			wal.commit(batch);
+		} catch (IOException e) {
+			failure = e;
+			throw new UncheckedIOException("unable to write to the write ahead log", e);
+		} finally {
+			batch.truncate(0);
+		}
+	}
+
+	/**
+	 * refuse anything once a write couldn't be logged - the engine holds it, but the log doesn't
+	 */
+	private void check() {
+		if (failure!=null)
+			throw new UncheckedIOException("the write ahead log has failed, nothing more can be done", failure);
+	}
+
+	@Override
+	public void dump(PrintWriter out) {
+		db.dump(out);
+		out.println("write ahead log batch: "+batch.length()+" bytes pending commit");
+	}
+}
@@ -0,0 +1,47 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * the original store - a java.util.HashMap
+ *
+ * @author ronbuchanan
+ */
+final class HashMapKeyStore implements KeyStore {
+	private final HashMap<String,String> database = new HashMap<>();
+
+	@Override
+	public String get(String name) {
+		return database.get(name);
+	}
+
+	@Override
+	public String put(String name, String value) {
+		return database.put(name, value);
+	}
+
+	@Override
+	public String remove(String name) {
+		return database.remove(name);
+	}
+
+	@Override
+	public int size() {
+		return database.size();
+	}
+
+	/**
+	 * O(n), but it's a flat copy of the table so it's pretty quick
+	 */
+	@Override
+	public Iterable<Map.Entry<String,String>> copy() {
+		return new HashMap<>(database).entrySet();
+	}
+
+	@Override
+	public Iterator<Map.Entry<String,String>> iterator() {
+		return database.entrySet().iterator();
+	}
+}
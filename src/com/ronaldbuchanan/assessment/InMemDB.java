@@ -0,0 +1,134 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * the operations supported by the toy database - implemented by each of the transaction engines
+ * so the command interpreter doesn't care which one it is talking to
+ * @author ronbuchanan
+ */
+public interface InMemDB {
+	/**
+	 * set the value for a name
+	 * @param name
+	 * @param value
+	 */
+	void set(String name, String value);
+
+	/**
+	 * delete a name
+	 * @param name
+	 */
+	void delete(String name);
+
+	/**
+	 * get the value for a name
+	 * @param name
+	 * @return null if it isn't set
+	 */
+	String lookup(String name);
+
+	/**
+	 * get the value for a name ("NULL" if it isn't set, as the command language prints it - so it can't be
+	 * told apart from a value of "NULL", use lookup() for that)
+	 * @param name
+	 */
+	default String get(String name) {
+		String value = lookup(name);
+		return value==null ? "NULL" : value;
+	}
+
+	/**
+	 * get the number of occurrences of a value
+	 * @param value
+	 */
+	int count(String value);
+
+	/**
+	 * get the number of names that are set
+	 */
+	int size();
+
+	/**
+	 * get the number of distinct values in use (the live size of the value index)
+	 */
+	int distinctValues();
+
+	/**
+	 * get the names holding a value - streamed from the index rather than collected, so the iterator is
+	 * only good until the next write
+	 * @param value
+	 */
+	default Iterator<String> keysWith(String value) {
+		throw new UnsupportedOperationException("KEYS_WITH is not supported by this engine");
+	}
+
+	/**
+	 * get the names from start up to end, in order - streamed like keysWith(), and including the writes of
+	 * the current transaction
+	 * @param start - the first name, inclusive
+	 * @param end - the name to stop before
+	 */
+	default Iterator<String> scan(String start, String end) {
+		throw new UnsupportedOperationException("SCAN is not supported by this engine");
+	}
+
+	/**
+	 * get the names starting with a prefix, in order - streamed like keysWith()
+	 * @param prefix
+	 */
+	default Iterator<String> prefix(String prefix) {
+		throw new UnsupportedOperationException("PREFIX is not supported by this engine");
+	}
+
+	/**
+	 * start a new transaction
+	 */
+	void begin();
+
+	/**
+	 * rollback the current transaction
+	 * @return false if there is no transaction to roll back
+	 */
+	boolean rollback();
+
+	/**
+	 * commit all outstanding transactions
+	 */
+	void commit();
+
+	/**
+	 * get the number of outstanding (nested) transactions, 0 when not in a transaction
+	 */
+	int transactionDepth();
+
+	/**
+	 * get the number of undo records a rollback of the current transaction would replay (0 when not in a
+	 * transaction), or -1 if the engine doesn't keep an undo log
+	 */
+	default int transactionWrites() {
+		return -1;
+	}
+
+	/**
+	 * print the estimated heap used by each of the engine's structures
+	 * @param out
+	 */
+	default void memory(PrintWriter out) {
+		throw new UnsupportedOperationException("MEMORY is not supported by this engine");
+	}
+
+	/**
+	 * a point in time copy of all the entries, unaffected by later writes (so it can be handed to another
+	 * thread) - only available outside of a transaction, so it never contains uncommitted writes
+	 */
+	Iterable<Map.Entry<String,String>> snapshot();
+
+	/**
+	 * print out the contents of the data structures
+	 * @param out
+	 */
+	void dump(PrintWriter out);
+}
@@ -0,0 +1,34 @@
+package com.ronaldbuchanan.assessment;
+
+/**
+ * the gauges of the undo log engine, for JConsole, VisualVM, jcmd and the like (registered as
+ * com.ronaldbuchanan.assessment:type=InMemDB)
+ *
+ * @author ronbuchanan
+ */
+public interface InMemDBMXBean {
+	/**
+	 * the number of names that are set
+	 */
+	int getNames();
+
+	/**
+	 * the number of distinct values in the value index (-1 until the index has been built)
+	 */
+	int getDistinctValues();
+
+	/**
+	 * the number of outstanding (nested) transactions
+	 */
+	int getTransactionDepth();
+
+	/**
+	 * the number of undo records across all the outstanding transactions
+	 */
+	int getUndoRecords();
+
+	/**
+	 * the estimated heap used by the names, values, value index and undo log, in bytes
+	 */
+	long getEstimatedBytes();
+}
@@ -0,0 +1,65 @@
+package com.ronaldbuchanan.assessment;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * publishes a ToyInMemDB's gauges over JMX
+ *
+ * the gauges are read from the JMX thread with no locking, so they can lag the command being run - fine for
+ * watching the database grow, not for anything exact.  Reading them never changes the database (the value
+ * index isn't built just to be counted).
+ *
+ * @author ronbuchanan
+ */
+final class InMemDBMonitor implements InMemDBMXBean {
+	static final String NAME = "com.ronaldbuchanan.assessment:type=InMemDB";
+
+	private final ToyInMemDB db;
+
+	InMemDBMonitor(ToyInMemDB db) {
+		this.db = db;
+	}
+
+	/**
+	 * register a database with the platform MBean server, replacing any registered before it
+	 * @param db
+	 */
+	static void register(ToyInMemDB db) {
+		try {
+			ObjectName name = new ObjectName(NAME);
+			if (ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new InMemDBMonitor(db), name);
+		} catch (JMException e) {
+			System.err.println("JMX monitoring unavailable: " + e.getMessage());
+		}
+	}
+
+	@Override
+	public int getNames() {
+		return db.size();
+	}
+
+	@Override
+	public int getDistinctValues() {
+		return db.indexedValues();
+	}
+
+	@Override
+	public int getTransactionDepth() {
+		return db.transactionDepth();
+	}
+
+	@Override
+	public int getUndoRecords() {
+		return db.undoRecords();
+	}
+
+	@Override
+	public long getEstimatedBytes() {
+		return db.estimatedBytes();
+	}
+}
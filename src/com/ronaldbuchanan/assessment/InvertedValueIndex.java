@@ -0,0 +1,52 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+/**
+ * value index that keeps the set of names holding each value - costs an entry per name rather than per
+ * distinct value, but makes "which names have value X" a walk of just the matching names
+ *
+ * the counts are the sizes of the sets, so COUNT stays O(1)
+ *
+ * @author ronbuchanan
+ */
+final class InvertedValueIndex implements ValueIndex {
+	private final HashMap<String,HashSet<String>> index = new HashMap<>();
+
+	@Override
+	public void add(String value, String name) {
+		index.computeIfAbsent(value, v -> new HashSet<>()).add(name);
+	}
+
+	@Override
+	public void remove(String value, String name) {
+		HashSet<String> names = index.get(value);
+		if (names!=null && names.remove(name) && names.isEmpty())
+			index.remove(value);
+	}
+
+	@Override
+	public int count(String value) {
+		HashSet<String> names = index.get(value);
+		return names==null ? 0 : names.size();
+	}
+
+	@Override
+	public int size() {
+		return index.size();
+	}
+
+	@Override
+	public Iterable<String> values() {
+		return index.keySet();
+	}
+
+	@Override
+	public Iterator<String> names(String value) {
+		HashSet<String> names = index.get(value);
+		return names==null ? Collections.emptyIterator() : Collections.unmodifiableSet(names).iterator();
+	}
+}
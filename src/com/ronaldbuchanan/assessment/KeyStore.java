@@ -0,0 +1,87 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * the name => value table behind ToyInMemDB
+ *
+ * put() and remove() hand back what they replaced, so a write costs ToyInMemDB a single lookup
+ *
+ * @author ronbuchanan
+ */
+interface KeyStore extends Iterable<Map.Entry<String,String>> {
+	/**
+	 * get the value for a name
+	 * @param name
+	 * @return null if the name isn't set
+	 */
+	String get(String name);
+
+	/**
+	 * set the value for a name
+	 * @param name
+	 * @param value
+	 * @return the previous value, null if the name wasn't set
+	 */
+	String put(String name, String value);
+
+	/**
+	 * delete a name
+	 * @param name
+	 * @return the previous value, null if the name wasn't set
+	 */
+	String remove(String name);
+
+	/**
+	 * get the number of names that are set
+	 */
+	int size();
+
+	/**
+	 * a point in time copy of the entries
+	 */
+	Iterable<Map.Entry<String,String>> copy();
+
+	/**
+	 * the value counts, for a store that keeps them itself (so ToyInMemDB doesn't keep another copy)
+	 * @return null if it doesn't
+	 */
+	default ValueIndex valueCounts() {
+		return null;
+	}
+
+	/**
+	 * the entries from one name up to another, in name order (UTF-8 byte order) - streamed from the store,
+	 * so the iterator is only good until the next write (only an ordered store can do this without a full scan)
+	 * @param from - the first name, inclusive (null to start at the beginning)
+	 * @param to - the name to stop before (null to run to the end)
+	 */
+	default Iterator<Map.Entry<String,String>> range(String from, String to) {
+		throw new UnsupportedOperationException("SCAN and PREFIX require an ordered store (start with -store radix)");
+	}
+
+	/**
+	 * the entries whose names start with a prefix, in name order - streamed like range()
+	 * @param prefix
+	 */
+	default Iterator<Map.Entry<String,String>> prefixed(String prefix) {
+		throw new UnsupportedOperationException("SCAN and PREFIX require an ordered store (start with -store radix)");
+	}
+
+	/**
+	 * the store for the -store option
+	 * @param kind - hash (java.util.HashMap), open (open addressing), offheap (direct buffers), dictionary
+	 * 				 (open addressing with the values dictionary encoded) or radix (a compressed trie of the names)
+	 */
+	static KeyStore create(String kind) {
+		switch (kind.toLowerCase()) {
+		case "hash":	return new HashMapKeyStore();
+		case "open":	return new OpenAddressingKeyStore();
+		case "offheap":	return new OffHeapKeyStore();
+		case "dictionary":	return new DictionaryKeyStore();
+		case "radix":	return new RadixKeyStore();
+		default:		throw new IllegalArgumentException("unknown store: " + kind + " (expected hash, open, offheap, dictionary or radix)");
+		}
+	}
+}
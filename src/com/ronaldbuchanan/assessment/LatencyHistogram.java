@@ -0,0 +1,127 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.Arrays;
+
+/**
+ * latencies (in nanoseconds) counted in log-linear buckets, for percentiles without keeping every sample -
+ * it works just as well for other non-negative values (the sizes of rollbacks, say)
+ *
+ * each power of two is split into 16 equal buckets, so a value is placed to within 1/16th (about 6%) of
+ * itself, from a nanosecond to centuries, in a fixed array of under a thousand counts.  Recording is a
+ * couple of shifts and an increment, and allocates nothing.
+ *
+ * not thread safe
+ *
+ * @author ronbuchanan
+ */
+final class LatencyHistogram {
+	private static final int SUB_BITS = 4;
+	private static final int SUB = 1 << SUB_BITS;
+
+	private final long[] counts = new long[(64-SUB_BITS+1)*SUB];
+	private long count = 0;
+	private long total = 0;
+	private long max = 0;
+
+	/**
+	 * @param nanos
+	 */
+	void record(long nanos) {
+		if (nanos<0)
+			nanos = 0;
+		counts[index(nanos)]++;
+		count++;
+		total += nanos;
+		if (nanos>max)
+			max = nanos;
+	}
+
+	/**
+	 * add in the counts of another histogram
+	 * @param other
+	 */
+	void add(LatencyHistogram other) {
+		for (int i=0; i<counts.length; i++)
+			counts[i] += other.counts[i];
+		count += other.count;
+		total += other.total;
+		max = Math.max(max, other.max);
+	}
+
+	void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		total = 0;
+		max = 0;
+	}
+
+	long count() {
+		return count;
+	}
+
+	long max() {
+		return max;
+	}
+
+	double mean() {
+		return count==0 ? 0 : total/(double) count;
+	}
+
+	/**
+	 * @param percent - 0 to 100
+	 * @return the top of the bucket holding that percentile (never more than the largest value recorded)
+	 */
+	long percentile(double percent) {
+		if (count==0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(percent/100*count));
+		long seen = 0;
+		for (int i=0; i<counts.length; i++) {
+			seen += counts[i];
+			if (seen>=rank)
+				return Math.min(lowest(i+1)-1, max);
+		}
+		return max;
+	}
+
+	/**
+	 * the column headings for summary()
+	 * @param units - what the values are in, once divided
+	 */
+	static String header(String units) {
+		return String.format("%-10s %10s %9s %9s %9s %9s %9s %9s   (%s)", "", "count", "mean", "p50", "p90", "p99", "p99.9", "max", units);
+	}
+
+	/**
+	 * one line: the count, mean, percentiles and max
+	 * @param label
+	 * @param unit - what to divide the values by (1e3 for nanoseconds to microseconds)
+	 */
+	String summary(String label, double unit) {
+		return String.format("%-10s %10d %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f", label, count, mean()/unit,
+				percentile(50)/unit, percentile(90)/unit, percentile(99)/unit, percentile(99.9)/unit, max/unit);
+	}
+
+	/**
+	 * exact below 16, then 16 buckets per power of two
+	 */
+	static int index(long value) {
+		if (value<SUB)
+			return (int) value;
+		int exponent = 63-Long.numberOfLeadingZeros(value);
+		int sub = (int) (value>>>(exponent-SUB_BITS)) & (SUB-1);
+		return (exponent-SUB_BITS+1)*SUB + sub;
+	}
+
+	/**
+	 * the smallest value in a bucket
+	 */
+	static long lowest(int index) {
+		if (index<SUB)
+			return index;
+		int exponent = index/SUB + SUB_BITS-1;
+		if (exponent>62)
+			return Long.MAX_VALUE;
+		return (long) (SUB + index%SUB) << (exponent-SUB_BITS);
+	}
+}
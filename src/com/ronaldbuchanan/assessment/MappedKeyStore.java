@@ -0,0 +1,851 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * store that lives in memory-mapped files, so it survives a restart without being loaded: opening it maps
+ * the files and get() is served straight from them (the OS pages the data in as it's touched)
+ *
+ * the layout is the OffHeapKeyStore one, in files rather than direct buffers:
+ * 		meta			the header below
+ * 		index.<gen>		open addressing index, a 16 byte slot per entry: [int hash][int unused][long address]
+ * 		data.<gen>.<n>	records [int hash][int name length][int value length][name utf-8][value utf-8]
+ * 		redo			the writes made since the last checkpoint
+ * 		counts			the value counts, as of the last clean close
+ *
+ * crash consistency comes from the small redo log: every put() or remove() is a handful of physical writes
+ * (the record, the index slot, the header), which are appended to the redo log as one checksummed group
+ * before they're applied to the mapped files.  Opening the store replays the complete groups (replaying
+ * one twice is harmless, they're just bytes at offsets), so a write torn by a crash is either finished or
+ * discarded as a whole.  A checkpoint forces the mapped files to disk and empties the log, once it passes
+ * 1MB and on close.
+ *
+ * the redo log is written (so it survives the process dying) but only fsynced when asked for - otherwise a
+ * power failure can lose or tear the writes made since the last checkpoint.
+ *
+ * deletes leave tombstones, and overwrites with a different length leave dead records.  Growing or
+ * shrinking the index, clearing out tombstones and reclaiming dead records are all done by writing a new
+ * generation of the index and data files with just the live entries, then switching the header over to it.
+ *
+ * the index file is mapped in regions of up to 2^20 slots (16MB), slot pos living in region pos >>> 20, as
+ * a single MappedByteBuffer can't go past 2GB (2^27 slots, about 50M names).  It stops growing at 2^30 slots,
+ * and the store refuses new names once that is 3/4 full.
+ *
+ * the store keeps the value counts, so ToyInMemDB doesn't have to walk every entry to build them after a
+ * restart.  They're written to the counts file on close and read back (then deleted, so they can't go
+ * stale) on open, which is O(distinct values) - only after a crash are they rebuilt from the entries, by
+ * the first COUNT (or anything else that needs them).
+ *
+ * String.hashCode() is specified by the language, so the hashes in the index stay valid across runs.
+ *
+ * @author ronbuchanan
+ */
+final class MappedKeyStore implements KeyStore, Closeable {
+	static final int DEFAULT_SLAB_SIZE = 1 << 26;
+
+	static final int DEFAULT_CHUNK_BITS = 20;
+
+	private static final long MAGIC = 0x4D41505045444B53L; //MAPPEDKS
+	private static final long COUNTS_MAGIC = 0x4B53434F554E5453L; //KSCOUNTS
+	private static final int HEADER = 12;
+	private static final int SLOT = 16;
+	private static final int META_SIZE = 52;
+	private static final int INITIAL_CAPACITY = 1 << 10;
+	private static final int MAX_CAPACITY = 1 << 30;
+	private static final int REDO_LIMIT = 1 << 20;
+	private static final long TOMBSTONE = -1;
+
+	//redo targets (data files are numbered from 0) - SLOTS is a whole slot of the index by number
+	private static final int META = -2;
+	private static final int SLOTS = -1;
+
+	/*
+	 * Principal data structures:
+	 *
+	 * 		meta - [long magic][int generation][int capacity][int size][int tombstones][int slabs][int end]
+	 * 			   [int slab size][long used][long dead], kept in the fields below between writes
+	 *
+	 * 		index, slabs - the mapped index (in regions of 2^chunkBits slots) and data files of the current
+	 * 					   generation, with a duplicate of each data file for the bulk (relative) transfers
+	 *
+	 * 		pending - the redo group being built up: [int length][int crc32] then [int target][int offset]
+	 * 				  [int length][bytes] per write
+	 *
+	 * 		counts - value => the number of names holding it, null until it's loaded or built
+	 */
+
+	private final Path directory;
+	private final boolean sync;
+	private final int chunkBits;
+	private final int chunkMask;
+	private final FileChannel redo;
+	private long redoSize = 0;
+	private final CRC32 crc = new CRC32();
+	private ByteBuffer pending = ByteBuffer.allocate(1 << 12);
+
+	private final MappedByteBuffer meta;
+	private final ByteBuffer metaView;
+	private MappedByteBuffer[] index;
+	private ArrayList<MappedByteBuffer> slabs = new ArrayList<>();
+	private ArrayList<ByteBuffer> views = new ArrayList<>();
+
+	private int generation;
+	private int capacity;
+	private int size;
+	private int tombstones;
+	private int slabCount;
+	private int end;
+	private int slabSize;
+	private long used;
+	private long dead;
+
+	private HashMap<String,Integer> counts;
+	private final ValueIndex valueCounts = new Counts();
+
+	private byte[] scratch = new byte[256];
+
+	/**
+	 * open the store in a directory, creating it if need be - the data isn't read, just mapped (and the redo
+	 * log replayed)
+	 * @param directory
+	 * @param sync - fsync the redo log on every write
+	 */
+	static MappedKeyStore open(Path directory, boolean sync) throws IOException {
+		return open(directory, DEFAULT_SLAB_SIZE, sync);
+	}
+
+	/**
+	 * @param directory
+	 * @param slabSize - the size of each data file for a new store (an existing store keeps its own)
+	 * @param sync - fsync the redo log on every write
+	 */
+	static MappedKeyStore open(Path directory, int slabSize, boolean sync) throws IOException {
+		return open(directory, slabSize, DEFAULT_CHUNK_BITS, sync);
+	}
+
+	/**
+	 * @param directory
+	 * @param slabSize - the size of each data file for a new store (an existing store keeps its own)
+	 * @param chunkBits - log2 of the number of index slots mapped by each of the index's buffers (at most 26)
+	 * @param sync - fsync the redo log on every write
+	 */
+	static MappedKeyStore open(Path directory, int slabSize, int chunkBits, boolean sync) throws IOException {
+		Files.createDirectories(directory);
+		return new MappedKeyStore(directory, slabSize, chunkBits, sync);
+	}
+
+	private MappedKeyStore(Path directory, int slabSize, int chunkBits, boolean sync) throws IOException {
+		this.directory = directory;
+		this.sync = sync;
+		this.chunkBits = chunkBits;
+		this.chunkMask = (1 << chunkBits)-1;
+		meta = map(directory.resolve("meta"), META_SIZE);
+		metaView = meta.duplicate();
+
+		long magic = meta.getLong(0);
+		if (magic==0) {
+			//a new store (or one that crashed before the header was written)
+			this.slabSize = slabSize;
+			capacity = INITIAL_CAPACITY;
+			deleteGeneration(0);
+			index = mapIndex(indexFile(0), capacity);
+			force(index);
+			writeMeta(meta, 0);
+			meta.force();
+		} else if (magic!=MAGIC) {
+			throw new IOException(directory + " is not a mapped store");
+		} else {
+			readMeta();
+			index = mapIndex(indexFile(generation), capacity);
+			for (int slab=0; slab<slabCount; slab++)
+				mapSlab(slab, 0);
+		}
+
+		redo = FileChannel.open(directory.resolve("redo"), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		replay();
+		checkpoint();
+
+		//a rewrite that didn't get as far as switching over leaves another generation behind
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "{index,data}.*")) {
+			for (Path file : files)
+				if (!file.getFileName().toString().matches("(index|data)\\." + generation + "(\\..*)?"))
+					Files.delete(file);
+		}
+		loadCounts();
+		if (counts==null && size==0)
+			counts = new HashMap<>(); //nothing to count
+	}
+
+	@Override
+	public String get(String name) {
+		int pos = find(name, OpenAddressingKeyStore.hash(name));
+		return pos<0 ? null : value(addressAt(pos));
+	}
+
+	@Override
+	public String put(String name, String value) {
+		int hash = OpenAddressingKeyStore.hash(name);
+		int pos = find(name, hash);
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		begin();
+
+		String oldValue = null;
+		if (pos>=0) {
+			long address = addressAt(pos);
+			oldValue = value(address);
+			int slab = slab(address);
+			int offset = offset(address);
+			int nameLength = slabs.get(slab).getInt(offset+4);
+			int valueLength = slabs.get(slab).getInt(offset+8);
+			if (valueLength==bytes.length) {
+				//same size, just overwrite it
+				if (oldValue.equals(value))
+					return oldValue;
+				log(slab, offset+HEADER+nameLength, bytes.length).put(bytes);
+			} else {
+				dead += HEADER+nameLength+valueLength;
+				logSlot(pos, hash, append(hash, name.getBytes(StandardCharsets.UTF_8), bytes));
+				logMeta();
+			}
+		} else {
+			if (capacity==MAX_CAPACITY && (size+1)*4L>capacity*3L)
+				throw new IllegalStateException("the mapped store is full (" + size + " names)");
+			pos = -pos-1;
+			if (hashAt(pos)!=0)
+				tombstones--;
+			size++;
+			logSlot(pos, hash, append(hash, name.getBytes(StandardCharsets.UTF_8), bytes));
+			logMeta();
+		}
+		commit();
+		if (counts!=null) {
+			if (oldValue!=null)
+				uncount(oldValue);
+			counts.merge(value, 1, Integer::sum);
+		}
+		maintain();
+		return oldValue;
+	}
+
+	@Override
+	public String remove(String name) {
+		int pos = find(name, OpenAddressingKeyStore.hash(name));
+		if (pos<0)
+			return null;
+
+		long address = addressAt(pos);
+		String oldValue = value(address);
+		int slab = slab(address);
+		int offset = offset(address);
+		dead += HEADER + slabs.get(slab).getInt(offset+4) + slabs.get(slab).getInt(offset+8);
+		size--;
+		begin();
+		if (hashAt((pos+1) & (capacity-1))==0) {
+			//nothing probes past the end of a run, so the slot can just be emptied
+			logSlot(pos, 0, 0);
+		} else {
+			tombstones++;
+			logSlot(pos, hashAt(pos), TOMBSTONE);
+		}
+		logMeta();
+		commit();
+		if (counts!=null)
+			uncount(oldValue);
+		maintain();
+		return oldValue;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * O(n) - decodes everything onto the heap
+	 */
+	@Override
+	public Iterable<Map.Entry<String,String>> copy() {
+		ArrayList<Map.Entry<String,String>> copy = new ArrayList<>(size);
+		for (Map.Entry<String,String> entry : this)
+			copy.add(entry);
+		return copy;
+	}
+
+	@Override
+	public Iterator<Map.Entry<String,String>> iterator() {
+		return new Iterator<Map.Entry<String,String>>() {
+			private int pos = next(0);
+
+			private int next(int from) {
+				while (from<capacity && (hashAt(from)==0 || addressAt(from)==TOMBSTONE))
+					from++;
+				return from;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return pos<capacity;
+			}
+
+			@Override
+			public Map.Entry<String,String> next() {
+				if (pos>=capacity)
+					throw new NoSuchElementException();
+				long address = addressAt(pos);
+				pos = next(pos+1);
+				return new AbstractMap.SimpleImmutableEntry<>(name(address), value(address));
+			}
+		};
+	}
+
+	/**
+	 * the value counts - kept up to date by put() and remove(), so as a ValueIndex add() and remove() have
+	 * nothing to do
+	 */
+	@Override
+	public ValueIndex valueCounts() {
+		return valueCounts;
+	}
+
+	/**
+	 * whether the value counts are at hand (read back on open or already built), so using them won't walk
+	 * the store
+	 */
+	boolean hasCounts() {
+		return counts!=null;
+	}
+
+	/**
+	 * checkpoint, save the value counts and close the redo log (the mappings go when they're garbage collected)
+	 */
+	@Override
+	public void close() throws IOException {
+		if (!redo.isOpen())
+			return;
+		checkpoint();
+		if (counts!=null)
+			saveCounts();
+		redo.close();
+	}
+
+	/**
+	 * @return the slot holding the name, or -(the slot it would go in)-1 - the first tombstone passed, if
+	 * any, otherwise the empty slot that ended the probe
+	 */
+	private int find(String name, int hash) {
+		int mask = capacity-1;
+		int free = -1;
+		for (int pos = hash & mask; ; pos = (pos+1) & mask) {
+			int slot = hashAt(pos);
+			if (slot==0)
+				return free>=0 ? -free-1 : -pos-1;
+			long address = addressAt(pos);
+			if (address==TOMBSTONE) {
+				if (free<0)
+					free = pos;
+			} else if (slot==hash && matches(address, name)) {
+				return pos;
+			}
+		}
+	}
+
+	/**
+	 * compare a record's name with a String, byte for char while they're ASCII
+	 */
+	private boolean matches(long address, String name) {
+		ByteBuffer slab = slabs.get(slab(address));
+		int offset = offset(address);
+		int length = slab.getInt(offset+4);
+		int chars = name.length();
+		if (length!=chars)
+			return length>chars && name(address).equals(name); //only a multi-byte name can still match
+
+		offset += HEADER;
+		for (int i=0; i<chars; i++) {
+			char c = name.charAt(i);
+			if (c>=0x80)
+				return name(address).equals(name);
+			if (slab.get(offset+i)!=(byte) c)
+				return false;
+		}
+		return true;
+	}
+
+	private String name(long address) {
+		int slab = slab(address);
+		int offset = offset(address);
+		return decode(slab, offset+HEADER, slabs.get(slab).getInt(offset+4));
+	}
+
+	private String value(long address) {
+		int slab = slab(address);
+		int offset = offset(address);
+		int nameLength = slabs.get(slab).getInt(offset+4);
+		return decode(slab, offset+HEADER+nameLength, slabs.get(slab).getInt(offset+8));
+	}
+
+	private String decode(int slab, int offset, int length) {
+		if (scratch.length<length)
+			scratch = new byte[Math.max(length, scratch.length*2)];
+		ByteBuffer view = views.get(slab);
+		view.limit(view.capacity()).position(offset);
+		view.get(scratch, 0, length);
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * log a new record at the end of the data, starting a new data file if it doesn't fit in the last one
+	 * @return its address
+	 */
+	private long append(int hash, byte[] name, byte[] value) {
+		int length = HEADER+name.length+value.length;
+		if (slabCount==0 || end+length>slabs.get(slabCount-1).capacity()) {
+			slabCount++;
+			end = 0;
+		}
+		int slab = slabCount-1;
+		log(slab, end, length).putInt(hash).putInt(name.length).putInt(value.length).put(name).put(value);
+		long address = address(slab, end);
+		end += length;
+		used += length;
+		return address;
+	}
+
+	/**
+	 * a rewrite once the index is too full (of entries or tombstones) or too empty, or most of the data is dead
+	 */
+	private void maintain() {
+		if ((size+tombstones)*4L>capacity*3L
+				|| (size*8L<capacity && capacity>INITIAL_CAPACITY)
+				|| (dead*2>used && dead>=slabSize/4)) {
+			int newCapacity = INITIAL_CAPACITY;
+			while (newCapacity*3L<size*8L && newCapacity<MAX_CAPACITY)
+				newCapacity *= 2;
+			try {
+				rewrite(newCapacity);
+			} catch (IOException e) {
+				throw new UncheckedIOException("unable to rewrite the mapped store", e);
+			}
+		}
+	}
+
+	/**
+	 * copy the live entries into the next generation of files, then switch the header over to it - until
+	 * the switch the old generation is intact, and a crash leaves the new one to be deleted
+	 */
+	private void rewrite(int newCapacity) throws IOException {
+		checkpoint();
+		int next = generation+1;
+		deleteGeneration(next);
+
+		MappedByteBuffer[] newIndex = mapIndex(indexFile(next), newCapacity);
+		ArrayList<MappedByteBuffer> newSlabs = new ArrayList<>();
+		int newEnd = 0;
+		long newUsed = 0;
+		int mask = newCapacity-1;
+		for (int from=0; from<capacity; from++) {
+			int hash = hashAt(from);
+			long address = addressAt(from);
+			if (hash==0 || address==TOMBSTONE)
+				continue;
+
+			int slab = slab(address);
+			int offset = offset(address);
+			int length = HEADER + slabs.get(slab).getInt(offset+4) + slabs.get(slab).getInt(offset+8);
+			if (newSlabs.isEmpty() || newEnd+length>newSlabs.get(newSlabs.size()-1).capacity()) {
+				newSlabs.add(map(dataFile(next, newSlabs.size()), Math.max(slabSize, length)));
+				newEnd = 0;
+			}
+			ByteBuffer source = views.get(slab);
+			source.limit(source.capacity()).position(offset);
+			source.limit(offset+length);
+			ByteBuffer target = newSlabs.get(newSlabs.size()-1).duplicate();
+			target.position(newEnd);
+			target.put(source);
+
+			int pos = hash & mask;
+			while (newIndex[pos >>> chunkBits].getInt(at(pos))!=0)
+				pos = (pos+1) & mask;
+			newIndex[pos >>> chunkBits].putInt(at(pos), hash).putLong(at(pos)+8, address(newSlabs.size()-1, newEnd));
+			newEnd += length;
+			newUsed += length;
+		}
+		force(newIndex);
+		for (MappedByteBuffer slab : newSlabs)
+			slab.force();
+
+		//the switch
+		generation = next;
+		capacity = newCapacity;
+		tombstones = 0;
+		slabCount = newSlabs.size();
+		end = newEnd;
+		used = newUsed;
+		dead = 0;
+		writeMeta(meta, 0);
+		meta.force();
+
+		index = newIndex;
+		slabs = new ArrayList<>();
+		views = new ArrayList<>();
+		for (MappedByteBuffer slab : newSlabs) {
+			slabs.add(slab);
+			views.add(slab.duplicate());
+		}
+		deleteGeneration(next-1);
+	}
+
+	/**
+	 * start a redo group
+	 */
+	private void begin() {
+		pending.clear();
+		pending.position(8);
+	}
+
+	/**
+	 * add a write to the redo group
+	 * @return the group, to put the bytes in
+	 */
+	private ByteBuffer log(int target, int offset, int length) {
+		if (pending.remaining()<12+length) {
+			ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity()*2, pending.position()+12+length));
+			pending.flip();
+			pending = bigger.put(pending);
+		}
+		return pending.putInt(target).putInt(offset).putInt(length);
+	}
+
+	private void logSlot(int pos, int hash, long address) {
+		log(SLOTS, pos, SLOT).putInt(hash).putInt(0).putLong(address);
+	}
+
+	private void logMeta() {
+		ByteBuffer group = log(META, 0, META_SIZE);
+		writeMeta(group, group.position());
+		group.position(group.position()+META_SIZE);
+	}
+
+	/**
+	 * append the redo group to the log, then apply it to the mapped files
+	 */
+	private void commit() {
+		int length = pending.position();
+		crc.reset();
+		crc.update(pending.array(), 8, length-8);
+		pending.putInt(0, length-8).putInt(4, (int) crc.getValue());
+		try {
+			pending.flip();
+			while (pending.hasRemaining())
+				redoSize += redo.write(pending, redoSize);
+			if (sync)
+				redo.force(false);
+			apply(pending.array(), 8, length);
+			if (redoSize>REDO_LIMIT)
+				checkpoint();
+		} catch (IOException e) {
+			throw new UncheckedIOException("unable to write to the mapped store", e);
+		}
+	}
+
+	private void apply(byte[] group, int from, int to) throws IOException {
+		ByteBuffer writes = ByteBuffer.wrap(group, from, to-from);
+		while (writes.hasRemaining()) {
+			int target = writes.getInt();
+			int offset = writes.getInt();
+			int length = writes.getInt();
+			ByteBuffer view;
+			if (target==SLOTS) {
+				view = index[offset >>> chunkBits].duplicate();
+				offset = at(offset);
+			} else {
+				view = target==META ? metaView : views.get(mapSlab(target, offset+length));
+			}
+			view.limit(view.capacity()).position(offset);
+			int limit = writes.limit();
+			writes.limit(writes.position()+length);
+			view.put(writes);
+			writes.limit(limit);
+		}
+	}
+
+	/**
+	 * apply the complete redo groups, a torn one at the end (crash mid-write) is the end of the log
+	 */
+	private void replay() throws IOException {
+		long size = redo.size();
+		ByteBuffer log = ByteBuffer.allocate((int) size);
+		while (log.hasRemaining())
+			if (redo.read(log, log.position())<0)
+				break;
+
+		CRC32 check = new CRC32();
+		int position = 0;
+		while (position+8<=size) {
+			int length = log.getInt(position);
+			int checksum = log.getInt(position+4);
+			if (length<0 || position+8+length>size)
+				break;
+			check.reset();
+			check.update(log.array(), position+8, length);
+			if ((int) check.getValue()!=checksum)
+				break;
+			apply(log.array(), position+8, position+8+length);
+			position += 8+length;
+		}
+		readMeta();
+	}
+
+	/**
+	 * get the mapped files to disk, after which the redo log isn't needed
+	 */
+	private void checkpoint() throws IOException {
+		meta.force();
+		force(index);
+		for (MappedByteBuffer slab : slabs)
+			slab.force();
+		redo.truncate(0);
+		redoSize = 0;
+	}
+
+	/**
+	 * map a data file of the current generation, creating it if it's new
+	 * @param slab
+	 * @param length - how big it needs to be
+	 */
+	private int mapSlab(int slab, int length) throws IOException {
+		while (slabs.size()<=slab) {
+			Path file = dataFile(generation, slabs.size());
+			long fileSize = Files.exists(file) ? Files.size(file) : 0;
+			MappedByteBuffer mapped = map(file, Math.max(fileSize, Math.max(slabSize, slabs.size()==slab ? length : 0)));
+			slabs.add(mapped);
+			views.add(mapped.duplicate());
+		}
+		return slab;
+	}
+
+	/**
+	 * map an index file of capacity slots, in regions of 2^chunkBits slots (a single smaller one until it
+	 * needs a whole region)
+	 */
+	private MappedByteBuffer[] mapIndex(Path file, int capacity) throws IOException {
+		int slots = Math.min(capacity, 1 << chunkBits);
+		MappedByteBuffer[] chunks = new MappedByteBuffer[capacity/slots];
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			for (int i=0; i<chunks.length; i++)
+				chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i*slots*SLOT, (long) slots*SLOT);
+		}
+		return chunks;
+	}
+
+	private static void force(MappedByteBuffer[] chunks) {
+		for (MappedByteBuffer chunk : chunks)
+			chunk.force();
+	}
+
+	private void uncount(String value) {
+		counts.computeIfPresent(value, (v, count) -> count==1 ? null : count-1);
+	}
+
+	/**
+	 * the value counts, walking the entries to build them if they weren't saved (the store wasn't closed)
+	 */
+	private HashMap<String,Integer> counts() {
+		if (counts==null) {
+			HashMap<String,Integer> built = new HashMap<>();
+			for (Map.Entry<String,String> entry : this)
+				built.merge(entry.getValue(), 1, Integer::sum);
+			counts = built;
+		}
+		return counts;
+	}
+
+	/**
+	 * write the value counts to the counts file: [long magic][int size][int distinct values] then
+	 * [int count][int length][value utf-8] per value, and a crc32 of all that - to a temporary file renamed
+	 * into place, so there's never a half written one
+	 */
+	private void saveCounts() throws IOException {
+		Path temp = directory.resolve("counts.tmp");
+		CRC32 check = new CRC32();
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), check));
+			out.writeLong(COUNTS_MAGIC);
+			out.writeInt(size);
+			out.writeInt(counts.size());
+			for (Map.Entry<String,Integer> count : counts.entrySet()) {
+				byte[] value = count.getKey().getBytes(StandardCharsets.UTF_8);
+				out.writeInt(count.getValue());
+				out.writeInt(value.length);
+				out.write(value);
+			}
+			out.writeInt((int) check.getValue());
+			out.flush();
+			channel.force(true);
+		}
+		Files.move(temp, directory.resolve("counts"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * read back the value counts saved by the last close, if they're there and intact, then delete the file -
+	 * from here on it would be stale, and a crash has to leave them to be rebuilt
+	 */
+	private void loadCounts() throws IOException {
+		Path file = directory.resolve("counts");
+		Files.deleteIfExists(directory.resolve("counts.tmp"));
+		if (!Files.exists(file))
+			return;
+
+		CRC32 check = new CRC32();
+		try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16), check))) {
+			if (in.readLong()!=COUNTS_MAGIC)
+				return;
+			int names = in.readInt();
+			int distinct = in.readInt();
+			HashMap<String,Integer> loaded = new HashMap<>();
+			long total = 0;
+			for (int i=0; i<distinct; i++) {
+				int count = in.readInt();
+				byte[] value = new byte[in.readInt()];
+				in.readFully(value);
+				loaded.put(new String(value, StandardCharsets.UTF_8), count);
+				total += count;
+			}
+			int checksum = (int) check.getValue();
+			if (in.readInt()==checksum && names==size && total==size)
+				counts = loaded;
+		} catch (IOException | RuntimeException e) {
+			//a damaged file - they'll be rebuilt when they're needed
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	private void writeMeta(ByteBuffer to, int at) {
+		to.putLong(at, MAGIC).putInt(at+8, generation).putInt(at+12, capacity).putInt(at+16, size)
+			.putInt(at+20, tombstones).putInt(at+24, slabCount).putInt(at+28, end).putInt(at+32, slabSize)
+			.putLong(at+36, used).putLong(at+44, dead);
+	}
+
+	private void readMeta() {
+		generation = meta.getInt(8);
+		capacity = meta.getInt(12);
+		size = meta.getInt(16);
+		tombstones = meta.getInt(20);
+		slabCount = meta.getInt(24);
+		end = meta.getInt(28);
+		slabSize = meta.getInt(32);
+		used = meta.getLong(36);
+		dead = meta.getLong(44);
+	}
+
+	private void deleteGeneration(int generation) throws IOException {
+		Files.deleteIfExists(indexFile(generation));
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "data." + generation + ".*")) {
+			for (Path file : files)
+				Files.delete(file);
+		}
+	}
+
+	private Path indexFile(int generation) {
+		return directory.resolve("index." + generation);
+	}
+
+	private Path dataFile(int generation, int slab) {
+		return directory.resolve("data." + generation + "." + slab);
+	}
+
+	/**
+	 * map a whole file read/write, growing it to (at least) a size - the new part reads as zeros
+	 */
+	private static MappedByteBuffer map(Path file, long size) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			return channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+		}
+	}
+
+	private int hashAt(int pos) {
+		return index[pos >>> chunkBits].getInt(at(pos));
+	}
+
+	private long addressAt(int pos) {
+		return index[pos >>> chunkBits].getLong(at(pos)+8);
+	}
+
+	/**
+	 * the offset of a slot in its region of the index
+	 */
+	private int at(int pos) {
+		return (pos & chunkMask)*SLOT;
+	}
+
+	private static long address(int slab, int offset) {
+		return ((long) slab << 32) | offset;
+	}
+
+	private static int slab(long address) {
+		return (int) (address >>> 32);
+	}
+
+	private static int offset(long address) {
+		return (int) address;
+	}
+
+	/**
+	 * the store's value counts as ToyInMemDB's value index
+	 */
+	private final class Counts implements ValueIndex {
+		@Override
+		public void add(String value, String name) {
+		}
+
+		@Override
+		public void remove(String value, String name) {
+		}
+
+		@Override
+		public int count(String value) {
+			return counts().getOrDefault(value, 0);
+		}
+
+		@Override
+		public int size() {
+			return counts().size();
+		}
+
+		@Override
+		public Iterable<String> values() {
+			return counts().keySet();
+		}
+
+		@Override
+		public Iterator<String> names(String value) {
+			throw new UnsupportedOperationException("KEYS_WITH requires the inverted value index (start with -index)");
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.PrintWriter;
+
+/**
+ * running estimates of the heap used by each of ToyInMemDB's structures, kept up to date on every write,
+ * rollback and commit so reading them (or checking them against a limit) never walks anything
+ *
+ * the estimates assume a 64 bit JVM with compressed references and Latin-1 strings, HashMap style
+ * entries for the names and the value index, and a value String per name (as the command interpreter
+ * creates them).  They don't follow a store's own layout - the off heap and mapped stores keep their names
+ * and values outside the heap altogether - so they are for spotting which structure is growing, not a
+ * substitute for a heap dump.
+ *
+ * @author ronbuchanan
+ */
+final class MemoryAccount {
+	//a String (header, hash, coder and array reference) and its byte array's header
+	private static final int STRING = 24;
+	private static final int ARRAY = 16;
+	//a hash table entry and its share of the table
+	private static final int ENTRY = 40;
+	//an Integer count
+	private static final int COUNT = 16;
+	//a HashSet of names (the set, its map and a small table)
+	private static final int SET = 96;
+	//an undo record's slots in the log's parallel arrays and its index
+	private static final int RECORD = 32;
+
+	private long names;
+	private long values;
+	private long undo;
+
+	/**
+	 * the heap used by a String
+	 * @param s
+	 */
+	static long bytes(String s) {
+		return STRING + ((ARRAY + s.length() + 7) & ~7);
+	}
+
+	/**
+	 * account for a change to the database
+	 * @param name
+	 * @param before - the old value, null if the name wasn't set
+	 * @param after - the new value, null if the name has been deleted
+	 */
+	void change(String name, String before, String after) {
+		if (before==null)
+			names += ENTRY + bytes(name);
+		else
+			values -= bytes(before);
+		if (after==null)
+			names -= ENTRY + bytes(name);
+		else
+			values += bytes(after);
+	}
+
+	/**
+	 * account for an undo record being added to the log (it keeps the old value alive)
+	 * @param oldValue
+	 */
+	void logged(String oldValue) {
+		undo += RECORD + (oldValue==null ? 0 : bytes(oldValue));
+	}
+
+	/**
+	 * account for an undo record being replayed and discarded
+	 * @param oldValue
+	 */
+	void unlogged(String oldValue) {
+		undo -= RECORD + (oldValue==null ? 0 : bytes(oldValue));
+	}
+
+	/**
+	 * account for the whole log being discarded
+	 */
+	void committed() {
+		undo = 0;
+	}
+
+	long names() {
+		return names;
+	}
+
+	long values() {
+		return values;
+	}
+
+	/**
+	 * the value index - worked out from its size, which is kept anyway
+	 * @param distinctValues
+	 * @param indexedNames - the number of names in an inverted index, 0 for counts
+	 */
+	static long index(int distinctValues, int indexedNames) {
+		if (indexedNames==0)
+			return (long) distinctValues*(ENTRY+COUNT);
+		return (long) distinctValues*(ENTRY+SET) + (long) indexedNames*ENTRY;
+	}
+
+	long undo() {
+		return undo;
+	}
+
+	/**
+	 * the report for the MEMORY command
+	 * @param out
+	 * @param size - the number of names
+	 * @param distinctValues
+	 * @param index - the value index's bytes
+	 * @param records - the number of undo records
+	 * @param limit - the limit on the total, 0 for none
+	 */
+	void print(PrintWriter out, int size, int distinctValues, long index, int records, long limit) {
+		long total = names+values+index+undo;
+		out.printf("%-12s %14d bytes  (%d names)%n", "names", names, size);
+		out.printf("%-12s %14d bytes%n", "values", values);
+		out.printf("%-12s %14d bytes  (%d distinct values)%n", "value index", index, distinctValues);
+		out.printf("%-12s %14d bytes  (%d undo records)%n", "undo log", undo, records);
+		if (limit>0)
+			out.printf("%-12s %14d bytes  (%.1f%% of the %d byte limit)%n", "total", total, total*100.0/limit, limit);
+		else
+			out.printf("%-12s %14d bytes%n", "total", total);
+	}
+}
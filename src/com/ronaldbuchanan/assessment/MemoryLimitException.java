@@ -0,0 +1,17 @@
+package com.ronaldbuchanan.assessment;
+
+/**
+ * a write was refused because the database has reached its memory limit - nothing was changed
+ *
+ * @author ronbuchanan
+ */
+public class MemoryLimitException extends RuntimeException {
+	private static final long serialVersionUID = 3126945581097052417L;
+
+	/**
+	 * @param limit - the limit, in bytes
+	 */
+	public MemoryLimitException(long limit) {
+		super("OOM command not allowed when used memory > 'maxmemory' (" + limit + " bytes)");
+	}
+}
@@ -0,0 +1,296 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * one client's view of an MvccStore, with its own transaction stack
+ *
+ * outside of a transaction reads are as of the latest published commit (so never half of a commit that
+ * is still being stamped, and never newer than what a BEGIN right after would see) and each write is
+ * committed as it happens.  begin() registers the session as a reader as of the latest commit: from then
+ * on it reads as of that snapshot, plus its own uncommitted versions.  Writing a name that another session
+ * has an uncommitted version of, or has committed since the snapshot, fails straight away (no waiting) with
+ * a TransactionConflictException, and the transaction is rolled back.
+ *
+ * the counts and the size of the snapshot are adjusted by this session's own uncommitted writes, which are
+ * kept as deltas.  Rollback unlinks the versions the transaction installed and reverses their deltas.
+ *
+ * a session belongs to one thread at a time, the store can be shared by any number
+ *
+ * @author ronbuchanan
+ */
+public class MvccSession implements InMemDB {
+	/*
+	 * Principal data structures:
+	 *
+	 * 		readVersion - the sequence number the transaction reads as of (read by the collector)
+	 *
+	 * 		installed, previous - the versions installed by the transaction, and the values they replaced
+	 *
+	 * 		levelStarts - where each nested transaction starts in installed (the depth is the current
+	 * 					  transaction id)
+	 *
+	 * 		countDeltas, sizeDelta - the difference the uncommitted writes make to the counts and the size
+	 */
+
+	private final MvccStore store;
+	volatile long readVersion;
+	private final ArrayList<MvccStore.Version> installed = new ArrayList<>();
+	private final ArrayList<String> previous = new ArrayList<>();
+	private int[] levelStarts = new int[8];
+	private int depth = 0;
+	private final HashMap<String,Integer> countDeltas = new HashMap<>();
+	private int sizeDelta = 0;
+
+	MvccSession(MvccStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * the snapshot writes are checked against - outside of a transaction only another session's uncommitted
+	 * version is a conflict
+	 */
+	private long writeAs() {
+		return depth>0 ? readVersion : MvccStore.LATEST;
+	}
+
+	/**
+	 * the snapshot to read as of - outside of a transaction the latest published commit, which has to be
+	 * read again after the read (see stable()) since the collector may prune behind it once it's superseded
+	 */
+	private long readAs() {
+		return depth>0 ? readVersion : store.committed();
+	}
+
+	/**
+	 * whether a read as of a snapshot is still good - a transaction's snapshot is held until it ends, the
+	 * latest commit only until the next one
+	 */
+	private boolean stable(long snapshot) {
+		return depth>0 || snapshot==store.committed();
+	}
+
+	@Override
+	public void set(String name, String value) {
+		write(name, value);
+	}
+
+	@Override
+	public void delete(String name) {
+		write(name, null);
+	}
+
+	/**
+	 * install a new version of a name, committing it straight away outside of a transaction
+	 * @param name
+	 * @param value - null to delete
+	 */
+	private void write(String name, String value) {
+		long snapshot = writeAs();
+		for (;;) {
+			MvccStore.Version head = store.database.get(name);
+			if (head!=null && (head.seq==MvccStore.UNCOMMITTED ? head.owner!=this : head.seq>snapshot)) {
+				if (depth>0)
+					abort();
+				throw new TransactionConflictException(name);
+			}
+
+			String oldValue = head==null ? null : head.value;
+			if (value==null ? oldValue==null : value.equals(oldValue))
+				return; //no change, it's a push
+
+			MvccStore.Version version = new MvccStore.Version(name, value, this, head);
+			boolean swapped = head==null
+					? store.database.putIfAbsent(name, version)==null
+					: store.database.replace(name, head, version);
+			if (!swapped)
+				continue; //raced with another writer (or the collector), look again
+
+			installed.add(version);
+			previous.add(oldValue);
+			adjust(oldValue, value);
+			if (depth==0) {
+				store.commit(installed);
+				clear();
+			}
+			return;
+		}
+	}
+
+	private void adjust(String oldValue, String newValue) {
+		if (oldValue!=null) {
+			countDeltas.merge(oldValue, -1, Integer::sum);
+			sizeDelta--;
+		}
+		if (newValue!=null) {
+			countDeltas.merge(newValue, 1, Integer::sum);
+			sizeDelta++;
+		}
+	}
+
+	@Override
+	public String lookup(String name) {
+		for (;;) {
+			long snapshot = readAs();
+			MvccStore.Version version = MvccStore.visible(store.database.get(name), snapshot, this);
+			if (stable(snapshot))
+				return version==null ? null : version.value;
+		}
+	}
+
+	@Override
+	public int count(String value) {
+		for (;;) {
+			long snapshot = readAs();
+			int count = store.count(value, snapshot);
+			if (stable(snapshot))
+				return count + countDeltas.getOrDefault(value, 0);
+		}
+	}
+
+	@Override
+	public int size() {
+		for (;;) {
+			long snapshot = readAs();
+			MvccStore.Stats stats = store.stats(snapshot);
+			if (stats!=null && stable(snapshot))
+				return stats.size + sizeDelta;
+		}
+	}
+
+	@Override
+	public int distinctValues() {
+		long snapshot;
+		MvccStore.Stats stats;
+		do {
+			snapshot = readAs();
+			stats = store.stats(snapshot);
+		} while (stats==null || !stable(snapshot));
+		int distinct = stats.distinct;
+		for (Map.Entry<String,Integer> delta : countDeltas.entrySet()) {
+			int before = store.count(delta.getKey(), snapshot);
+			int after = before+delta.getValue();
+			if (before==0 && after>0)
+				distinct++;
+			else if (before>0 && after==0)
+				distinct--;
+		}
+		return distinct;
+	}
+
+	@Override
+	public void begin() {
+		if (depth==0)
+			store.acquire(this);
+		if (depth==levelStarts.length)
+			levelStarts = Arrays.copyOf(levelStarts, depth*2);
+		levelStarts[depth++] = installed.size();
+	}
+
+	@Override
+	public boolean rollback() {
+		if (depth==0)
+			return false;
+
+		//unlink the level's versions, newest first, each being the head of its chain
+		int start = levelStarts[--depth];
+		for (int i = installed.size()-1; i>=start; i--) {
+			MvccStore.Version version = installed.remove(i);
+			store.database.computeIfPresent(version.name, (name, head) -> head==version ? version.next : head);
+
+			String oldValue = previous.remove(i);
+			adjust(version.value, oldValue);
+		}
+		if (depth==0)
+			end();
+		return true;
+	}
+
+	@Override
+	public void commit() {
+		if (depth==0)
+			return;
+		try {
+			if (!installed.isEmpty())
+				store.commit(installed);
+		} finally {
+			end();
+		}
+	}
+
+	/**
+	 * a write conflicted - roll the whole transaction back
+	 */
+	private void abort() {
+		while (rollback())
+			;
+	}
+
+	private void end() {
+		depth = 0;
+		clear();
+		store.release(this);
+	}
+
+	private void clear() {
+		installed.clear();
+		previous.clear();
+		countDeltas.clear();
+		sizeDelta = 0;
+	}
+
+	@Override
+	public int transactionDepth() {
+		return depth;
+	}
+
+	/**
+	 * a copy as of the latest commit
+	 */
+	@Override
+	public Iterable<Map.Entry<String,String>> snapshot() {
+		if (depth>0)
+			throw new IllegalStateException("snapshots can't be taken inside a transaction");
+
+		store.acquire(this);
+		try {
+			HashMap<String,String> copy = new HashMap<>();
+			for (MvccStore.Version head : store.database.values()) {
+				MvccStore.Version version = MvccStore.visible(head, readVersion, this);
+				if (version!=null && version.value!=null)
+					copy.put(version.name, version.value);
+			}
+			return copy.entrySet();
+		} finally {
+			store.release(this);
+		}
+	}
+
+	@Override
+	public void dump(PrintWriter out) {
+		long snapshot = readAs();
+		out.println("database entries (as of "+(depth>0 ? "commit #"+snapshot : "the latest commit")+")");
+		for (MvccStore.Version head : store.database.values()) {
+			MvccStore.Version version = MvccStore.visible(head, snapshot, this);
+			if (version!=null && version.value!=null) {
+				int versions = 0;
+				for (MvccStore.Version v = head; v!=null; v = v.next)
+					versions++;
+				out.println("\t"+version.name+"="+version.value+" ("+versions+" versions)");
+			}
+		}
+
+		out.println("currentTxId = "+depth);
+		out.println("pending transactions");
+		for (int txId = 1; txId<=depth; txId++) {
+			out.println("\t transaction #"+txId+" contains:");
+			int end = txId<depth ? levelStarts[txId] : installed.size();
+			for (int i = levelStarts[txId-1]; i<end; i++)
+				out.println("\t\t"+installed.get(i).name+" ==>> old:"+previous.get(i) + ", new:"+installed.get(i).value);
+		}
+	}
+}
@@ -0,0 +1,320 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * multi-version store shared by any number of sessions (see MvccSession)
+ *
+ * every name holds a chain of versions, newest first, each stamped with the sequence number of the commit
+ * that wrote it.  A transaction reads as of the sequence number that was current when it began: get() walks
+ * the chain to the first version committed at or before that (no locks, no copying), so readers never wait
+ * on writers and never see anything committed after they started.  Writes install uncommitted versions at
+ * the head of the chain, stamped by commit(), which then publishes the new sequence number - readers outside
+ * of a transaction read as of the published one too, so a commit appears all at once.  Rollback
+ * unlinks the transaction's versions again.  The value counts and the size are versioned the same way (by
+ * commit(), the only thing that changes them).
+ *
+ * a background collector prunes versions no live transaction can see any more - everything older than the
+ * newest version committed at or before the oldest live snapshot - and drops names whose only remaining
+ * version is a delete.  Only the names and values written since its last pass are visited.
+ *
+ * @author ronbuchanan
+ */
+public class MvccStore implements Closeable {
+	//the sequence number of a version that hasn't been committed
+	static final long UNCOMMITTED = Long.MAX_VALUE;
+
+	//reading as of LATEST sees the newest committed version
+	static final long LATEST = Long.MAX_VALUE-1;
+
+	/*
+	 * Principal data structures:
+	 *
+	 * 		database - name => version chain
+	 *
+	 * 		valueCount - value => count chain
+	 *
+	 * 		stats - size and distinct value chain
+	 *
+	 * 		readers - the sessions with a transaction (and so a snapshot) open
+	 *
+	 * 		garbageNames, garbageValues - the chains written since the collector last looked at them
+	 */
+
+	final ConcurrentHashMap<String,Version> database = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String,Count> valueCount = new ConcurrentHashMap<>();
+	private volatile Stats stats = new Stats(0, 0, 0, null);
+	private volatile long committed = 0;
+
+	private final Set<MvccSession> readers = ConcurrentHashMap.newKeySet();
+	private final Set<String> garbageNames = ConcurrentHashMap.newKeySet();
+	private final Set<String> garbageValues = ConcurrentHashMap.newKeySet();
+	private final ScheduledExecutorService collector;
+
+	public MvccStore() {
+		this(1000);
+	}
+
+	/**
+	 * @param collectMillis - how often the collector runs
+	 */
+	public MvccStore(long collectMillis) {
+		collector = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "mvcc-collector");
+			thread.setDaemon(true);
+			return thread;
+		});
+		collector.scheduleWithFixedDelay(() -> {
+			try {
+				collect();
+			} catch (RuntimeException e) {
+				System.err.println("version collection failed: " + e);
+			}
+		}, collectMillis, collectMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return a new session on this store
+	 */
+	public MvccSession open() {
+		return new MvccSession(this);
+	}
+
+	/**
+	 * register a session as a reader as of the latest commit - the collector keeps everything it can see
+	 * until it is released
+	 */
+	void acquire(MvccSession session) {
+		readers.add(session);
+		long snapshot;
+		do {
+			//re-check, so a commit (and collection) between reading the sequence number and publishing it
+			//can't prune what this snapshot needs
+			snapshot = committed;
+			session.readVersion = snapshot;
+		} while (snapshot!=committed);
+	}
+
+	void release(MvccSession session) {
+		readers.remove(session);
+	}
+
+	/**
+	 * the sequence number of the latest commit to be published - every version and count stamped with it
+	 * (or before) is in place
+	 */
+	long committed() {
+		return committed;
+	}
+
+	/**
+	 * the first version of a chain that can be seen as of snapshot by owner (who sees their own uncommitted versions)
+	 */
+	static Version visible(Version version, long snapshot, MvccSession owner) {
+		for (; version!=null; version = version.next) {
+			long seq = version.seq;
+			if (seq==UNCOMMITTED ? version.owner==owner : seq<=snapshot)
+				return version;
+		}
+		return null;
+	}
+
+	int count(String value, long snapshot) {
+		for (Count count = valueCount.get(value); count!=null; count = count.next)
+			if (count.seq<=snapshot)
+				return count.count;
+		return 0;
+	}
+
+	/**
+	 * the size and distinct values as of snapshot, or null if the collector has pruned them - a reader
+	 * outside of a transaction isn't registered, so its snapshot can be pruned once it's been superseded
+	 */
+	Stats stats(long snapshot) {
+		Stats s = stats;
+		while (s!=null && s.seq>snapshot)
+			s = s.next;
+		return s;
+	}
+
+	/**
+	 * stamp a transaction's versions with the next sequence number, update the counts, and publish it
+	 * @param installed - the versions the transaction installed, oldest first
+	 */
+	synchronized void commit(List<Version> installed) {
+		long seq = committed+1;
+		HashMap<String,Integer> deltas = new HashMap<>();
+		int sizeDelta = 0;
+
+		for (int i=installed.size()-1; i>=0; i--) {
+			Version version = installed.get(i);
+			if (database.get(version.name)!=version)
+				continue; //superseded by a later write in the same transaction
+
+			//skip over the transaction's earlier versions of the name to the committed one
+			Version below = version.next;
+			while (below!=null && below.seq==UNCOMMITTED)
+				below = below.next;
+			version.next = below;
+
+			String oldValue = below==null ? null : below.value;
+			if (oldValue!=null) {
+				deltas.merge(oldValue, -1, Integer::sum);
+				sizeDelta--;
+			}
+			if (version.value!=null) {
+				deltas.merge(version.value, 1, Integer::sum);
+				sizeDelta++;
+			}
+
+			version.seq = seq;
+			version.owner = null;
+			garbageNames.add(version.name);
+		}
+
+		Stats current = stats;
+		int distinct = current.distinct;
+		for (Map.Entry<String,Integer> delta : deltas.entrySet()) {
+			int change = delta.getValue();
+			if (change==0)
+				continue;
+			Count count = valueCount.compute(delta.getKey(), (value, head) -> new Count((head==null ? 0 : head.count)+change, seq, head));
+			int before = count.count-change;
+			if (before==0)
+				distinct++;
+			else if (count.count==0)
+				distinct--;
+			garbageValues.add(delta.getKey());
+		}
+
+		stats = new Stats(current.size+sizeDelta, distinct, seq, current);
+		committed = seq;
+	}
+
+	/**
+	 * the oldest snapshot anyone can still read as of
+	 */
+	private long oldest() {
+		long oldest = committed;
+		for (MvccSession reader : readers)
+			oldest = Math.min(oldest, reader.readVersion);
+		return oldest;
+	}
+
+	/**
+	 * one pass of the collector
+	 */
+	void collect() {
+		long oldest = oldest();
+
+		//chains with versions someone may still need are looked at again next time
+		ArrayList<String> retry = new ArrayList<>();
+		for (String name : garbageNames) {
+			garbageNames.remove(name);
+			database.computeIfPresent(name, (n, head) -> {
+				Version version = head;
+				while (version!=null && (version.seq==UNCOMMITTED || version.seq>oldest))
+					version = version.next;
+				if (version!=head)
+					retry.add(name);
+				if (version==null)
+					return head;
+
+				version.next = null;
+				return version==head && version.value==null ? null : head;
+			});
+		}
+		garbageNames.addAll(retry);
+
+		retry.clear();
+		for (String value : garbageValues) {
+			garbageValues.remove(value);
+			valueCount.computeIfPresent(value, (v, head) -> {
+				Count count = head;
+				while (count!=null && count.seq>oldest)
+					count = count.next;
+				if (count!=head)
+					retry.add(value);
+				if (count==null)
+					return head;
+
+				count.next = null;
+				return count==head && count.count==0 ? null : head;
+			});
+		}
+		garbageValues.addAll(retry);
+
+		Stats s = stats;
+		while (s!=null && s.seq>oldest)
+			s = s.next;
+		if (s!=null)
+			s.next = null;
+	}
+
+	/**
+	 * stop the collector
+	 */
+	@Override
+	public void close() {
+		collector.shutdownNow();
+	}
+
+	/**
+	 * one version of a name (a null value is a delete)
+	 */
+	static final class Version {
+		final String name;
+		final String value;
+		volatile long seq = UNCOMMITTED;
+		MvccSession owner;
+		volatile Version next;
+
+		Version(String name, String value, MvccSession owner, Version next) {
+			this.name = name;
+			this.value = value;
+			this.owner = owner;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * one version of a value's count
+	 */
+	private static final class Count {
+		final int count;
+		final long seq;
+		volatile Count next;
+
+		Count(int count, long seq, Count next) {
+			this.count = count;
+			this.seq = seq;
+			this.next = next;
+		}
+	}
+
+	/**
+	 * one version of the size and number of distinct values
+	 */
+	static final class Stats {
+		final int size;
+		final int distinct;
+		final long seq;
+		volatile Stats next;
+
+		Stats(int size, int distinct, long seq, Stats next) {
+			this.size = size;
+			this.distinct = distinct;
+			this.seq = seq;
+			this.next = next;
+		}
+	}
+}
@@ -0,0 +1,456 @@
+package com.ronaldbuchanan.assessment;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * store that keeps the names and values outside of the Java heap, so the garbage collector never has to
+ * trace (or copy) them and pause times don't grow with the size of the database
+ *
+ * each entry is a record appended to a big slab of memory:
+ * 		[int hash][int name length][int value length][name utf-8][value utf-8]
+ * and the index is an open addressing table (as in OpenAddressingKeyStore) of hash => record address
+ * (slab << 32 | offset), also off heap.  The heap only holds the slab and index buffer objects.
+ *
+ * the index is split across buffers of up to 2^20 slots (16MB), slot pos living in buffer pos >>> 20, so
+ * neither a buffer nor an offset into one has to cover the whole table - a single buffer would overflow its
+ * int capacity at 2^27 slots (about 50M names).  The table itself stops growing at 2^30 slots, and the store
+ * refuses new names once that is 3/4 full (about 805M names).
+ *
+ * overwriting a value with one of the same encoded length is done in place, anything else appends a new
+ * record and leaves the old one dead.  Once more than half of a slab is dead its live records are copied
+ * to the end of the current slab (found through the index, which is then pointed at the copy) and the slab
+ * is given back.
+ *
+ * names are compared against the records without decoding them (ASCII at least), only get() creates a
+ * String - the value it returns
+ *
+ * @author ronbuchanan
+ */
+final class OffHeapKeyStore implements KeyStore {
+	private static final int HEADER = 12;
+	private static final int SLOT = 16;
+	static final int DEFAULT_SLAB_SIZE = 1 << 26;
+	static final int DEFAULT_CHUNK_BITS = 20;
+	private static final int INITIAL_CAPACITY = 1 << 10;
+	private static final int MAX_CAPACITY = 1 << 30;
+
+	private final SlabAllocator allocator;
+	private final int slabSize;
+	private final int chunkBits;
+	private final int chunkMask;
+
+	/*
+	 * Principal data structures:
+	 *
+	 * 		index - a 16 byte slot per entry: a spread hash (0 is an empty slot) and the record address, side by
+	 * 		side so a probe touches a single cache line, in buffers of 2^chunkBits slots
+	 *
+	 * 		slabs - the records, appended at ends[slab] of the active slab, with dead[slab] bytes no longer in use
+	 *
+	 * 		views - a duplicate of each slab for the bulk (relative) transfers
+	 */
+
+	private ByteBuffer[] index;
+	private int capacity;
+	private int size = 0;
+
+	private ByteBuffer[] slabs = new ByteBuffer[4];
+	private ByteBuffer[] views = new ByteBuffer[4];
+	private int[] ends = new int[4];
+	private int[] dead = new int[4];
+	private int active = -1;
+	private boolean retired = false;
+	private boolean compacting = false;
+
+	private byte[] scratch = new byte[256];
+
+	OffHeapKeyStore() {
+		this(SlabAllocator.DIRECT, DEFAULT_SLAB_SIZE);
+	}
+
+	/**
+	 * @param allocator - where the memory comes from
+	 * @param slabSize - the size of each slab (a bigger record gets a slab of its own)
+	 */
+	OffHeapKeyStore(SlabAllocator allocator, int slabSize) {
+		this(allocator, slabSize, DEFAULT_CHUNK_BITS);
+	}
+
+	/**
+	 * @param allocator - where the memory comes from
+	 * @param slabSize - the size of each slab (a bigger record gets a slab of its own)
+	 * @param chunkBits - log2 of the number of index slots in each of the index's buffers (at most 26)
+	 */
+	OffHeapKeyStore(SlabAllocator allocator, int slabSize, int chunkBits) {
+		this.allocator = allocator;
+		this.slabSize = slabSize;
+		this.chunkBits = chunkBits;
+		this.chunkMask = (1 << chunkBits)-1;
+		capacity = INITIAL_CAPACITY;
+		index = allocateIndex(capacity);
+	}
+
+	@Override
+	public String get(String name) {
+		int pos = find(name, OpenAddressingKeyStore.hash(name));
+		return pos<0 ? null : value(addressAt(pos));
+	}
+
+	@Override
+	public String put(String name, String value) {
+		int hash = OpenAddressingKeyStore.hash(name);
+		int pos = find(name, hash);
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+		if (pos>=0) {
+			long address = addressAt(pos);
+			String oldValue = value(address);
+			int slab = slab(address);
+			int offset = offset(address);
+			int nameLength = slabs[slab].getInt(offset+4);
+			if (slabs[slab].getInt(offset+8)==bytes.length) {
+				//same size, just overwrite it
+				view(slab, offset+HEADER+nameLength).put(bytes);
+			} else {
+				putAddress(pos, append(hash, name.getBytes(StandardCharsets.UTF_8), bytes));
+				kill(address);
+			}
+			reclaimRetired();
+			return oldValue;
+		}
+
+		if (capacity==MAX_CAPACITY && (size+1)*4L>capacity*3L)
+			throw new IllegalStateException("the off heap store is full (" + size + " names)");
+		pos = -pos-1;
+		putSlot(pos, hash, append(hash, name.getBytes(StandardCharsets.UTF_8), bytes));
+		if (++size*4L>capacity*3L && capacity<MAX_CAPACITY)
+			resize(capacity*2);
+		reclaimRetired();
+		return null;
+	}
+
+	@Override
+	public String remove(String name) {
+		int pos = find(name, OpenAddressingKeyStore.hash(name));
+		if (pos<0)
+			return null;
+
+		long address = addressAt(pos);
+		String oldValue = value(address);
+		removeSlot(pos);
+		kill(address);
+		if (--size*8<capacity && capacity>INITIAL_CAPACITY)
+			resize(capacity/2);
+		return oldValue;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * O(n) - decodes everything onto the heap
+	 */
+	@Override
+	public Iterable<Map.Entry<String,String>> copy() {
+		ArrayList<Map.Entry<String,String>> copy = new ArrayList<>(size);
+		for (Map.Entry<String,String> entry : this)
+			copy.add(entry);
+		return copy;
+	}
+
+	@Override
+	public Iterator<Map.Entry<String,String>> iterator() {
+		return new Iterator<Map.Entry<String,String>>() {
+			private int pos = next(0);
+
+			private int next(int from) {
+				while (from<capacity && hashAt(from)==0)
+					from++;
+				return from;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return pos<capacity;
+			}
+
+			@Override
+			public Map.Entry<String,String> next() {
+				if (pos>=capacity)
+					throw new NoSuchElementException();
+				long address = addressAt(pos);
+				pos = next(pos+1);
+				return new AbstractMap.SimpleImmutableEntry<>(name(address), value(address));
+			}
+		};
+	}
+
+	/**
+	 * @return the slot holding the name, or -(the empty slot it would go in)-1
+	 */
+	private int find(String name, int hash) {
+		int mask = capacity-1;
+		for (int pos = hash & mask; ; pos = (pos+1) & mask) {
+			int slot = hashAt(pos);
+			if (slot==0)
+				return -pos-1;
+			if (slot==hash && matches(addressAt(pos), name))
+				return pos;
+		}
+	}
+
+	/**
+	 * @return the slot pointing at a record, -1 if it's dead
+	 */
+	private int find(int hash, long address) {
+		int mask = capacity-1;
+		for (int pos = hash & mask; hashAt(pos)!=0; pos = (pos+1) & mask)
+			if (addressAt(pos)==address)
+				return pos;
+		return -1;
+	}
+
+	/**
+	 * compare a record's name with a String, byte for char while they're ASCII
+	 */
+	private boolean matches(long address, String name) {
+		ByteBuffer slab = slabs[slab(address)];
+		int offset = offset(address);
+		int length = slab.getInt(offset+4);
+		int chars = name.length();
+		if (length!=chars)
+			return length>chars && name(address).equals(name); //only a multi-byte name can still match
+
+		offset += HEADER;
+		for (int i=0; i<chars; i++) {
+			char c = name.charAt(i);
+			if (c>=0x80)
+				return name(address).equals(name);
+			if (slab.get(offset+i)!=(byte) c)
+				return false;
+		}
+		return true;
+	}
+
+	private String name(long address) {
+		int slab = slab(address);
+		int offset = offset(address);
+		return decode(slab, offset+HEADER, slabs[slab].getInt(offset+4));
+	}
+
+	private String value(long address) {
+		int slab = slab(address);
+		int offset = offset(address);
+		int nameLength = slabs[slab].getInt(offset+4);
+		return decode(slab, offset+HEADER+nameLength, slabs[slab].getInt(offset+8));
+	}
+
+	private String decode(int slab, int offset, int length) {
+		if (scratch.length<length)
+			scratch = new byte[Math.max(length, scratch.length*2)];
+		view(slab, offset).get(scratch, 0, length);
+		return new String(scratch, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private ByteBuffer view(int slab, int offset) {
+		ByteBuffer view = views[slab];
+		view.limit(view.capacity()).position(offset);
+		return view;
+	}
+
+	private long append(int hash, byte[] name, byte[] value) {
+		int length = HEADER+name.length+value.length;
+		int slab = room(length);
+		int offset = ends[slab];
+		slabs[slab].putInt(offset, hash).putInt(offset+4, name.length).putInt(offset+8, value.length);
+		view(slab, offset+HEADER).put(name).put(value);
+		ends[slab] = offset+length;
+		return address(slab, offset);
+	}
+
+	/**
+	 * copy a live record to the end of the active slab
+	 */
+	private long move(int slab, int offset, int length) {
+		int to = room(length);
+		int at = ends[to];
+		ByteBuffer from = view(slab, offset);
+		from.limit(offset+length);
+		view(to, at).put(from);
+		ends[to] = at+length;
+		return address(to, at);
+	}
+
+	/**
+	 * the slab to append a record to, starting a new one if it doesn't fit in the active one
+	 */
+	private int room(int length) {
+		if (active>=0 && ends[active]+length<=slabs[active].capacity())
+			return active;
+
+		int slab = 0;
+		while (slab<slabs.length && slabs[slab]!=null)
+			slab++;
+		if (slab==slabs.length) {
+			slabs = Arrays.copyOf(slabs, slab*2);
+			views = Arrays.copyOf(views, slab*2);
+			ends = Arrays.copyOf(ends, slab*2);
+			dead = Arrays.copyOf(dead, slab*2);
+		}
+		slabs[slab] = allocator.allocate(Math.max(slabSize, length));
+		views[slab] = slabs[slab].duplicate();
+		ends[slab] = 0;
+		dead[slab] = 0;
+
+		//the old slab may have died while it was active, it's looked at once the write is done
+		retired = active>=0;
+		active = slab;
+		return slab;
+	}
+
+	/**
+	 * a record is no longer in use
+	 */
+	private void kill(long address) {
+		int slab = slab(address);
+		int offset = offset(address);
+		dead[slab] += HEADER + slabs[slab].getInt(offset+4) + slabs[slab].getInt(offset+8);
+		if (slab!=active)
+			reclaim(slab);
+	}
+
+	/**
+	 * look over the slabs that are no longer being appended to (compacting one can fill up the active
+	 * slab too, so there may be several)
+	 */
+	private void reclaimRetired() {
+		while (retired) {
+			retired = false;
+			for (int slab=0; slab<slabs.length; slab++)
+				if (slabs[slab]!=null && slab!=active)
+					reclaim(slab);
+		}
+	}
+
+	/**
+	 * give a slab back once everything in it is dead, or compact it once more than half of it is
+	 */
+	private void reclaim(int slab) {
+		if (dead[slab]==ends[slab])
+			release(slab);
+		else if (!compacting && dead[slab]*2>ends[slab])
+			compact(slab);
+	}
+
+	private void compact(int slab) {
+		compacting = true;
+		try {
+			ByteBuffer records = slabs[slab];
+			for (int offset = 0; offset<ends[slab]; ) {
+				int hash = records.getInt(offset);
+				int length = HEADER + records.getInt(offset+4) + records.getInt(offset+8);
+				int pos = find(hash, address(slab, offset));
+				if (pos>=0)
+					putAddress(pos, move(slab, offset, length));
+				offset += length;
+			}
+		} finally {
+			compacting = false;
+		}
+		release(slab);
+	}
+
+	private void release(int slab) {
+		allocator.free(slabs[slab]);
+		slabs[slab] = null;
+		views[slab] = null;
+		ends[slab] = 0;
+		dead[slab] = 0;
+	}
+
+	private void resize(int newCapacity) {
+		ByteBuffer[] oldIndex = index;
+		int oldCapacity = capacity;
+		index = allocateIndex(newCapacity);
+		capacity = newCapacity;
+
+		int mask = newCapacity-1;
+		for (int i=0; i<oldCapacity; i++) {
+			ByteBuffer chunk = oldIndex[i >>> chunkBits];
+			int at = (i & chunkMask)*SLOT;
+			int hash = chunk.getInt(at);
+			if (hash==0)
+				continue;
+			int pos = hash & mask;
+			while (hashAt(pos)!=0)
+				pos = (pos+1) & mask;
+			putSlot(pos, hash, chunk.getLong(at+8));
+		}
+		for (ByteBuffer chunk : oldIndex)
+			allocator.free(chunk);
+	}
+
+	/**
+	 * the buffers for an index of capacity slots - a single smaller one until it needs a whole chunk
+	 */
+	private ByteBuffer[] allocateIndex(int capacity) {
+		int slots = Math.min(capacity, 1 << chunkBits);
+		ByteBuffer[] chunks = new ByteBuffer[capacity/slots];
+		for (int i=0; i<chunks.length; i++)
+			chunks[i] = allocator.allocate(slots*SLOT);
+		return chunks;
+	}
+
+	/**
+	 * backward shift deletion (see OpenAddressingKeyStore)
+	 */
+	private void removeSlot(int hole) {
+		int mask = capacity-1;
+		for (int pos = (hole+1) & mask; hashAt(pos)!=0; pos = (pos+1) & mask) {
+			int home = hashAt(pos) & mask;
+			boolean movable = hole<=pos ? (home<=hole || home>pos) : (home<=hole && home>pos);
+			if (movable) {
+				putSlot(hole, hashAt(pos), addressAt(pos));
+				hole = pos;
+			}
+		}
+		index[hole >>> chunkBits].putInt((hole & chunkMask)*SLOT, 0);
+	}
+
+	private int hashAt(int pos) {
+		return index[pos >>> chunkBits].getInt((pos & chunkMask)*SLOT);
+	}
+
+	private long addressAt(int pos) {
+		return index[pos >>> chunkBits].getLong((pos & chunkMask)*SLOT+8);
+	}
+
+	private void putSlot(int pos, int hash, long address) {
+		index[pos >>> chunkBits].putInt((pos & chunkMask)*SLOT, hash).putLong((pos & chunkMask)*SLOT+8, address);
+	}
+
+	private void putAddress(int pos, long address) {
+		index[pos >>> chunkBits].putLong((pos & chunkMask)*SLOT+8, address);
+	}
+
+	private static long address(int slab, int offset) {
+		return ((long) slab << 32) | offset;
+	}
+
+	private static int slab(long address) {
+		return (int) (address >>> 32);
+	}
+
+	private static int offset(long address) {
+		return (int) address;
+	}
+}
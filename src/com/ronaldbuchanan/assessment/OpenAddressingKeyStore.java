@@ -0,0 +1,195 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * open addressing store - names, values and their (spread) hash codes in parallel arrays, linear probing
+ *
+ * there is no entry object, so an entry costs the three array slots (12 bytes with compressed oops, 16-32
+ * bytes per entry at a load factor between 3/8 and 3/4) against the 32 byte HashMap.Node plus its share of
+ * the table.  A hash of 0 marks an empty slot, so probing only reads the cached hashes in a flat int[] and
+ * touches a name (another cache miss) only when the hash matches - a miss usually costs a single cache
+ * line.  Deletes use backward shift deletion, so there are no tombstones and lookups never slow down with
+ * churn.
+ *
+ * @author ronbuchanan
+ */
+final class OpenAddressingKeyStore implements KeyStore {
+	private static final int INITIAL_CAPACITY = 16;
+
+	private int[] hashes = new int[INITIAL_CAPACITY];
+	private String[] names = new String[INITIAL_CAPACITY];
+	private String[] values = new String[INITIAL_CAPACITY];
+	private int size = 0;
+
+	@Override
+	public String get(String name) {
+		int hash = hash(name);
+		int mask = names.length-1;
+		for (int pos = hash & mask; ; pos = (pos+1) & mask) {
+			int slot = hashes[pos];
+			if (slot==0)
+				return null;
+			if (slot==hash && (names[pos]==name || names[pos].equals(name)))
+				return values[pos];
+		}
+	}
+
+	@Override
+	public String put(String name, String value) {
+		int hash = hash(name);
+		int mask = names.length-1;
+		int pos = hash & mask;
+		for (int slot; (slot = hashes[pos])!=0; pos = (pos+1) & mask) {
+			if (slot==hash && (names[pos]==name || names[pos].equals(name))) {
+				String oldValue = values[pos];
+				values[pos] = value;
+				return oldValue;
+			}
+		}
+
+		hashes[pos] = hash;
+		names[pos] = name;
+		values[pos] = value;
+		if (++size*4>names.length*3)
+			resize(names.length*2);
+		return null;
+	}
+
+	@Override
+	public String remove(String name) {
+		int hash = hash(name);
+		int mask = names.length-1;
+		for (int pos = hash & mask; ; pos = (pos+1) & mask) {
+			int slot = hashes[pos];
+			if (slot==0)
+				return null;
+			if (slot==hash && (names[pos]==name || names[pos].equals(name))) {
+				String oldValue = values[pos];
+				removeSlot(pos, mask);
+				//give the memory back after a mass delete (the gap between 1/8 and 3/4 stops it thrashing)
+				if (--size*8<names.length && names.length>INITIAL_CAPACITY)
+					resize(names.length/2);
+				return oldValue;
+			}
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * the number of slots in the table
+	 */
+	int capacity() {
+		return names.length;
+	}
+
+	/**
+	 * O(n) - copies the arrays, which is about as fast as copying memory gets
+	 */
+	@Override
+	public Iterable<Map.Entry<String,String>> copy() {
+		String[] names = Arrays.copyOf(this.names, this.names.length);
+		String[] values = Arrays.copyOf(this.values, this.values.length);
+		return () -> new EntryIterator(names, values);
+	}
+
+	@Override
+	public Iterator<Map.Entry<String,String>> iterator() {
+		return new EntryIterator(names, values);
+	}
+
+	private void resize(int capacity) {
+		int[] oldHashes = hashes;
+		String[] oldNames = names;
+		String[] oldValues = values;
+		hashes = new int[capacity];
+		names = new String[capacity];
+		values = new String[capacity];
+
+		int mask = capacity-1;
+		for (int i=0; i<oldNames.length; i++) {
+			if (oldHashes[i]==0)
+				continue;
+			int pos = oldHashes[i] & mask;
+			while (hashes[pos]!=0)
+				pos = (pos+1) & mask;
+			hashes[pos] = oldHashes[i];
+			names[pos] = oldNames[i];
+			values[pos] = oldValues[i];
+		}
+	}
+
+	/**
+	 * backward shift deletion - pulls later entries of the probe sequence into the hole so lookups
+	 * never stop early (no tombstones needed)
+	 */
+	private void removeSlot(int hole, int mask) {
+		for (int pos = (hole+1) & mask; hashes[pos]!=0; pos = (pos+1) & mask) {
+			int home = hashes[pos] & mask;
+			boolean movable = hole<=pos ? (home<=hole || home>pos) : (home<=hole && home>pos);
+			if (movable) {
+				hashes[hole] = hashes[pos];
+				names[hole] = names[pos];
+				values[hole] = values[pos];
+				hole = pos;
+			}
+		}
+		hashes[hole] = 0;
+		names[hole] = null;
+		values[hole] = null;
+	}
+
+	/**
+	 * String hashes of similar names (name1, name2...) are nearly sequential, which linear probing turns
+	 * into long runs of occupied slots that every miss has to walk - so mix the bits up properly (0 is
+	 * reserved for empty slots)
+	 */
+	static int hash(String name) {
+		int h = name.hashCode() * 0x9E3779B9;
+		h ^= h >>> 16;
+		return h==0 ? 1 : h;
+	}
+
+	/**
+	 * walks the occupied slots
+	 */
+	private static final class EntryIterator implements Iterator<Map.Entry<String,String>> {
+		private final String[] names;
+		private final String[] values;
+		private int pos = 0;
+
+		EntryIterator(String[] names, String[] values) {
+			this.names = names;
+			this.values = values;
+			skip();
+		}
+
+		private void skip() {
+			while (pos<names.length && names[pos]==null)
+				pos++;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return pos<names.length;
+		}
+
+		@Override
+		public Map.Entry<String,String> next() {
+			if (pos>=names.length)
+				throw new NoSuchElementException();
+			Map.Entry<String,String> entry = new AbstractMap.SimpleImmutableEntry<>(names[pos], values[pos]);
+			pos++;
+			skip();
+			return entry;
+		}
+	}
+}
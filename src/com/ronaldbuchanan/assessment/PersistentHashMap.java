@@ -0,0 +1,380 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * an immutable hash array mapped trie (HAMT)
+ *
+ * every put()/remove() returns a new map that shares all of the untouched structure with the old one -
+ * only the path from the root to the modified leaf is copied (at most 7 levels of 32-way nodes), so
+ * holding on to an old version costs nothing and "restoring" it is just a pointer assignment
+ *
+ * @author ronbuchanan
+ */
+final class PersistentHashMap<K,V> implements Iterable<Map.Entry<K,V>> {
+	private static final PersistentHashMap<?,?> EMPTY = new PersistentHashMap<>(null, 0);
+
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	private final BitmapNode root;
+	private final int size;
+
+	private PersistentHashMap(BitmapNode root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <K,V> PersistentHashMap<K,V> empty() {
+		return (PersistentHashMap<K,V>) EMPTY;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size==0;
+	}
+
+	/**
+	 * get the value for a key (null if it isn't present)
+	 * @param key
+	 */
+	@SuppressWarnings("unchecked")
+	V get(Object key) {
+		if (root==null)
+			return null;
+
+		int hash = hash(key);
+		Object node = root;
+		for (int shift = 0; ; shift += BITS) {
+			if (node instanceof BitmapNode) {
+				BitmapNode bn = (BitmapNode) node;
+				int bit = 1 << ((hash >>> shift) & MASK);
+				if ((bn.bitmap & bit)==0)
+					return null;
+				node = bn.slots[Integer.bitCount(bn.bitmap & (bit-1))];
+			} else if (node instanceof Leaf) {
+				Leaf leaf = (Leaf) node;
+				return leaf.hash==hash && leaf.key.equals(key) ? (V) leaf.value : null;
+			} else {
+				return (V) ((CollisionNode) node).get(hash, key);
+			}
+		}
+	}
+
+	V getOrDefault(Object key, V defaultValue) {
+		V value = get(key);
+		return value==null ? defaultValue : value;
+	}
+
+	boolean containsKey(Object key) {
+		return get(key)!=null;
+	}
+
+	/**
+	 * a new map with the key set to the value (this map if nothing changed)
+	 * @param key
+	 * @param value - must not be null
+	 */
+	PersistentHashMap<K,V> put(K key, V value) {
+		int hash = hash(key);
+		Leaf leaf = new Leaf(hash, key, value);
+		if (root==null)
+			return new PersistentHashMap<>((BitmapNode) BitmapNode.EMPTY.put(0, leaf), 1);
+
+		Object newRoot = root.put(0, leaf);
+		if (newRoot==root)
+			return this;
+
+		//the size only changes if the key wasn't already there
+		return new PersistentHashMap<>((BitmapNode) newRoot, leaf.added ? size+1 : size);
+	}
+
+	/**
+	 * a new map without the key (this map if it wasn't present)
+	 * @param key
+	 */
+	PersistentHashMap<K,V> remove(Object key) {
+		if (root==null)
+			return this;
+
+		Object newRoot = root.remove(0, hash(key), key);
+		if (newRoot==root)
+			return this;
+		if (size==1)
+			return empty();
+		if (newRoot instanceof Leaf) //collapsed all the way up
+			newRoot = BitmapNode.EMPTY.put(0, (Leaf) newRoot);
+		return new PersistentHashMap<>((BitmapNode) newRoot, size-1);
+	}
+
+	@Override
+	public Iterator<Map.Entry<K,V>> iterator() {
+		return new EntryIterator<>(root);
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * a key-value pair - the "added" flag is only meaningful during the put() that created it
+	 */
+	private static final class Leaf {
+		final int hash;
+		final Object key;
+		final Object value;
+		boolean added;
+
+		Leaf(int hash, Object key, Object value) {
+			this.hash = hash;
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	/**
+	 * a 32-way branch, only the populated slots are allocated (each slot is a Leaf or another node)
+	 */
+	private static final class BitmapNode {
+		static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+		final int bitmap;
+		final Object[] slots;
+
+		BitmapNode(int bitmap, Object[] slots) {
+			this.bitmap = bitmap;
+			this.slots = slots;
+		}
+
+		Object put(int shift, Leaf leaf) {
+			int bit = 1 << ((leaf.hash >>> shift) & MASK);
+			int idx = Integer.bitCount(bitmap & (bit-1));
+
+			if ((bitmap & bit)==0) {
+				leaf.added = true;
+				Object[] newSlots = new Object[slots.length+1];
+				System.arraycopy(slots, 0, newSlots, 0, idx);
+				newSlots[idx] = leaf;
+				System.arraycopy(slots, idx, newSlots, idx+1, slots.length-idx);
+				return new BitmapNode(bitmap | bit, newSlots);
+			}
+
+			Object slot = slots[idx];
+			Object newSlot;
+			if (slot instanceof Leaf) {
+				Leaf existing = (Leaf) slot;
+				if (existing.hash==leaf.hash && existing.key.equals(leaf.key)) {
+					if (existing.value.equals(leaf.value))
+						return this; //no change
+					newSlot = leaf;
+				} else {
+					leaf.added = true;
+					newSlot = merge(shift+BITS, existing, existing.hash, leaf);
+				}
+			} else if (slot instanceof BitmapNode) {
+				newSlot = ((BitmapNode) slot).put(shift+BITS, leaf);
+			} else {
+				CollisionNode collision = (CollisionNode) slot;
+				if (collision.hash==leaf.hash) {
+					newSlot = collision.put(leaf);
+				} else {
+					leaf.added = true;
+					newSlot = merge(shift+BITS, collision, collision.hash, leaf);
+				}
+			}
+
+			if (newSlot==slot)
+				return this;
+			Object[] newSlots = slots.clone();
+			newSlots[idx] = newSlot;
+			return new BitmapNode(bitmap, newSlots);
+		}
+
+		/**
+		 * returns this if the key isn't present, null if the node is now empty, a Leaf if only a
+		 * single leaf remains (so the parent can pull it up), otherwise the new node
+		 */
+		Object remove(int shift, int hash, Object key) {
+			int bit = 1 << ((hash >>> shift) & MASK);
+			if ((bitmap & bit)==0)
+				return this;
+			int idx = Integer.bitCount(bitmap & (bit-1));
+
+			Object slot = slots[idx];
+			Object newSlot;
+			if (slot instanceof Leaf) {
+				Leaf existing = (Leaf) slot;
+				if (existing.hash!=hash || !existing.key.equals(key))
+					return this;
+				newSlot = null;
+			} else if (slot instanceof BitmapNode) {
+				newSlot = ((BitmapNode) slot).remove(shift+BITS, hash, key);
+			} else {
+				newSlot = ((CollisionNode) slot).remove(hash, key);
+			}
+
+			if (newSlot==slot)
+				return this;
+
+			if (newSlot==null) {
+				if (slots.length==1)
+					return null;
+				if (slots.length==2 && slots[1-idx] instanceof Leaf)
+					return slots[1-idx];
+				Object[] newSlots = new Object[slots.length-1];
+				System.arraycopy(slots, 0, newSlots, 0, idx);
+				System.arraycopy(slots, idx+1, newSlots, idx, slots.length-idx-1);
+				return new BitmapNode(bitmap & ~bit, newSlots);
+			}
+
+			if (slots.length==1 && newSlot instanceof Leaf)
+				return newSlot;
+			Object[] newSlots = slots.clone();
+			newSlots[idx] = newSlot;
+			return new BitmapNode(bitmap, newSlots);
+		}
+
+		/**
+		 * a new subtree holding an existing slot (a Leaf or a CollisionNode) plus the new leaf
+		 */
+		private static Object merge(int shift, Object existing, int existingHash, Leaf leaf) {
+			if (existingHash==leaf.hash)
+				return new CollisionNode(leaf.hash, new Leaf[] {(Leaf) existing, leaf});
+
+			int bitA = 1 << ((existingHash >>> shift) & MASK);
+			int bitB = 1 << ((leaf.hash >>> shift) & MASK);
+			if (bitA==bitB)
+				return new BitmapNode(bitA, new Object[] {merge(shift+BITS, existing, existingHash, leaf)});
+			return new BitmapNode(bitA | bitB, Integer.compareUnsigned(bitA, bitB)<0 ? new Object[] {existing, leaf} : new Object[] {leaf, existing});
+		}
+	}
+
+	/**
+	 * leaves whose full 32-bit hashes are identical
+	 */
+	private static final class CollisionNode {
+		final int hash;
+		final Leaf[] leaves;
+
+		CollisionNode(int hash, Leaf[] leaves) {
+			this.hash = hash;
+			this.leaves = leaves;
+		}
+
+		Object get(int hash, Object key) {
+			if (hash==this.hash)
+				for (Leaf leaf : leaves)
+					if (leaf.key.equals(key))
+						return leaf.value;
+			return null;
+		}
+
+		Object put(Leaf leaf) {
+			for (int i=0; i<leaves.length; i++) {
+				if (leaves[i].key.equals(leaf.key)) {
+					if (leaves[i].value.equals(leaf.value))
+						return this;
+					Leaf[] newLeaves = leaves.clone();
+					newLeaves[i] = leaf;
+					return new CollisionNode(hash, newLeaves);
+				}
+			}
+			leaf.added = true;
+			Leaf[] newLeaves = new Leaf[leaves.length+1];
+			System.arraycopy(leaves, 0, newLeaves, 0, leaves.length);
+			newLeaves[leaves.length] = leaf;
+			return new CollisionNode(hash, newLeaves);
+		}
+
+		Object remove(int hash, Object key) {
+			if (hash!=this.hash)
+				return this;
+			for (int i=0; i<leaves.length; i++) {
+				if (leaves[i].key.equals(key)) {
+					if (leaves.length==2)
+						return leaves[1-i];
+					Leaf[] newLeaves = new Leaf[leaves.length-1];
+					System.arraycopy(leaves, 0, newLeaves, 0, i);
+					System.arraycopy(leaves, i+1, newLeaves, i, leaves.length-i-1);
+					return new CollisionNode(hash, newLeaves);
+				}
+			}
+			return this;
+		}
+	}
+
+	/**
+	 * depth-first walk of the trie, keeps its own stack of (slots, position) so there's no recursion
+	 */
+	private static final class EntryIterator<K,V> implements Iterator<Map.Entry<K,V>> {
+		private final Object[][] stack = new Object[8][];
+		private final int[] positions = new int[8];
+		private int depth = -1;
+		private Leaf[] collision;
+		private int collisionPos;
+		private Leaf next;
+
+		EntryIterator(BitmapNode root) {
+			if (root!=null) {
+				stack[0] = root.slots;
+				depth = 0;
+			}
+			advance();
+		}
+
+		private void advance() {
+			next = null;
+			if (collision!=null) {
+				if (collisionPos<collision.length) {
+					next = collision[collisionPos++];
+					return;
+				}
+				collision = null;
+			}
+
+			while (depth>=0) {
+				if (positions[depth]>=stack[depth].length) {
+					positions[depth--] = 0;
+					continue;
+				}
+
+				Object slot = stack[depth][positions[depth]++];
+				if (slot instanceof Leaf) {
+					next = (Leaf) slot;
+					return;
+				} else if (slot instanceof BitmapNode) {
+					stack[++depth] = ((BitmapNode) slot).slots;
+					positions[depth] = 0;
+				} else {
+					collision = ((CollisionNode) slot).leaves;
+					collisionPos = 1;
+					next = collision[0];
+					return;
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next!=null;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public Map.Entry<K,V> next() {
+			if (next==null)
+				throw new NoSuchElementException();
+			Leaf leaf = next;
+			advance();
+			return new AbstractMap.SimpleImmutableEntry<>((K) leaf.key, (V) leaf.value);
+		}
+	}
+}
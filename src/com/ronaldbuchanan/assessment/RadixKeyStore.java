@@ -0,0 +1,832 @@
+package com.ronaldbuchanan.assessment;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * radix tree store - the names are kept as a compressed trie over their UTF-8 bytes, so hierarchical names
+ * (user:123:session, user:123:cart...) store their shared prefixes once, and the entries are in name order
+ * (UTF-8 byte order, which is code point order)
+ *
+ * a tree with a node per byte (or even per distinct run of bytes) is an object or three per name, which
+ * costs more than the HashMap it's meant to beat and a cache miss per level to look up.  So this is a burst
+ * trie: the nodes only go down until the names under them are few enough to search, and those sit in a
+ * bucket - the rest of each name packed into a single byte[] in sorted order, with where each ends, a byte
+ * of its hash and the values in parallel arrays.  A bucket that grows past 64 names bursts into a node, and
+ * a node holds the run of bytes that all of its names share (path compression) as well as the value of the
+ * name ending there, if any.  Nodes adapt to their fan-out, as in an adaptive radix tree: up to 16 children are sorted
+ * parallel arrays of first bytes and children, more than that go in a 256 wide array indexed by the byte.
+ *
+ * the name Strings aren't kept - a lookup compares the name's bytes against the stored ones (an ASCII name is
+ * copied in, not encoded), and iterating decodes the names as it goes.
+ *
+ * @author ronbuchanan
+ */
+final class RadixKeyStore implements KeyStore {
+	private static final byte[] EMPTY = new byte[0];
+	private static final int SMALL = 16;
+	private static final int BURST = 64;
+
+	/*
+	 * Principal data structures:
+	 *
+	 * 		root - a node (with no run of its own), every child is a Node or a Bucket
+	 *
+	 * 		key - the name being looked up, encoded (reused, the store isn't thread safe)
+	 *
+	 * 		trail, edges - the nodes remove() went down through and the byte taken from each, so emptied nodes
+	 * 					   can be taken back out
+	 */
+
+	private final Node root = new Node(EMPTY);
+	private int size = 0;
+
+	private byte[] key = new byte[64];
+	private int keyLength;
+
+	private Node[] trail = new Node[16];
+	private byte[] edges = new byte[16];
+
+	@Override
+	public String get(String name) {
+		encode(name);
+		Node node = root;
+		int depth = 0;
+		while (true) {
+			byte[] prefix = node.prefix;
+			if (keyLength-depth<prefix.length)
+				return null;
+			for (int i=0; i<prefix.length; i++)
+				if (key[depth+i]!=prefix[i])
+					return null;
+			depth += prefix.length;
+			if (depth==keyLength)
+				return node.value;
+
+			Object child = node.child(key[depth++]);
+			if (child instanceof Node) {
+				node = (Node) child;
+			} else if (child==null) {
+				return null;
+			} else {
+				Bucket bucket = (Bucket) child;
+				int at = bucket.indexOf(key, depth, keyLength);
+				return at<0 ? null : bucket.values[at];
+			}
+		}
+	}
+
+	@Override
+	public String put(String name, String value) {
+		encode(name);
+		Node node = root;
+		int depth = 0;
+		while (true) {
+			byte[] prefix = node.prefix;
+			int common = 0;
+			int max = Math.min(prefix.length, keyLength-depth);
+			while (common<max && key[depth+common]==prefix[common])
+				common++;
+
+			if (common<prefix.length) {
+				//the name leaves (or ends inside) the run - split the node where it does
+				node.split(common);
+				depth += common;
+				if (depth==keyLength)
+					node.value = value;
+				else
+					node.addChild(key[depth], new Bucket(key, depth+1, keyLength, value));
+				size++;
+				return null;
+			}
+
+			depth += prefix.length;
+			if (depth==keyLength) {
+				String oldValue = node.value;
+				node.value = value;
+				if (oldValue==null)
+					size++;
+				return oldValue;
+			}
+
+			byte edge = key[depth++];
+			Object child = node.child(edge);
+			if (child instanceof Node) {
+				node = (Node) child;
+				continue;
+			}
+			if (child==null) {
+				node.addChild(edge, new Bucket(key, depth, keyLength, value));
+				size++;
+				return null;
+			}
+
+			Bucket bucket = (Bucket) child;
+			int at = bucket.indexOf(key, depth, keyLength);
+			if (at>=0) {
+				String oldValue = bucket.values[at];
+				bucket.values[at] = value;
+				return oldValue;
+			}
+			bucket.insert(-bucket.find(key, depth, keyLength)-1, key, depth, keyLength, value);
+			size++;
+			if (bucket.count>BURST)
+				node.setChild(edge, bucket.burst());
+			return null;
+		}
+	}
+
+	@Override
+	public String remove(String name) {
+		encode(name);
+		Node node = root;
+		int depth = 0;
+		int level = 0;
+		while (true) {
+			byte[] prefix = node.prefix;
+			if (keyLength-depth<prefix.length)
+				return null;
+			for (int i=0; i<prefix.length; i++)
+				if (key[depth+i]!=prefix[i])
+					return null;
+			depth += prefix.length;
+
+			if (level==trail.length) {
+				trail = Arrays.copyOf(trail, level*2);
+				edges = Arrays.copyOf(edges, level*2);
+			}
+			trail[level] = node;
+			if (depth==keyLength) {
+				String oldValue = node.value;
+				if (oldValue!=null) {
+					node.value = null;
+					size--;
+					prune(level);
+				}
+				return oldValue;
+			}
+
+			byte edge = key[depth++];
+			edges[level] = edge;
+			Object child = node.child(edge);
+			if (child instanceof Node) {
+				node = (Node) child;
+				level++;
+				continue;
+			}
+			if (child==null)
+				return null;
+
+			Bucket bucket = (Bucket) child;
+			int at = bucket.indexOf(key, depth, keyLength);
+			if (at<0)
+				return null;
+			String oldValue = bucket.values[at];
+			bucket.delete(at);
+			size--;
+			if (bucket.count==0) {
+				node.removeChild(edge);
+				prune(level);
+			}
+			return oldValue;
+		}
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * O(n) - decodes everything
+	 */
+	@Override
+	public Iterable<Map.Entry<String,String>> copy() {
+		ArrayList<Map.Entry<String,String>> copy = new ArrayList<>(size);
+		for (Map.Entry<String,String> entry : this)
+			copy.add(entry);
+		return copy;
+	}
+
+	/**
+	 * the entries in name order
+	 */
+	@Override
+	public Iterator<Map.Entry<String,String>> iterator() {
+		return new EntryIterator(root, null, null);
+	}
+
+	@Override
+	public Iterator<Map.Entry<String,String>> range(String from, String to) {
+		return new EntryIterator(root, from==null ? null : from.getBytes(StandardCharsets.UTF_8),
+				to==null ? null : to.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * the range from the prefix up to the prefix with its last byte incremented (UTF-8 never has a 0xff
+	 * byte, so that can't overflow)
+	 */
+	@Override
+	public Iterator<Map.Entry<String,String>> prefixed(String prefix) {
+		byte[] from = prefix.getBytes(StandardCharsets.UTF_8);
+		byte[] to = null;
+		if (from.length>0) {
+			to = from.clone();
+			to[to.length-1]++;
+		}
+		return new EntryIterator(root, from, to);
+	}
+
+	/**
+	 * take emptied nodes (no value, no children) back out, from a level of the trail up
+	 */
+	private void prune(int level) {
+		while (level>0 && trail[level].value==null && trail[level].count==0) {
+			trail[level-1].removeChild(edges[level-1]);
+			level--;
+		}
+	}
+
+	/**
+	 * put a name's UTF-8 bytes in key - a straight copy while it's ASCII
+	 */
+	private void encode(String name) {
+		int length = name.length();
+		if (key.length<length)
+			key = new byte[Math.max(length, key.length*2)];
+		for (int i=0; i<length; i++) {
+			char c = name.charAt(i);
+			if (c>=0x80) {
+				byte[] utf8 = name.getBytes(StandardCharsets.UTF_8);
+				if (key.length<utf8.length)
+					key = new byte[utf8.length];
+				System.arraycopy(utf8, 0, key, 0, utf8.length);
+				keyLength = utf8.length;
+				return;
+			}
+			key[i] = (byte) c;
+		}
+		keyLength = length;
+	}
+
+	/**
+	 * an inner node - a run of bytes, the value of the name ending after them, and the children by the
+	 * byte after that
+	 *
+	 * up to 16 children are a sorted list - their first bytes packed into two longs (low byte first), so
+	 * finding one doesn't cost a miss on another array, and the children in a parallel array.  More than
+	 * that, children is 256 wide and indexed by the byte.
+	 */
+	private static final class Node {
+		private static final long ONES = 0x0101010101010101L;
+		private static final long HIGHS = 0x8080808080808080L;
+
+		byte[] prefix;
+		String value;
+		long low;
+		long high;
+		Object[] children;
+		int count;
+
+		Node(byte[] prefix) {
+			this.prefix = prefix;
+		}
+
+		boolean wide() {
+			return children!=null && children.length==256;
+		}
+
+		Object child(byte b) {
+			Object[] children = this.children;
+			if (children==null)
+				return null;
+			if (children.length==256)
+				return children[b & 0xff];
+			int at = indexOf(b);
+			return at<0 ? null : children[at];
+		}
+
+		/**
+		 * @return the position of a child in the sorted list, or -1
+		 */
+		int indexOf(byte b) {
+			int at = find(low, b);
+			if (at<0 && count>8) {
+				at = find(high, b);
+				if (at>=0)
+					at += 8;
+			}
+			return at<count ? at : -1;
+		}
+
+		/**
+		 * @return the first byte of the i'th child in the sorted list
+		 */
+		byte keyAt(int i) {
+			return (byte) ((i<8 ? low : high) >>> ((i & 7) << 3));
+		}
+
+		void setChild(byte b, Object child) {
+			if (wide())
+				children[b & 0xff] = child;
+			else
+				children[indexOf(b)] = child;
+		}
+
+		void addChild(byte b, Object child) {
+			if (wide()) {
+				children[b & 0xff] = child;
+				count++;
+				return;
+			}
+			if (count==SMALL) {
+				//too many to scan, index them by byte
+				Object[] indexed = new Object[256];
+				for (int i=0; i<count; i++)
+					indexed[keyAt(i) & 0xff] = children[i];
+				indexed[b & 0xff] = child;
+				low = 0;
+				high = 0;
+				children = indexed;
+				count++;
+				return;
+			}
+			if (children==null)
+				children = new Object[2];
+			else if (count==children.length)
+				children = Arrays.copyOf(children, count*2);
+
+			byte[] keys = keys(count+1);
+			int at = count;
+			while (at>0 && (keys[at-1] & 0xff)>(b & 0xff)) {
+				keys[at] = keys[at-1];
+				children[at] = children[at-1];
+				at--;
+			}
+			keys[at] = b;
+			children[at] = child;
+			count++;
+			setKeys(keys);
+		}
+
+		void removeChild(byte b) {
+			if (wide()) {
+				children[b & 0xff] = null;
+				if (--count<=SMALL/2) {
+					//back to the sorted list
+					Object[] indexed = children;
+					byte[] keys = new byte[SMALL];
+					children = new Object[SMALL];
+					int at = 0;
+					for (int i=0; i<256; i++) {
+						if (indexed[i]!=null) {
+							keys[at] = (byte) i;
+							children[at++] = indexed[i];
+						}
+					}
+					setKeys(keys);
+				}
+				return;
+			}
+			int at = indexOf(b);
+			byte[] keys = keys(count);
+			System.arraycopy(keys, at+1, keys, at, count-at-1);
+			System.arraycopy(children, at+1, children, at, count-at-1);
+			keys[--count] = 0;
+			children[count] = null;
+			setKeys(keys);
+			if (count==0)
+				children = null;
+		}
+
+		/**
+		 * cut the run short at a byte - what was this node moves down to a child under the byte after the cut
+		 */
+		void split(int at) {
+			Node lower = new Node(at+1==prefix.length ? EMPTY : Arrays.copyOfRange(prefix, at+1, prefix.length));
+			lower.value = value;
+			lower.low = low;
+			lower.high = high;
+			lower.children = children;
+			lower.count = count;
+
+			byte edge = prefix[at];
+			prefix = at==0 ? EMPTY : Arrays.copyOf(prefix, at);
+			value = null;
+			low = 0;
+			high = 0;
+			children = null;
+			count = 0;
+			addChild(edge, lower);
+		}
+
+		private byte[] keys(int length) {
+			byte[] keys = new byte[Math.max(length, 16)];
+			for (int i=0; i<count; i++)
+				keys[i] = keyAt(i);
+			return keys;
+		}
+
+		private void setKeys(byte[] keys) {
+			low = 0;
+			high = 0;
+			for (int i=7; i>=0; i--) {
+				low = low<<8 | (keys[i] & 0xff);
+				high = high<<8 | (keys[i+8] & 0xff);
+			}
+		}
+
+		/**
+		 * the lowest byte of a word equal to b (the usual has-zero-byte trick, on the word xor b in every byte)
+		 */
+		private static int find(long word, byte b) {
+			long x = word ^ ((b & 0xffL)*ONES);
+			long found = (x-ONES) & ~x & HIGHS;
+			return found==0 ? -1 : Long.numberOfTrailingZeros(found)>>>3;
+		}
+	}
+
+	/**
+	 * the names below a node that are few enough to search - what's left of each name, packed in sorted
+	 * order, with where each one ends, a byte of its hash and the values in parallel arrays
+	 *
+	 * the hash bytes are packed eight to a long, as a node's child bytes are, so a lookup checks them eight
+	 * at a time and compares only the names whose byte matches (one in 256 of the others) - a line of tags,
+	 * one of ends and one of data, where a binary search reads half a dozen lines of ends and data.  Binary
+	 * search is still how an insert or a range finds its place.
+	 */
+	private static final class Bucket {
+		private static final long ONES = 0x0101010101010101L;
+		private static final long HIGHS = 0x8080808080808080L;
+
+		byte[] data;
+		int[] ends;
+		long[] tags;
+		String[] values;
+		int count;
+
+		Bucket(byte[] key, int from, int to, String value) {
+			data = Arrays.copyOfRange(key, from, to);
+			ends = new int[] {to-from};
+			tags = new long[] {tag(key, from, to) & 0xffL};
+			values = new String[] {value};
+			count = 1;
+		}
+
+		private Bucket(int bytes, int entries) {
+			data = new byte[bytes];
+			ends = new int[entries];
+			tags = new long[(entries+7)>>>3];
+			values = new String[entries];
+		}
+
+		static byte tag(byte[] key, int from, int to) {
+			int hash = 0;
+			for (int i=from; i<to; i++)
+				hash = 31*hash + key[i];
+			return (byte) (hash ^ hash>>>8 ^ hash>>>16);
+		}
+
+		private byte tagAt(int i) {
+			return (byte) (tags[i>>>3] >>> ((i & 7) << 3));
+		}
+
+		private void setTag(int i, byte tag) {
+			int shift = (i & 7) << 3;
+			tags[i>>>3] = tags[i>>>3] & ~(0xffL << shift) | (tag & 0xffL) << shift;
+		}
+
+		int start(int i) {
+			return i==0 ? 0 : ends[i-1];
+		}
+
+		/**
+		 * binary search
+		 * @return the entry index, or -(the index it would go in)-1
+		 */
+		int find(byte[] key, int from, int to) {
+			byte[] data = this.data;
+			int lo = 0;
+			int hi = count-1;
+			while (lo<=hi) {
+				int mid = (lo+hi)>>>1;
+				int start = start(mid);
+				int length = ends[mid]-start;
+
+				//a plain loop - the names are short, too short for compareUnsigned to pay
+				int max = Math.min(length, to-from);
+				int j = 0;
+				while (j<max && data[start+j]==key[from+j])
+					j++;
+				int cmp = j<max ? (data[start+j] & 0xff)-(key[from+j] & 0xff) : length-(to-from);
+				if (cmp<0)
+					lo = mid+1;
+				else if (cmp>0)
+					hi = mid-1;
+				else
+					return mid;
+			}
+			return -lo-1;
+		}
+
+		/**
+		 * @return the entry index, or -1
+		 */
+		int indexOf(byte[] key, int from, int to) {
+			long pattern = (tag(key, from, to) & 0xffL)*ONES;
+			long[] tags = this.tags;
+			int length = to-from;
+			//the has-zero-byte trick, as in Node.find - it can also flag a byte above a real match, which the
+			//compare sorts out
+			for (int w=0, words=(count+7)>>>3; w<words; w++) {
+				long x = tags[w] ^ pattern;
+				for (long found = (x-ONES) & ~x & HIGHS; found!=0; found &= found-1) {
+					int i = w<<3 | Long.numberOfTrailingZeros(found)>>>3;
+					if (i>=count)
+						return -1;
+					int start = start(i);
+					if (ends[i]-start!=length)
+						continue;
+					int j = 0;
+					while (j<length && data[start+j]==key[from+j])
+						j++;
+					if (j==length)
+						return i;
+				}
+			}
+			return -1;
+		}
+
+		void insert(int index, byte[] key, int from, int to, String value) {
+			int length = to-from;
+			int used = start(count);
+			if (used+length>data.length)
+				data = Arrays.copyOf(data, Math.max(used+length, data.length+(data.length>>1)));
+			if (count==ends.length) {
+				int entries = Math.max(count+1, count+(count>>1));
+				ends = Arrays.copyOf(ends, entries);
+				tags = Arrays.copyOf(tags, (entries+7)>>>3);
+				values = Arrays.copyOf(values, entries);
+			}
+
+			int at = start(index);
+			System.arraycopy(data, at, data, at+length, used-at);
+			System.arraycopy(key, from, data, at, length);
+			for (int i=count; i>index; i--)
+				ends[i] = ends[i-1]+length;
+			ends[index] = at+length;
+			for (int i=count; i>index; i--)
+				setTag(i, tagAt(i-1));
+			setTag(index, tag(key, from, to));
+			System.arraycopy(values, index, values, index+1, count-index);
+			values[index] = value;
+			count++;
+		}
+
+		void delete(int index) {
+			int at = start(index);
+			int length = ends[index]-at;
+			System.arraycopy(data, ends[index], data, at, start(count)-ends[index]);
+			for (int i=index; i<count-1; i++)
+				ends[i] = ends[i+1]-length;
+			for (int i=index; i<count-1; i++)
+				setTag(i, tagAt(i+1));
+			setTag(count-1, (byte) 0);
+			System.arraycopy(values, index+1, values, index, count-index-1);
+			values[--count] = null;
+		}
+
+		/**
+		 * turn into a node - the bytes all the entries share become its run, and the entries are shared out
+		 * into buckets by the byte after that (they're sorted, so each bucket's entries come together)
+		 */
+		Node burst() {
+			//the first and last entries share the least
+			int last = start(count-1);
+			int common = 0;
+			while (common<ends[0] && last+common<ends[count-1] && data[common]==data[last+common])
+				common++;
+
+			Node node = new Node(common==0 ? EMPTY : Arrays.copyOf(data, common));
+			int i = 0;
+			if (ends[0]==common)
+				node.value = values[i++]; //only the first can end there
+			while (i<count) {
+				byte edge = data[start(i)+common];
+				int j = i+1;
+				while (j<count && data[start(j)+common]==edge)
+					j++;
+
+				Bucket bucket = new Bucket(ends[j-1]-start(i) - (j-i)*(common+1), j-i);
+				for (int k=i; k<j; k++)
+					bucket.insert(k-i, data, start(k)+common+1, ends[k], values[k]);
+				node.addChild(edge, bucket);
+				i = j;
+			}
+			return node;
+		}
+	}
+
+	/**
+	 * depth first, children in byte order - the path to the current node is kept in name, so each name
+	 * is decoded from it as it's reached
+	 *
+	 * a range starts by going down the trie along its lower bound, leaving each node on the way positioned
+	 * at its first child that isn't before the bound, and ends at the first name that isn't before the
+	 * upper bound
+	 */
+	private static final class EntryIterator implements Iterator<Map.Entry<String,String>> {
+		private final byte[] to;
+		private Node[] nodes = new Node[16];
+		private int[] nextChild = new int[16];
+		private int[] lengths = new int[16];
+		private int depth = -1;
+		private byte[] name = new byte[64];
+
+		private Bucket bucket;
+		private int entry;
+		private int base;
+
+		private Map.Entry<String,String> next;
+
+		/**
+		 * @param root
+		 * @param from - the first name (UTF-8), null to start at the beginning
+		 * @param to - the name (UTF-8) to stop before, null to run to the end
+		 */
+		EntryIterator(Node root, byte[] from, byte[] to) {
+			this.to = to;
+			if (from!=null && to!=null && Arrays.compareUnsigned(from, to)>=0)
+				return; //an empty range
+			if (from==null)
+				push(root, 0);
+			else
+				seek(root, from);
+			if (next==null)
+				advance();
+		}
+
+		/**
+		 * go down to the first name at or after from
+		 */
+		private void seek(Node node, byte[] from) {
+			int length = 0;
+			while (true) {
+				byte[] prefix = node.prefix;
+				int i = 0;
+				while (i<prefix.length && length+i<from.length && prefix[i]==from[length+i])
+					i++;
+				if (i<prefix.length) {
+					//the node's run leaves from - if it's below it the node is skipped (its parent has already
+					//moved past it), otherwise all of it comes after from
+					if (length+i==from.length || (prefix[i] & 0xff)>(from[length+i] & 0xff))
+						push(node, length);
+					return;
+				}
+
+				push(node, length);
+				length += prefix.length;
+				if (length==from.length)
+					return;
+				next = null; //the node's own name is before from
+
+				byte b = from[length];
+				int at;
+				Object child;
+				if (node.wide()) {
+					at = b & 0xff;
+					child = node.children[at];
+				} else {
+					at = 0;
+					while (at<node.count && (node.keyAt(at) & 0xff)<(b & 0xff))
+						at++;
+					child = at<node.count && node.keyAt(at)==b ? node.children[at] : null;
+				}
+				if (child==null) {
+					nextChild[depth] = at;
+					return;
+				}
+
+				nextChild[depth] = at+1;
+				ensure(length+1);
+				name[length++] = b;
+				if (child instanceof Node) {
+					node = (Node) child;
+				} else {
+					bucket = (Bucket) child;
+					base = length;
+					int found = bucket.find(from, length, from.length);
+					entry = found>=0 ? found : -found-1;
+					return;
+				}
+			}
+		}
+
+		/**
+		 * go down to a node, adding its run to the name
+		 */
+		private void push(Node node, int length) {
+			if (++depth==nodes.length) {
+				nodes = Arrays.copyOf(nodes, depth*2);
+				nextChild = Arrays.copyOf(nextChild, depth*2);
+				lengths = Arrays.copyOf(lengths, depth*2);
+			}
+			ensure(length+node.prefix.length);
+			System.arraycopy(node.prefix, 0, name, length, node.prefix.length);
+			nodes[depth] = node;
+			nextChild[depth] = 0;
+			lengths[depth] = length+node.prefix.length;
+			if (node.value!=null)
+				emit(lengths[depth], node.value);
+		}
+
+		/**
+		 * find the next name - in the bucket being walked, or the next child down
+		 */
+		private void advance() {
+			next = null;
+			while (next==null) {
+				if (bucket!=null) {
+					if (entry<bucket.count) {
+						int start = bucket.start(entry);
+						int length = bucket.ends[entry]-start;
+						ensure(base+length);
+						System.arraycopy(bucket.data, start, name, base, length);
+						emit(base+length, bucket.values[entry++]);
+						continue;
+					}
+					bucket = null;
+				}
+				if (depth<0)
+					return;
+
+				Node node = nodes[depth];
+				int length = lengths[depth];
+				Object child = null;
+				int b = nextChild[depth];
+				if (!node.wide()) {
+					if (b<node.count) {
+						child = node.children[b];
+						ensure(length+1);
+						name[length] = node.keyAt(b);
+					}
+				} else {
+					while (b<256 && node.children[b]==null)
+						b++;
+					if (b<256) {
+						child = node.children[b];
+						ensure(length+1);
+						name[length] = (byte) b;
+					}
+				}
+				nextChild[depth] = b+1;
+
+				if (child==null) {
+					depth--;
+				} else if (child instanceof Node) {
+					push((Node) child, length+1);
+				} else {
+					bucket = (Bucket) child;
+					entry = 0;
+					base = length+1;
+				}
+			}
+		}
+
+		/**
+		 * the next entry is the name so far - unless it's reached the end of the range, which ends the walk
+		 */
+		private void emit(int length, String value) {
+			if (to!=null && Arrays.compareUnsigned(name, 0, length, to, 0, to.length)>=0) {
+				bucket = null;
+				depth = -1;
+				return;
+			}
+			next = new AbstractMap.SimpleImmutableEntry<>(new String(name, 0, length, StandardCharsets.UTF_8), value);
+		}
+
+		private void ensure(int length) {
+			if (name.length<length)
+				name = Arrays.copyOf(name, Math.max(length, name.length*2));
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next!=null;
+		}
+
+		@Override
+		public Map.Entry<String,String> next() {
+			if (next==null)
+				throw new NoSuchElementException();
+			Map.Entry<String,String> entry = next;
+			advance();
+			return entry;
+		}
+	}
+}
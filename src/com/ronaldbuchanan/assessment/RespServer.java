@@ -0,0 +1,617 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.Supplier;
+
+/**
+ * TCP front end speaking (the relevant subset of) the Redis RESP protocol, so the usual clients and load
+ * generators (redis-cli, redis-benchmark -t set,get) can be pointed at it
+ *
+ * 		SET name value		=> set()			+OK
+ * 		GET name			=> get()			bulk string, or null bulk if not set
+ * 		DEL name [name...]	=> delete()			number of names that were set
+ * 		COUNT value			=> count()			integer
+ * 		MULTI				=> begin()			+OK
+ * 		EXEC				=> commit()			+OK
+ * 		DISCARD				=> rollback()		+OK
+ * 		SAVE				=> SNAPSHOT			+OK
+ * 		PING, ECHO, DBSIZE, QUIT, COMMAND and CONFIG (the last two just enough to keep clients happy)
+ *
+ * unlike Redis, commands inside MULTI run straight away (that's what begin() does) rather than being queued.
+ *
+ * everything runs on one selector thread, so any of the engines can be used.  Given a SessionStore each
+ * connection gets its own Session, so transactions are isolated from each other and nobody waits.  The other
+ * engines only have the one transaction stack, so while a connection is inside MULTI the other connections'
+ * commands are held (unparsed, in their buffers, and nothing more is read from them) until it does
+ * EXEC/DISCARD or disconnects - which makes transactions serializable at the cost of stalling everyone else
+ * while one is open.  A connection that disconnects mid-transaction has its transactions rolled back, and
+ * so that an idle client can't stall everyone for good, one that sends nothing for the MULTI timeout (30
+ * seconds unless set otherwise) while inside MULTI is disconnected and rolled back too.
+ *
+ * a connection's unparsed input is capped at 1GB (as Redis's client-query-buffer-limit) - a client sending a
+ * bigger command is disconnected.
+ *
+ * @author ronbuchanan
+ */
+public class RespServer implements Closeable {
+	private static final int BUFFER_SIZE = 16 << 10;
+	private static final int MAX_BULK_LENGTH = 512 << 20;
+	//the most arguments a command can have (as Redis), and how many are allowed for before they've arrived
+	private static final int MAX_ARGUMENTS = 1 << 20;
+	private static final int INITIAL_ARGUMENTS = 16;
+
+	//stop running a connection's commands once this much of its output is waiting to be sent
+	private static final int OUTPUT_HIGH_WATER = 1 << 20;
+	//the most input a connection can have waiting to be parsed
+	private static final int MAX_INPUT = 1 << 30;
+	static final long DEFAULT_MULTI_TIMEOUT_MILLIS = 30000;
+
+	private static final byte[] OK = ascii("+OK\r\n");
+	private static final byte[] PONG = ascii("+PONG\r\n");
+	private static final byte[] NULL_BULK = ascii("$-1\r\n");
+	private static final byte[] EMPTY_ARRAY = ascii("*0\r\n");
+	private static final byte[] CRLF = ascii("\r\n");
+
+	private final InMemDB shared;
+	private final Supplier<InMemDB> sessions;
+	private final Snapshotter snapshots;
+	private final Selector selector;
+	private final ServerSocketChannel server;
+	private volatile boolean running = true;
+	private long multiTimeoutMillis = DEFAULT_MULTI_TIMEOUT_MILLIS;
+
+	//the connection inside MULTI (if any) and the connections held up behind it
+	private Connection owner;
+	private final ArrayDeque<Connection> waiting = new ArrayDeque<>();
+
+	/**
+	 * every connection shares the one database (and its transaction stack)
+	 * @param db
+	 * @param port
+	 * @param snapshots - enables SAVE (null if snapshots aren't configured)
+	 */
+	public RespServer(InMemDB db, int port, Snapshotter snapshots) throws IOException {
+		this(db, () -> db, port, snapshots);
+	}
+
+	/**
+	 * every connection gets its own session
+	 * @param sessions - opens a session (e.g. SessionStore::open)
+	 * @param port
+	 * @param snapshots - enables SAVE (null if snapshots aren't configured)
+	 */
+	public RespServer(Supplier<InMemDB> sessions, int port, Snapshotter snapshots) throws IOException {
+		this(null, sessions, port, snapshots);
+	}
+
+	private RespServer(InMemDB shared, Supplier<InMemDB> sessions, int port, Snapshotter snapshots) throws IOException {
+		this.shared = shared;
+		this.sessions = sessions;
+		this.snapshots = snapshots;
+		this.selector = Selector.open();
+		this.server = ServerSocketChannel.open();
+		server.bind(new InetSocketAddress(port));
+		server.configureBlocking(false);
+		server.register(selector, SelectionKey.OP_ACCEPT);
+	}
+
+	/**
+	 * how long a connection inside MULTI (holding everyone else up) can go without sending anything
+	 * @param millis - 0 for no limit
+	 */
+	public void multiTimeout(long millis) {
+		this.multiTimeoutMillis = millis;
+	}
+
+	/**
+	 * serve until SHUTDOWN (or close())
+	 */
+	public void run() throws IOException {
+		try {
+			while (running) {
+				if (owner!=null && multiTimeoutMillis>0)
+					selector.select(Math.max(1, multiTimeoutMillis - (System.nanoTime()-owner.lastRead)/1000000));
+				else
+					selector.select();
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while (keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					try {
+						if (!key.isValid())
+							continue;
+						if (key.isAcceptable())
+							accept();
+						else {
+							if (key.isReadable())
+								read((Connection) key.attachment());
+							if (key.isValid() && key.isWritable())
+								flush((Connection) key.attachment());
+						}
+					} catch (IOException e) {
+						disconnect((Connection) key.attachment());
+					}
+				}
+				expire();
+			}
+		} finally {
+			close();
+		}
+	}
+
+	/**
+	 * disconnect the connection inside MULTI if it has gone quiet for too long - its transactions are rolled
+	 * back and whoever was held up gets their turn
+	 */
+	private void expire() {
+		Connection idle = owner;
+		if (idle==null || multiTimeoutMillis<=0 || (System.nanoTime()-idle.lastRead)/1000000<multiTimeoutMillis)
+			return;
+		error(idle, "ERR MULTI idle for more than " + multiTimeoutMillis + " ms, the transaction has been rolled back");
+		idle.closing = true;
+		try {
+			flush(idle);
+			disconnect(idle);
+		} catch (IOException e) {
+			try {
+				disconnect(idle);
+			} catch (IOException ignored) {
+				//it's gone either way
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		running = false;
+		selector.wakeup();
+		if (!selector.isOpen())
+			return;
+		for (SelectionKey key : selector.keys())
+			key.channel().close();
+		selector.close();
+	}
+
+	private void accept() throws IOException {
+		SocketChannel channel;
+		while ((channel = server.accept())!=null) {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			Connection connection = new Connection(channel, sessions.get());
+			connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+		}
+	}
+
+	private void read(Connection connection) throws IOException {
+		if (!connection.in.hasRemaining()) {
+			if (connection.in.capacity()>=MAX_INPUT) {
+				error(connection, "ERR Protocol error: the command is too big");
+				connection.closing = true;
+				flush(connection);
+				return;
+			}
+			connection.in = grow(connection.in, 1);
+		}
+		if (connection.channel.read(connection.in)<0) {
+			disconnect(connection);
+			return;
+		}
+		connection.lastRead = System.nanoTime();
+		process(connection);
+	}
+
+	/**
+	 * run every complete command in the connection's buffer back to back, then send all the replies in one
+	 * write - a pipelining client gets a read and a write per batch of commands rather than per command
+	 */
+	private void process(Connection connection) throws IOException {
+		connection.in.flip();
+		try {
+			String[] command;
+			while (!connection.closing) {
+				if (owner!=null && owner!=connection) {
+					//someone else is inside MULTI, this connection's turn comes when they're done (and nothing
+					//more is read from it until then, see flush())
+					if (connection.in.hasRemaining() && !connection.waiting) {
+						connection.waiting = true;
+						waiting.add(connection);
+					}
+					break;
+				}
+				if (connection.out.position()>=OUTPUT_HIGH_WATER) {
+					//the client isn't reading its replies, carry on once they've been sent
+					connection.stalled = true;
+					break;
+				}
+				if ((command = parse(connection.in))==null)
+					break;
+				if (snapshots!=null)
+					snapshots.poll(connection.db);
+				try {
+					execute(connection, command);
+				} catch (TransactionConflictException e) {
+					//the session has discarded the transaction
+					error(connection, e.getMessage());
+					connection.transactions = connection.db.transactionDepth();
+				} catch (MemoryLimitException e) {
+					error(connection, e.getMessage());
+				} catch (UncheckedIOException e) {
+					//a write that couldn't be made durable is already in the store, where every connection
+					//would see it - stop serving rather than carry on from it
+					error(connection, "ERR " + e.getMessage() + ", shutting down");
+					try {
+						flush(connection);
+					} catch (IOException ignored) {
+					}
+					running = false;
+					throw e;
+				} catch (RuntimeException e) {
+					//the store failed (a full store, say) - fail the command, not the server
+					error(connection, "ERR " + (e.getMessage()==null ? e.toString() : e.getMessage()));
+					connection.transactions = Math.min(connection.transactions, connection.db.transactionDepth());
+					if (connection.transactions==0 && owner==connection)
+						release();
+				}
+			}
+		} catch (ProtocolError e) {
+			error(connection, "ERR Protocol error: " + e.getMessage());
+			connection.closing = true;
+		} finally {
+			connection.in.compact();
+		}
+		flush(connection);
+	}
+
+	private void execute(Connection connection, String[] command) throws IOException {
+		InMemDB db = connection.db;
+		switch (command[0].toUpperCase()) {
+		case "SET":
+			if (command.length!=3) { wrongArguments(connection, command); return; }
+			db.set(command[1], command[2]);
+			reply(connection, OK);
+			break;
+		case "GET":
+			{
+				if (command.length!=2) { wrongArguments(connection, command); return; }
+				String value = db.lookup(command[1]);
+				if (value==null)
+					reply(connection, NULL_BULK);
+				else
+					bulk(connection, value);
+			}
+			break;
+		case "DEL":
+			{
+				if (command.length<2) { wrongArguments(connection, command); return; }
+				long deleted = 0;
+				for (int i=1; i<command.length; i++) {
+					if (db.lookup(command[i])!=null) {
+						db.delete(command[i]);
+						deleted++;
+					}
+				}
+				integer(connection, deleted);
+			}
+			break;
+		case "COUNT":
+			if (command.length!=2) { wrongArguments(connection, command); return; }
+			integer(connection, db.count(command[1]));
+			break;
+		case "DBSIZE":
+			integer(connection, db.size());
+			break;
+		case "MULTI":
+			db.begin();
+			connection.transactions++;
+			if (shared!=null)
+				owner = connection;
+			reply(connection, OK);
+			break;
+		case "EXEC":
+			if (connection.transactions==0) { error(connection, "ERR EXEC without MULTI"); return; }
+			db.commit();
+			connection.transactions = 0;
+			reply(connection, OK);
+			release();
+			break;
+		case "DISCARD":
+			if (connection.transactions==0) { error(connection, "ERR DISCARD without MULTI"); return; }
+			db.rollback();
+			connection.transactions--;
+			reply(connection, OK);
+			if (connection.transactions==0)
+				release();
+			break;
+		case "SAVE":
+			if (snapshots==null) { error(connection, "ERR snapshots are not configured (start with -save [path])"); return; }
+			if (db.transactionDepth()>0) { error(connection, "ERR SAVE is not allowed inside MULTI"); return; }
+			try {
+				snapshots.snapshot(db);
+			} catch (IOException e) {
+				error(connection, "ERR snapshot failed: " + e.getMessage());
+				return;
+			}
+			reply(connection, OK);
+			break;
+		case "PING":
+			if (command.length>1)
+				bulk(connection, command[1]);
+			else
+				reply(connection, PONG);
+			break;
+		case "ECHO":
+			if (command.length!=2) { wrongArguments(connection, command); return; }
+			bulk(connection, command[1]);
+			break;
+		case "COMMAND":
+		case "CONFIG":
+			reply(connection, EMPTY_ARRAY);
+			break;
+		case "QUIT":
+			reply(connection, OK);
+			connection.closing = true;
+			break;
+		case "SHUTDOWN":
+			running = false;
+			connection.closing = true;
+			break;
+		default:
+			error(connection, "ERR unknown command '" + command[0] + "'");
+		}
+	}
+
+	private void wrongArguments(Connection connection, String[] command) throws IOException {
+		error(connection, "ERR wrong number of arguments for '" + command[0].toLowerCase() + "' command");
+	}
+
+	/**
+	 * the transaction is over, let everyone who was held up have their turn
+	 */
+	private void release() throws IOException {
+		owner = null;
+		while (owner==null && !waiting.isEmpty()) {
+			Connection next = waiting.poll();
+			next.waiting = false;
+			if (next.channel.isOpen())
+				process(next);
+		}
+	}
+
+	/**
+	 * send whatever replies have built up - anything the socket won't take now goes when it becomes writable
+	 */
+	private void flush(Connection connection) throws IOException {
+		if (!connection.channel.isOpen())
+			return;
+		ByteBuffer out = connection.out;
+		if (out.position()>0) {
+			out.flip();
+			connection.channel.write(out);
+			out.compact();
+		}
+		//stop reading from a client whose commands are being held
+		int read = connection.waiting ? 0 : SelectionKey.OP_READ;
+		if (out.position()>0) {
+			//or that has fallen too far behind
+			connection.key.interestOps(out.position()<OUTPUT_HIGH_WATER 
+					? read | SelectionKey.OP_WRITE : SelectionKey.OP_WRITE);
+			return;
+		}
+
+		if (connection.closing) {
+			disconnect(connection);
+			return;
+		}
+		connection.key.interestOps(read);
+		if (connection.stalled) {
+			connection.stalled = false;
+			process(connection);
+		}
+	}
+
+	private void disconnect(Connection connection) throws IOException {
+		if (connection==null || !connection.channel.isOpen())
+			return;
+		connection.key.cancel();
+		connection.channel.close();
+
+		//whatever it had open goes away with it
+		while (connection.transactions>0) {
+			connection.db.rollback();
+			connection.transactions--;
+		}
+		if (owner==connection)
+			release();
+	}
+
+	/**
+	 * parse the next complete command from the buffer - either a RESP array of bulk strings or an inline
+	 * (space separated) command
+	 * @return the command and its arguments, null if the buffer doesn't hold a complete command yet
+	 */
+	static String[] parse(ByteBuffer in) throws ProtocolError {
+		int start = in.position();
+		while (in.hasRemaining()) {
+			if (in.get(in.position())!='*') {
+				String line = readLine(in);
+				if (line==null)
+					break;
+				String[] inline = line.trim().split(" +");
+				if (inline[0].isEmpty())
+					continue; //blank line
+				return inline;
+			}
+
+			in.get();
+			String count = readLine(in);
+			if (count==null)
+				break;
+			int arguments = parseLength(count);
+			if (arguments<=0)
+				continue; //empty array, nothing to run
+			if (arguments>MAX_ARGUMENTS)
+				throw new ProtocolError("invalid multibulk length");
+
+			//the parse starts over on every read until the whole command is in, so the array only grows as the
+			//arguments actually arrive
+			String[] command = new String[Math.min(arguments, INITIAL_ARGUMENTS)];
+			int parsed = 0;
+			for (int i=0; i<arguments; i++) {
+				if (!in.hasRemaining())
+					break;
+				if (in.get()!='$')
+					throw new ProtocolError("expected '$'");
+				String header = readLine(in);
+				if (header==null)
+					break;
+				int length = parseLength(header);
+				if (length<0 || length>MAX_BULK_LENGTH)
+					throw new ProtocolError("invalid bulk length");
+				if (in.remaining()<length+2)
+					break;
+				if (i==command.length)
+					command = Arrays.copyOf(command, Math.min(arguments, i*2));
+				command[i] = new String(in.array(), in.arrayOffset()+in.position(), length, StandardCharsets.UTF_8);
+				in.position(in.position()+length+2);
+				parsed++;
+			}
+			if (parsed<arguments)
+				break;
+			return command;
+		}
+
+		in.position(start);
+		return null;
+	}
+
+	/**
+	 * read up to the next CRLF (or bare LF), null if there isn't a complete line yet
+	 */
+	private static String readLine(ByteBuffer in) {
+		int start = in.position();
+		for (int i=start; i<in.limit(); i++) {
+			if (in.get(i)=='\n') {
+				int end = i>start && in.get(i-1)=='\r' ? i-1 : i;
+				in.position(i+1);
+				return new String(in.array(), in.arrayOffset()+start, end-start, StandardCharsets.UTF_8);
+			}
+		}
+		return null;
+	}
+
+	private static int parseLength(String s) throws ProtocolError {
+		try {
+			return Integer.parseInt(s);
+		} catch (NumberFormatException e) {
+			throw new ProtocolError("invalid length '" + s + "'");
+		}
+	}
+
+	/**
+	 * a buffer (of the same kind) at least twice the size with room for another needed bytes
+	 */
+	private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+		int capacity = Math.max(buffer.capacity()*2, buffer.position()+needed);
+		ByteBuffer bigger = buffer.isDirect() ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+		buffer.flip();
+		return bigger.put(buffer);
+	}
+
+	/**
+	 * the connection's output buffer, with room for another needed bytes
+	 */
+	private static ByteBuffer out(Connection connection, int needed) {
+		if (connection.out.remaining()<needed)
+			connection.out = grow(connection.out, needed);
+		return connection.out;
+	}
+
+	private static void reply(Connection connection, byte[] reply) {
+		out(connection, reply.length).put(reply);
+	}
+
+	private static void bulk(Connection connection, String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		ByteBuffer out = out(connection, bytes.length+16);
+		out.put((byte) '$');
+		putDecimal(out, bytes.length);
+		out.put(CRLF).put(bytes).put(CRLF);
+	}
+
+	private static void integer(Connection connection, long value) {
+		ByteBuffer out = out(connection, 24);
+		out.put((byte) ':');
+		putDecimal(out, value);
+		out.put(CRLF);
+	}
+
+	/**
+	 * an error reply - which is a single line, so any control characters (a CR or LF in an echoed command
+	 * name, say) are replaced with spaces
+	 */
+	private static void error(Connection connection, String message) {
+		StringBuilder line = new StringBuilder(message.length()+3).append('-');
+		for (int i=0; i<message.length(); i++) {
+			char c = message.charAt(i);
+			line.append(Character.isISOControl(c) ? ' ' : c);
+		}
+		reply(connection, ascii(line.append("\r\n").toString()));
+	}
+
+	private static void putDecimal(ByteBuffer out, long n) {
+		if (n<0) {
+			out.put((byte) '-');
+			n = -n;
+		}
+		if (n>=10)
+			putDecimal(out, n/10);
+		out.put((byte) ('0' + n%10));
+	}
+
+	private static byte[] ascii(String s) {
+		return s.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * per connection state
+	 */
+	private static final class Connection {
+		final SocketChannel channel;
+		final InMemDB db;
+		SelectionKey key;
+		ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+		ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		int transactions = 0;
+		long lastRead = System.nanoTime();
+		boolean waiting = false;
+		boolean stalled = false;
+		boolean closing = false;
+
+		Connection(SocketChannel channel, InMemDB db) {
+			this.channel = channel;
+			this.db = db;
+		}
+	}
+
+	/**
+	 * the client sent something that isn't RESP
+	 */
+	static final class ProtocolError extends Exception {
+		private static final long serialVersionUID = 2297349180622148803L;
+		ProtocolError(String msg) {
+			super(msg);
+		}
+	}
+}
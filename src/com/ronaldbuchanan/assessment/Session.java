@@ -0,0 +1,190 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Map;
+
+/**
+ * one client's view of a SessionStore, with its own transaction stack
+ *
+ * outside of a transaction reads see the latest committed state and writes are committed as they happen.
+ * begin() takes the committed state as the transaction's snapshot: from then on this session reads the
+ * snapshot plus its own writes, which go into private versions of the persistent maps (nobody else can see
+ * them) and are also recorded in a write set.  Nested transactions, rollback and commit work as in
+ * SnapshotInMemDB, except that commit() hands the write set to the store, which fails the commit with a
+ * TransactionConflictException if another session has committed a write to any of the same names since.
+ *
+ * a session belongs to one thread at a time, the store can be shared by any number
+ *
+ * @author ronbuchanan
+ */
+public class Session implements InMemDB {
+	//marks a deleted name in the write set - not a String, so no value can ever equal it
+	static final Object DELETED = new Object();
+
+	/*
+	 * Principal data structures:
+	 *
+	 * 		base - the committed state the outermost transaction started from (null outside of a transaction)
+	 *
+	 * 		view - that state plus the transaction's writes
+	 *
+	 * 		writes - the names written by the transaction and their latest values
+	 *
+	 * 		levels - the view and writes captured by each outstanding begin() (the depth of the stack is the
+	 * 				 current transaction id)
+	 */
+
+	private final SessionStore store;
+	private SessionStore.State base;
+	private SessionStore.State view;
+	private PersistentHashMap<String,Object> writes;
+	private final ArrayDeque<Level> levels = new ArrayDeque<>();
+
+	Session(SessionStore store) {
+		this.store = store;
+	}
+
+	/**
+	 * what this session sees right now
+	 */
+	private SessionStore.State current() {
+		return view==null ? store.committed() : view;
+	}
+
+	@Override
+	public void set(String name, String value) {
+		if (view==null) {
+			store.write(name, value);
+			return;
+		}
+		SessionStore.State next = view.set(name, value);
+		if (next!=view) {
+			view = next;
+			writes = writes.put(name, value);
+		}
+	}
+
+	@Override
+	public void delete(String name) {
+		if (view==null) {
+			store.write(name, null);
+			return;
+		}
+		SessionStore.State next = view.delete(name);
+		if (next!=view) {
+			view = next;
+			writes = writes.put(name, DELETED);
+		}
+	}
+
+	@Override
+	public String lookup(String name) {
+		return current().database.get(name);
+	}
+
+	@Override
+	public int count(String value) {
+		return current().valueCount.getOrDefault(value, 0);
+	}
+
+	@Override
+	public int size() {
+		return current().database.size();
+	}
+
+	@Override
+	public int distinctValues() {
+		return current().valueCount.size();
+	}
+
+	@Override
+	public void begin() {
+		if (view==null) {
+			base = store.committed();
+			view = base;
+			writes = PersistentHashMap.empty();
+		}
+		levels.push(new Level(view, writes));
+	}
+
+	@Override
+	public boolean rollback() {
+		if (levels.isEmpty())
+			return false;
+
+		//O(1) - just swap the roots back
+		Level level = levels.pop();
+		view = level.view;
+		writes = level.writes;
+		if (levels.isEmpty())
+			end();
+		return true;
+	}
+
+	@Override
+	public void commit() {
+		if (levels.isEmpty())
+			return;
+		try {
+			if (!writes.isEmpty())
+				store.commit(base, writes);
+		} finally {
+			levels.clear();
+			end();
+		}
+	}
+
+	private void end() {
+		base = null;
+		view = null;
+		writes = null;
+	}
+
+	@Override
+	public int transactionDepth() {
+		return levels.size();
+	}
+
+	/**
+	 * the committed state is immutable, so it is its own snapshot - O(1)
+	 */
+	@Override
+	public Iterable<Map.Entry<String,String>> snapshot() {
+		if (!levels.isEmpty())
+			throw new IllegalStateException("snapshots can't be taken inside a transaction");
+		return store.committed().database;
+	}
+
+	@Override
+	public void dump(PrintWriter out) {
+		SessionStore.State state = current();
+		out.println("database entries");
+		for (Map.Entry<String,String> entry : state.database)
+			out.println("\t"+entry.getKey()+"="+entry.getValue());
+
+		out.println("index entries");
+		for (Map.Entry<String,Integer> entry : state.valueCount)
+			out.println("\t"+entry.getKey()+" is the value for "+ entry.getValue() + " entries");
+
+		out.println("currentTxId = "+levels.size());
+		if (writes!=null) {
+			out.println("uncommitted writes");
+			for (Map.Entry<String,Object> write : writes)
+				out.println("\t\t"+write.getKey()+" ==>> "+(write.getValue()==DELETED ? "deleted" : write.getValue()));
+		}
+	}
+
+	/**
+	 * the view and writes captured by begin()
+	 */
+	private static final class Level {
+		final SessionStore.State view;
+		final PersistentHashMap<String,Object> writes;
+
+		Level(SessionStore.State view, PersistentHashMap<String,Object> writes) {
+			this.view = view;
+			this.writes = writes;
+		}
+	}
+}
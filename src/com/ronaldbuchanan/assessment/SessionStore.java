@@ -0,0 +1,160 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * a database shared by any number of sessions (see Session), each with its own transaction stack
+ *
+ * the committed state is a pair of persistent maps (as in SnapshotInMemDB) which is never modified, only
+ * replaced by each commit - so reading it is just reading the current root, readers never wait on writers,
+ * and a transaction's snapshot is just the root that was current when it began.  Commits are serialized
+ * on the store, but only for as long as it takes to apply the transaction's writes.
+ *
+ * every commit (and every write outside of a transaction) gets the next sequence number, and the state
+ * keeps the number of the last commit to write each name - deletes included, as tombstones - so a conflict
+ * is a name whose number has changed since the transaction began, even if its value has been put back.
+ * Only the newest tombstones (as many as there are names, at least 1024) are kept: a transaction that
+ * began before the oldest one dropped can't tell whether a name it found missing was written and deleted
+ * since, so writing one counts as a conflict.
+ *
+ * @author ronbuchanan
+ */
+public class SessionStore {
+	private static final int MIN_TOMBSTONES = 1 << 10;
+
+	/*
+	 * Principal data structures:
+	 *
+	 * 		committed - the latest committed state
+	 *
+	 * 		deletes - the name and sequence number of each tombstone in committed.versions, oldest first
+	 * 				  (a name set again since is still in here, its tombstone just isn't there any more)
+	 */
+
+	private volatile State committed = new State(PersistentHashMap.empty(), PersistentHashMap.empty(), PersistentHashMap.empty(), 0, 0);
+	private final ArrayDeque<Map.Entry<String,Long>> deletes = new ArrayDeque<>();
+
+	public SessionStore() {
+	}
+
+	/**
+	 * @return a new session on this store
+	 */
+	public Session open() {
+		return new Session(this);
+	}
+
+	/**
+	 * the latest committed state
+	 */
+	State committed() {
+		return committed;
+	}
+
+	/**
+	 * a write made outside of a transaction, committed as it happens
+	 * @param name
+	 * @param value - null to delete
+	 */
+	synchronized void write(String name, String value) {
+		State state = value==null ? committed.delete(name) : committed.set(name, value);
+		if (state!=committed)
+			publish(state, Collections.singletonMap(name, value).entrySet());
+	}
+
+	/**
+	 * commit a transaction's writes, unless another session has committed a write to one of the same names
+	 * since the transaction began (first committer wins)
+	 * @param base - the state the transaction started from
+	 * @param writes - the names written by the transaction and their final values (Session.DELETED if deleted)
+	 */
+	synchronized void commit(State base, PersistentHashMap<String,Object> writes) {
+		State state = committed;
+		for (Map.Entry<String,Object> write : writes) {
+			String name = write.getKey();
+			Long version = state.versions.get(name);
+			//no version: never written, or its tombstone dropped - a conflict only if that may have been since
+			if (version==null ? base.seq<state.horizon : version>base.seq)
+				throw new TransactionConflictException(name);
+		}
+
+		for (Map.Entry<String,Object> write : writes)
+			state = write.getValue()==Session.DELETED ? state.delete(write.getKey()) : state.set(write.getKey(), (String) write.getValue());
+		publish(state, writes);
+	}
+
+	/**
+	 * make a state with writes to some names the committed one, under the next sequence number
+	 */
+	private void publish(State state, Iterable<? extends Map.Entry<String,?>> writes) {
+		long seq = committed.seq+1;
+		long horizon = committed.horizon;
+		PersistentHashMap<String,Long> versions = state.versions;
+		for (Map.Entry<String,?> write : writes) {
+			String name = write.getKey();
+			versions = versions.put(name, seq);
+			if (!state.database.containsKey(name))
+				deletes.add(new AbstractMap.SimpleImmutableEntry<>(name, seq));
+		}
+
+		//drop the oldest tombstones, unless the name has been written again since
+		while (deletes.size()>Math.max(MIN_TOMBSTONES, state.database.size())) {
+			Map.Entry<String,Long> delete = deletes.poll();
+			if (delete.getValue().equals(versions.get(delete.getKey())))
+				versions = versions.remove(delete.getKey());
+			horizon = delete.getValue();
+		}
+		committed = new State(state.database, state.valueCount, versions, seq, horizon);
+	}
+
+	/**
+	 * one immutable version of the database and its value counts - set() and delete() return a new version
+	 * (with the versions of the state they were made from, only the store stamps those)
+	 */
+	static final class State {
+		final PersistentHashMap<String,String> database;
+		final PersistentHashMap<String,Integer> valueCount;
+		//the sequence number of the last commit to write each name (deleted ones too, the newest of them)
+		final PersistentHashMap<String,Long> versions;
+		//the commit that made this state, and the last one whose tombstones may have been dropped
+		final long seq;
+		final long horizon;
+
+		State(PersistentHashMap<String,String> database, PersistentHashMap<String,Integer> valueCount,
+				PersistentHashMap<String,Long> versions, long seq, long horizon) {
+			this.database = database;
+			this.valueCount = valueCount;
+			this.versions = versions;
+			this.seq = seq;
+			this.horizon = horizon;
+		}
+
+		State set(String name, String value) {
+			String oldValue = database.get(name);
+			if (value.equals(oldValue))
+				return this; //no change, it's a push
+
+			PersistentHashMap<String,Integer> counts = oldValue==null ? valueCount : countDown(valueCount, oldValue);
+			return new State(database.put(name, value), countUp(counts, value), versions, seq, horizon);
+		}
+
+		State delete(String name) {
+			String oldValue = database.get(name);
+			if (oldValue==null)
+				return this;
+			return new State(database.remove(name), countDown(valueCount, oldValue), versions, seq, horizon);
+		}
+
+		private static PersistentHashMap<String,Integer> countUp(PersistentHashMap<String,Integer> counts, String value) {
+			return counts.put(value, 1+counts.getOrDefault(value, 0));
+		}
+
+		private static PersistentHashMap<String,Integer> countDown(PersistentHashMap<String,Integer> counts, String value) {
+			int count = counts.get(value);
+			return count==1 ? counts.remove(value) : counts.put(value, count-1);
+		}
+	}
+}
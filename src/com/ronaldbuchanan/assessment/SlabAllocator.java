@@ -0,0 +1,38 @@
+package com.ronaldbuchanan.assessment;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * where OffHeapKeyStore gets its memory from - big buffers outside of the Java heap
+ *
+ * @author ronbuchanan
+ */
+interface SlabAllocator {
+	/**
+	 * @param capacity
+	 * @return a zeroed buffer in native byte order
+	 */
+	ByteBuffer allocate(int capacity);
+
+	/**
+	 * the buffer is no longer needed
+	 * @param slab
+	 */
+	void free(ByteBuffer slab);
+
+	/**
+	 * direct buffers - the memory is given back when the buffer is garbage collected, which only takes a
+	 * small (young) object, so it's counted against -XX:MaxDirectMemorySize rather than the heap
+	 */
+	SlabAllocator DIRECT = new SlabAllocator() {
+		@Override
+		public ByteBuffer allocate(int capacity) {
+			return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+		}
+
+		@Override
+		public void free(ByteBuffer slab) {
+		}
+	};
+}
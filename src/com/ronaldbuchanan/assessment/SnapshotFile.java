@@ -0,0 +1,246 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * point in time copy of the database on disk
+ *
+ * the entries are written in independently checksummed segments so loading can decode them in parallel:
+ * 		[magic "TOYSNAP1"][long wal position]
+ * 		segments: [varint name length][name utf-8][varint value length][value utf-8]...
+ * 		segment table: per segment [long offset][int length][int entries][int crc32]
+ * 		trailer: [long table offset][int segments][long entries][int table crc32][magic "TOYSNAP1"]
+ *
+ * the file is written to a temporary file and renamed into place, so a crash while writing leaves the
+ * previous snapshot intact
+ *
+ * @author ronbuchanan
+ */
+public final class SnapshotFile {
+	private static final byte[] MAGIC = "TOYSNAP1".getBytes(StandardCharsets.US_ASCII);
+	private static final int TABLE_ENTRY_SIZE = 8+4+4+4;
+	private static final int TRAILER_SIZE = 8+4+8+4+MAGIC.length;
+
+	//segments are cut at whichever limit comes first
+	private static final int SEGMENT_ENTRIES = 1 << 16;
+	private static final int SEGMENT_BYTES = 4 << 20;
+
+	private SnapshotFile() {
+	}
+
+	/**
+	 * write a snapshot
+	 * @param path
+	 * @param entries - from InMemDB.snapshot()
+	 * @param walPosition - where replaying the write ahead log should start from once this is loaded
+	 * @return the number of entries written
+	 */
+	public static long write(Path path, Iterable<Map.Entry<String,String>> entries, long walPosition) throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		long total = 0;
+		try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			ByteBuffer header = ByteBuffer.allocate(MAGIC.length+8);
+			header.put(MAGIC).putLong(walPosition).flip();
+			writeFully(channel, header);
+
+			ByteBuffer segment = ByteBuffer.allocate(SEGMENT_BYTES + (1 << 16));
+			ByteBuffer table = ByteBuffer.allocate(TABLE_ENTRY_SIZE * 64);
+			CRC32 crc = new CRC32();
+			int segmentEntries = 0;
+			int segments = 0;
+
+			for (Map.Entry<String,String> entry : entries) {
+				byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+				byte[] value = entry.getValue().getBytes(StandardCharsets.UTF_8);
+				if (segment.remaining()<10+name.length+value.length) {
+					if (segmentEntries>0) {
+						table = cutSegment(channel, segment, segmentEntries, table, crc);
+						segments++;
+						segmentEntries = 0;
+					}
+					if (segment.capacity()<10+name.length+value.length)
+						segment = ByteBuffer.allocate(10+name.length+value.length);
+				}
+
+				putVarint(segment, name.length);
+				segment.put(name);
+				putVarint(segment, value.length);
+				segment.put(value);
+				total++;
+
+				if (++segmentEntries==SEGMENT_ENTRIES || segment.position()>=SEGMENT_BYTES) {
+					table = cutSegment(channel, segment, segmentEntries, table, crc);
+					segments++;
+					segmentEntries = 0;
+				}
+			}
+			if (segmentEntries>0) {
+				table = cutSegment(channel, segment, segmentEntries, table, crc);
+				segments++;
+			}
+
+			long tableOffset = channel.position();
+			table.flip();
+			crc.reset();
+			crc.update(table.array(), 0, table.limit());
+			writeFully(channel, table);
+
+			ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+			trailer.putLong(tableOffset).putInt(segments).putLong(total).putInt((int) crc.getValue()).put(MAGIC).flip();
+			writeFully(channel, trailer);
+			channel.force(true);
+		}
+		Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		return total;
+	}
+
+	/**
+	 * load a snapshot into an (empty) database - the segments are read, checked and decoded on all the
+	 * cores, and handed to the database as they become ready
+	 * @param path
+	 * @param db
+	 * @return the write ahead log position to replay from
+	 */
+	public static long load(Path path, InMemDB db) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size<MAGIC.length+8+TRAILER_SIZE)
+				throw new IOException("snapshot file is truncated: "+path);
+
+			ByteBuffer header = readFully(channel, 0, MAGIC.length+8);
+			checkMagic(header, path);
+			long walPosition = header.getLong(MAGIC.length);
+
+			ByteBuffer trailer = readFully(channel, size-TRAILER_SIZE, TRAILER_SIZE);
+			long tableOffset = trailer.getLong();
+			int segments = trailer.getInt();
+			trailer.getLong(); //total entries
+			int tableCrc = trailer.getInt();
+			checkMagic(trailer.slice(), path);
+
+			ByteBuffer table = readFully(channel, tableOffset, segments*TABLE_ENTRY_SIZE);
+			CRC32 crc = new CRC32();
+			crc.update(table.array(), 0, table.limit());
+			if ((int) crc.getValue()!=tableCrc)
+				throw new IOException("snapshot segment table is corrupt: "+path);
+
+			int threads = Math.max(1, Math.min(segments, Runtime.getRuntime().availableProcessors()));
+			ExecutorService pool = Executors.newFixedThreadPool(threads);
+			try {
+				ExecutorCompletionService<String[]> decoded = new ExecutorCompletionService<>(pool);
+				for (int i=0; i<segments; i++) {
+					long offset = table.getLong();
+					int length = table.getInt();
+					int entries = table.getInt();
+					int checksum = table.getInt();
+					decoded.submit(() -> decode(channel, offset, length, entries, checksum, path));
+				}
+
+				//apply on this thread (the engines aren't thread safe) while the rest are still decoding
+				for (int i=0; i<segments; i++) {
+					String[] pairs = decoded.take().get();
+					for (int j=0; j<pairs.length; j+=2)
+						db.set(pairs[j], pairs[j+1]);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("interrupted loading snapshot", e);
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof IOException)
+					throw (IOException) e.getCause();
+				throw new IOException("unable to load snapshot", e.getCause());
+			} finally {
+				pool.shutdownNow();
+			}
+			return walPosition;
+		}
+	}
+
+	/**
+	 * read, check and decode one segment into alternating names and values (hashing the names while we're
+	 * on another core, so the inserts don't have to)
+	 */
+	private static String[] decode(FileChannel channel, long offset, int length, int entries, int checksum, Path path) throws IOException {
+		ByteBuffer segment = readFully(channel, offset, length);
+		CRC32 crc = new CRC32();
+		crc.update(segment.array(), 0, length);
+		if ((int) crc.getValue()!=checksum)
+			throw new IOException("snapshot segment at "+offset+" is corrupt: "+path);
+
+		String[] pairs = new String[entries*2];
+		byte[] bytes = segment.array();
+		for (int i=0; i<pairs.length; i++) {
+			int n = getVarint(segment);
+			pairs[i] = new String(bytes, segment.position(), n, StandardCharsets.UTF_8);
+			segment.position(segment.position()+n);
+			if ((i & 1)==0)
+				pairs[i].hashCode();
+		}
+		return pairs;
+	}
+
+	private static ByteBuffer cutSegment(FileChannel channel, ByteBuffer segment, int entries, ByteBuffer table, CRC32 crc) throws IOException {
+		long offset = channel.position();
+		segment.flip();
+		int length = segment.limit();
+		crc.reset();
+		crc.update(segment.array(), 0, length);
+		writeFully(channel, segment);
+		segment.clear();
+
+		if (table.remaining()<TABLE_ENTRY_SIZE)
+			table = ByteBuffer.wrap(Arrays.copyOf(table.array(), table.capacity()*2)).position(table.position());
+		return table.putLong(offset).putInt(length).putInt(entries).putInt((int) crc.getValue());
+	}
+
+	private static void checkMagic(ByteBuffer buffer, Path path) throws IOException {
+		for (int i=0; i<MAGIC.length; i++)
+			if (buffer.get(i)!=MAGIC[i])
+				throw new IOException("not a snapshot file: "+path);
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+	}
+
+	private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining())
+			if (channel.read(buffer, position+buffer.position())<0)
+				throw new IOException("unexpected end of snapshot file");
+		return buffer.flip();
+	}
+
+	private static void putVarint(ByteBuffer buffer, int n) {
+		while ((n & ~0x7f)!=0) {
+			buffer.put((byte) ((n & 0x7f) | 0x80));
+			n >>>= 7;
+		}
+		buffer.put((byte) n);
+	}
+
+	private static int getVarint(ByteBuffer buffer) {
+		int n = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = buffer.get();
+			n |= (b & 0x7f) << shift;
+			if (b>=0)
+				return n;
+		}
+	}
+}
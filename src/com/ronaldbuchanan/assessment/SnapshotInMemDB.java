@@ -0,0 +1,160 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Map;
+
+/**
+ * transaction engine based on persistent (structurally shared) maps rather than an undo log
+ *
+ * begin() just remembers the current roots of database and valueCount, and rollback() puts them back -
+ * both are O(1) regardless of how many writes the transaction made.  The price is paid on the writes
+ * instead: every set()/delete() copies the path to the modified entry (O(log32 n) allocations).
+ *
+ * @author ronbuchanan
+ */
+public class SnapshotInMemDB implements InMemDB {
+	/*
+	 * Principal data structures:
+	 *
+	 * 		database - the current version of the key-value map
+	 *
+	 * 		valueCount - the current version of the value counts (values no longer in use are removed)
+	 *
+	 * 		versions - stack of the versions captured by each outstanding begin() (the depth of the
+	 * 				   stack is the current transaction id)
+	 */
+
+	private PersistentHashMap<String,String> database = PersistentHashMap.empty();
+	private PersistentHashMap<String,Integer> valueCount = PersistentHashMap.empty();
+	private final ArrayDeque<Version> versions = new ArrayDeque<>();
+
+	public SnapshotInMemDB() {
+	}
+
+	@Override
+	public void set(String name, String value) {
+		String oldValue = database.get(name);
+
+		if (value.equals(oldValue))
+			return; //no change, it's a push
+
+		//update the database
+		database = database.put(name, value);
+
+		//update the index
+		if (oldValue!=null)
+			countDown(oldValue);
+		countUp(value);
+	}
+
+	@Override
+	public void delete(String name) {
+		String oldValue = database.get(name);
+		if (oldValue!=null) {
+			//update the index
+			countDown(oldValue);
+
+			//update the database
+			database = database.remove(name);
+		}
+	}
+
+	@Override
+	public String lookup(String name) {
+		return database.get(name);
+	}
+
+	@Override
+	public int count(String value) {
+		return valueCount.getOrDefault(value, 0);
+	}
+
+	@Override
+	public int size() {
+		return database.size();
+	}
+
+	@Override
+	public int distinctValues() {
+		return valueCount.size();
+	}
+
+	private void countUp(String value) {
+		valueCount = valueCount.put(value, 1+valueCount.getOrDefault(value, 0));
+	}
+
+	private void countDown(String value) {
+		int count = valueCount.get(value);
+		valueCount = count==1 ? valueCount.remove(value) : valueCount.put(value, count-1);
+	}
+
+	@Override
+	public void begin() {
+		versions.push(new Version(database, valueCount));
+	}
+
+	@Override
+	public boolean rollback() {
+		if (versions.isEmpty()) {
+			return false;
+		}
+
+		//O(1) - just swap the roots back
+		Version version = versions.pop();
+		database = version.database;
+		valueCount = version.valueCount;
+		return true;
+	}
+
+	@Override
+	public void commit() {
+		//the current roots already hold everything, so just forget the saved versions
+		versions.clear();
+	}
+
+	@Override
+	public int transactionDepth() {
+		return versions.size();
+	}
+
+	/**
+	 * the current root is immutable, so it is its own snapshot - O(1)
+	 */
+	@Override
+	public Iterable<Map.Entry<String,String>> snapshot() {
+		if (!versions.isEmpty())
+			throw new IllegalStateException("snapshots can't be taken inside a transaction");
+		return database;
+	}
+
+	@Override
+	public void dump(PrintWriter out) {
+		out.println("database entries");
+		for (Map.Entry<String,String> entry : database)
+			out.println("\t"+entry.getKey()+"="+entry.getValue());
+
+		out.println("index entries");
+		for (Map.Entry<String,Integer> entry : valueCount)
+			out.println("\t"+entry.getKey()+" is the value for "+ entry.getValue() + " entries");
+
+		out.println("currentTxId = "+versions.size());
+		out.println("pending transactions");
+		int txId = versions.size();
+		for (Version version : versions)
+			out.println("\t transaction #"+(txId--)+" started from "+version.database.size()+" entries");
+	}
+
+	/**
+	 * the roots captured by begin()
+	 */
+	private static final class Version {
+		final PersistentHashMap<String,String> database;
+		final PersistentHashMap<String,Integer> valueCount;
+
+		Version(PersistentHashMap<String,String> database, PersistentHashMap<String,Integer> valueCount) {
+			this.database = database;
+			this.valueCount = valueCount;
+		}
+	}
+}
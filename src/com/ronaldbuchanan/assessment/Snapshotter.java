@@ -0,0 +1,124 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * takes the snapshots - on demand (the SNAPSHOT command) and on an interval in the background
+ *
+ * the engines aren't thread safe, so the timer only raises a flag: the command thread notices it between
+ * commands, takes the point in time copy (O(1) for the snapshot engine, a flat copy of the table for the undo
+ * log engine) and hands it to the background thread to be written.  Snapshots are skipped while a
+ * transaction is open, and all the writing happens on the one background thread so they never overlap.
+ * Taking the copy also starts a new segment of the write ahead log, and once the snapshot has been written
+ * the segments before it are deleted.
+ *
+ * @author ronbuchanan
+ */
+public class Snapshotter implements Closeable {
+	private final Path path;
+	private final WriteAheadLog wal;
+	private final ScheduledExecutorService background;
+	private volatile boolean due = false;
+	private Future<Long> writing;
+
+	/**
+	 * @param path
+	 * @param wal - the log the database is writing to (null if none), so the snapshot knows where replay starts
+	 * 				and the log can be cut back to it
+	 * @param intervalSeconds - how often to take a snapshot in the background, 0 for only on demand
+	 */
+	public Snapshotter(Path path, WriteAheadLog wal, long intervalSeconds) {
+		this.path = path;
+		this.wal = wal;
+		this.background = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "snapshotter");
+			thread.setDaemon(true);
+			return thread;
+		});
+		if (intervalSeconds>0)
+			background.scheduleAtFixedRate(() -> due = true, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * take a snapshot now and wait for it to be written
+	 * @param db
+	 * @return the number of entries written
+	 */
+	public long snapshot(InMemDB db) throws IOException {
+		try {
+			return start(db, false).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted writing snapshot", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException("unable to write snapshot", e.getCause());
+		}
+	}
+
+	/**
+	 * called between commands - starts a background snapshot if one is due and the database is between transactions
+	 * @param db
+	 */
+	public void poll(InMemDB db) {
+		if (!due || db.transactionDepth()>0 || (writing!=null && !writing.isDone()))
+			return;
+		due = false;
+		try {
+			start(db, true);
+		} catch (IOException e) {
+			System.err.println("background snapshot failed: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * take the point in time copy here, write it on the background thread
+	 * @param db
+	 * @param report - nobody is waiting on a background snapshot, so it has to report its own failure
+	 */
+	private Future<Long> start(InMemDB db, boolean report) throws IOException {
+		Iterable<Map.Entry<String,String>> entries = db.snapshot();
+		long walPosition = wal==null ? 0 : wal.rotate();
+		writing = background.submit(() -> {
+			try {
+				long written = SnapshotFile.write(path, entries, walPosition);
+				if (wal!=null) {
+					//the snapshot is good either way, the next one will get the segments this leaves behind
+					try {
+						wal.deleteBefore(walPosition);
+					} catch (IOException e) {
+						System.err.println("unable to delete old write ahead log segments: " + e.getMessage());
+					}
+				}
+				return written;
+			} catch (IOException e) {
+				if (report)
+					System.err.println("background snapshot failed: " + e.getMessage());
+				throw e;
+			}
+		});
+		return writing;
+	}
+
+	/**
+	 * wait for a snapshot in progress to finish
+	 */
+	@Override
+	public void close() throws IOException {
+		background.shutdown();
+		try {
+			background.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
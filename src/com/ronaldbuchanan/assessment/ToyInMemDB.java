@@ -1,36 +1,113 @@
 package com.ronaldbuchanan.assessment;
 
-import java.util.HashMap;
-import java.util.ArrayDeque;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 
-import org.javatuples.Triplet;
-
-public class ToyInMemDB {
+public class ToyInMemDB implements InMemDB {
 	/* 
 	 * Principal data structures:
 	 * 
-	 * 		database - a simple key-value map 
+	 * 		database - a simple key-value map (a HashMap unless another KeyStore is asked for)
+	 * 
+	 * 		valueIndex - contains the counts of the values (values no longer in use are removed), optionally 
+	 * 					 along with the names holding each value - built on first use when the database
+	 * 					 starts out with data in it, so opening it stays instant (a dictionary encoded or
+	 * 					 mapped store keeps the counts itself, and is used as the index unless the names
+	 * 					 are needed too)
 	 * 
-	 * 		valueCount - contains the counts of the values
+	 * 		transactionLog - maintains the undo records of each of the outstanding transactions, one per name
+	 * 						 (only the first pre-image of a name in a transaction is needed to roll it back),
+	 * 						 its depth is the index of the current transaction
 	 * 
-	 * 		transactionLog - maintains multiple stacks of the outstanding transactions
+	 * 		journal - a durable copy of the undo records' pre-images, for a store that writes in place to its
+	 * 				  files (a mapped store) - otherwise null
 	 * 
-	 *  	currentTxId - index of the current transaction (more efficient than checking the 
-	 *  				  maximum value the transactionLog's keySet)
+	 * 		memory - running estimates of the heap used by each of the above, kept up to date as they change
+	 * 				 so the MEMORY command and the memory limit never have to walk them
 	 *  
 	 *  NOTE: 
-	 *  	Should there ever be a need to implement conditioned get() operations ("where" clauses), an alternate
-	 *  	implementation would be to replace valueCount with an index:
-	 *  		HashMap<String,HashSet<String>> index = new HashMap<>()
+	 *  	The inverted index (HashMap<String,HashSet<String>>) is what supports conditioned operations like
+	 *  	KEYS_WITH, but it costs an entry per name rather than per distinct value so it has to be asked for
 	 *  	
 	 */
 	
-	private final HashMap<String,String> database = new HashMap<>();
-	private final HashMap<String,Integer> valueCount = new HashMap<>();
-	private final HashMap<Integer,ArrayDeque<Triplet<String,String,String>>> transactionLog = new HashMap<>();
-	private Integer currentTxId = 0;
+	private final KeyStore database;
+	private final boolean invertedIndex;
+	private ValueIndex valueIndex;
+	private final UndoLog transactionLog = new UndoLog();
+	private final UndoJournal journal;
+	private final MemoryAccount memory = new MemoryAccount();
+	private long memoryLimit = 0;
+	
+	//the undo records (then every power of two above) at which a transaction is reported as large
+	private static final int LARGE_TRANSACTION = 1 << 12;
+	
+	//batch mode buffer sizes
+	private static final int INPUT_BUFFER_SIZE = 1 << 16;
+	private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
 	
 	public ToyInMemDB() {
+		this(false);
+	}
+	
+	/**
+	 * @param invertedIndex - keep the names holding each value (needed for KEYS_WITH)
+	 */
+	public ToyInMemDB(boolean invertedIndex) {
+		this(invertedIndex, new HashMapKeyStore());
+	}
+	
+	/**
+	 * @param invertedIndex - keep the names holding each value (needed for KEYS_WITH)
+	 * @param database - the table to keep the names and values in
+	 */
+	ToyInMemDB(boolean invertedIndex, KeyStore database) {
+		this(invertedIndex, database, null);
+	}
+	
+	/**
+	 * @param invertedIndex - keep the names holding each value (needed for KEYS_WITH)
+	 * @param database - the table to keep the names and values in
+	 * @param journal - where to keep the pre-images of transactional writes when the table is durable itself
+	 * 					(already recovered), null if it isn't
+	 */
+	ToyInMemDB(boolean invertedIndex, KeyStore database, UndoJournal journal) {
+		this.database = database;
+		this.invertedIndex = invertedIndex;
+		this.journal = journal;
+		if (!invertedIndex && database.valueCounts()!=null)
+			valueIndex = database.valueCounts(); //the store keeps the counts itself
+		else if (database.size()==0)
+			valueIndex = invertedIndex ? new InvertedValueIndex() : new CountingValueIndex();
+	}
+	
+	/**
+	 * the value index, indexing what's already in the database the first time it's needed
+	 */
+	private ValueIndex index() {
+		if (valueIndex==null) {
+			ValueIndex index = invertedIndex ? new InvertedValueIndex() : new CountingValueIndex();
+			for (Map.Entry<String,String> entry : database) {
+				index.add(entry.getValue(), entry.getKey());
+				memory.change(entry.getKey(), null, entry.getValue());
+			}
+			valueIndex = index;
+		}
+		return valueIndex;
 	}
 	
 	/**
@@ -38,229 +115,570 @@ public class ToyInMemDB {
 	 * @param name
 	 * @param value
 	 */
+	@Override
 	public void set(String name, String value) {
-		String oldValue = database.getOrDefault(name, null);
+		//the index has to be built before the database changes
+		ValueIndex index = index();
+		if (memoryLimit>0 && estimatedBytes()>=memoryLimit)
+			throw new MemoryLimitException(memoryLimit);
+		
+		//a durable table needs the pre-image on disk before it is overwritten - only the first one since the
+		//outermost BEGIN (while the name has an undo record, that is), and not for a write that changes nothing
+		if (journal!=null && transactionLog.depth()>0) {
+			String before = database.get(name);
+			if (value.equals(before))
+				return;
+			if (!transactionLog.contains(name))
+				journal.record(name, before);
+		}
+		
+		//update the database
+		String oldValue = database.put(name, value);
 		
 		if (value.equals(oldValue))
 			return; //no change, it's a push
+		memory.change(name, oldValue, value);
 		
 		//log to the transaction log
-		if (currentTxId>0)
-			transactionLog.get(currentTxId).addLast(Triplet.with(name, oldValue, value));
-		
-		//update the database
-		database.put(name, value);
+		if (transactionLog.depth()>0)
+			log(name, oldValue, value);
 		
 		//update the index
 		if (oldValue!=null)
-			valueCount.put(oldValue, valueCount.getOrDefault(oldValue, 0)-1);
-		valueCount.put(value, 1+valueCount.getOrDefault(value, 0));
+			index.remove(oldValue, name);
+		index.add(value, name);
 	}
 	
 	/**
 	 * delete a name
 	 * @param name
 	 */
+	@Override
 	public void delete(String name) {
-		if (database.containsKey(name)) {
-			String oldValue = database.get(name);
+		ValueIndex index = index();
+		if (journal!=null && transactionLog.depth()>0) {
+			String before = database.get(name);
+			if (before!=null && !transactionLog.contains(name))
+				journal.record(name, before);
+		}
+		
+		//update the database
+		String oldValue = database.remove(name);
+		if (oldValue!=null) {
 			String newValue = null;
+			memory.change(name, oldValue, newValue);
 			
 			//log to the transaction log
-			if (currentTxId>0)
-				transactionLog.get(currentTxId).addLast(Triplet.with(name, oldValue, newValue));
+			if (transactionLog.depth()>0)
+				log(name, oldValue, newValue);
 			
 			//update the index
-			valueCount.put(oldValue, valueCount.get(oldValue)-1);
-			
-			//update the database
-			database.remove(name);
+			index.remove(oldValue, name);
+		}
+	}
+	
+	/**
+	 * add an undo record to the current transaction, with a Flight Recorder event each time the outstanding
+	 * transactions reach another power of two records past LARGE_TRANSACTION
+	 */
+	private void log(String name, String oldValue, String newValue) {
+		int records = transactionLog.size();
+		transactionLog.record(name, oldValue, newValue);
+		if (++records!=transactionLog.size())
+			return; //the name already has a record in this transaction
+		memory.logged(oldValue);
+		if (records>=LARGE_TRANSACTION && (records & (records-1))==0) {
+			TransactionEvents.LargeTransaction event = new TransactionEvents.LargeTransaction();
+			if (event.shouldCommit()) {
+				event.depth = transactionLog.depth();
+				event.undoRecords = records;
+				event.commit();
+			}
 		}
 	}
 	
 	/**
-	 * get the value for a name
+	 * get the value for a name, null if it isn't set
 	 * @param name
 	 */
-	public String get(String name) {
-		return database.getOrDefault(name,"NULL");
+	@Override
+	public String lookup(String name) {
+		return database.get(name);
 	}
 	
 	/**
 	 * get the number of occurrences of a value
 	 */
+	@Override
 	public int count(String value) {
-		return valueCount.getOrDefault(value, 0);
+		return index().count(value);
+	}
+	
+	/**
+	 * get the number of names that are set
+	 */
+	@Override
+	public int size() {
+		return database.size();
+	}
+	
+	/**
+	 * get the number of distinct values in use
+	 */
+	@Override
+	public int distinctValues() {
+		return index().size();
+	}
+	
+	/**
+	 * the number of distinct values, or -1 if the value index hasn't been built yet (for monitoring, which
+	 * shouldn't build it)
+	 */
+	int indexedValues() {
+		ValueIndex index = valueIndex;
+		return index==null ? -1 : index.size();
+	}
+	
+	/**
+	 * the number of undo records across all the outstanding transactions
+	 */
+	int undoRecords() {
+		return transactionLog.size();
+	}
+	
+	/**
+	 * the estimated heap used by the names, the values, the value index and the undo log
+	 */
+	long estimatedBytes() {
+		return memory.names() + memory.values() + indexBytes() + memory.undo();
+	}
+	
+	private long indexBytes() {
+		ValueIndex index = valueIndex;
+		if (index==null)
+			return 0;
+		return MemoryAccount.index(index.size(), invertedIndex ? database.size() : 0);
+	}
+	
+	/**
+	 * reject writes (with a MemoryLimitException) once the estimated heap used reaches a limit - deletes,
+	 * rollbacks and commits are still allowed, since they only free memory
+	 * @param bytes - 0 for no limit
+	 */
+	void limitMemory(long bytes) {
+		memoryLimit = bytes;
+	}
+	
+	/**
+	 * print the estimated heap used by each structure
+	 * @param out
+	 */
+	@Override
+	public void memory(PrintWriter out) {
+		ValueIndex index = index();
+		memory.print(out, database.size(), index.size(), indexBytes(), transactionLog.size(), memoryLimit);
+	}
+	
+	/**
+	 * get the names holding a value (requires the inverted index)
+	 * @param value
+	 */
+	@Override
+	public Iterator<String> keysWith(String value) {
+		return index().names(value);
+	}
+
+	/**
+	 * get the names from start up to end, in order (requires an ordered store) - writes are made in place,
+	 * so an open transaction's are already there
+	 * @param start
+	 * @param end
+	 */
+	@Override
+	public Iterator<String> scan(String start, String end) {
+		return names(database.range(start, end));
+	}
+
+	/**
+	 * get the names starting with a prefix, in order (requires an ordered store)
+	 * @param prefix
+	 */
+	@Override
+	public Iterator<String> prefix(String prefix) {
+		return names(database.prefixed(prefix));
+	}
+
+	private static Iterator<String> names(Iterator<Map.Entry<String,String>> entries) {
+		return new Iterator<String>() {
+			@Override
+			public boolean hasNext() {
+				return entries.hasNext();
+			}
+
+			@Override
+			public String next() {
+				return entries.next().getKey();
+			}
+		};
 	}
 	
 	/**
 	 * start a new transaction
 	 */
+	@Override
 	public void begin() {
-		//increment the current transaction id and insert new stack for the new transaction 
-		transactionLog.put(++currentTxId, new ArrayDeque<>());
+		//increment the current transaction id, marking where the new transaction's records start 
+		transactionLog.begin();
 	}
 	
 	/**
 	 * rollback the current transaction
+	 * @return false if there is no transaction to roll back
 	 */
-	public void rollback() {
-		if (currentTxId==0) {
-			System.out.println("TRANSACTION NOT FOUND");
-			return;
+	@Override
+	public boolean rollback() {
+		if (transactionLog.depth()==0) {
+			return false;
 		}
 
-		ArrayDeque<Triplet<String,String,String>> tx = transactionLog.get(currentTxId);
-		while (!tx.isEmpty()) { // definitely O(n)
-			Triplet<String,String,String> entry = tx.pollLast();
-			String name = entry.getValue0();
-			String oldValue = entry.getValue1(); 
-			String newValue = entry.getValue2();
+		TransactionEvents.Rollback event = new TransactionEvents.Rollback();
+		event.begin();
+		
+		//O(n) in the number of distinct names written, no matter how many times each was written
+		int depth = transactionLog.depth();
+		int start = transactionLog.levelStart(depth);
+		int records = transactionLog.size()-start;
+		for (int record = transactionLog.size()-1; record>=start; record--) {
+			String name = transactionLog.name(record);
+			String oldValue = transactionLog.oldValue(record); 
+			String newValue = transactionLog.newValue(record);
 			
 			//update the database
 			if (oldValue == null)
 				database.remove(name);
 			else
 				database.put(name, oldValue);
+			memory.change(name, newValue, oldValue);
+			memory.unlogged(oldValue);
 			
 			//update the count
 			if (newValue!=null)
-				valueCount.put(newValue, valueCount.get(newValue)-1);
+				index().remove(newValue, name);
 			if (oldValue!=null)
-				valueCount.put(oldValue, 1 + valueCount.getOrDefault(oldValue, 0));
+				index().add(oldValue, name);
 		}
 		
 		//remove the entries from the current transaction and decrement the current transaction id
-		transactionLog.remove(currentTxId--);
+		transactionLog.end();
+		if (journal!=null && transactionLog.depth()==0)
+			journal.clear();
+		
+		event.end();
+		if (event.shouldCommit()) {
+			event.depth = depth;
+			event.undoRecords = records;
+			event.commit();
+		}
+		return true;
 	}
 	
 	/**
 	 * commit all outstanding transactions
 	 */
+	@Override
 	public void commit() {
+		TransactionEvents.Commit event = new TransactionEvents.Commit();
+		event.begin();
+		int depth = transactionLog.depth();
+		int records = transactionLog.size();
+		
 		//commits ALL outstanding transactions - these are already in the database, so just clear out the log 
 		transactionLog.clear();
-		currentTxId = 0;
+		memory.committed();
+		if (journal!=null)
+			journal.clear();
+		
+		event.end();
+		if (event.shouldCommit()) {
+			event.depth = depth;
+			event.undoRecords = records;
+			event.commit();
+		}
 	}
 	
 	/**
-	 * print out the contents of the data structures
+	 * get the number of outstanding transactions
 	 */
-	private void dump() {
-		System.out.println("database entries");
-		for (String name : database.keySet())
-			System.out.println("\t"+name+"="+database.get(name));
-		
-		System.out.println("index entries");
-		for (String value : valueCount.keySet())
-			System.out.println("\t"+value+" is the value for "+ valueCount.get(value) + " entries");
+	@Override
+	public int transactionDepth() {
+		return transactionLog.depth();
+	}
 
-		System.out.println("currentTxId = "+currentTxId);
-		System.out.println("pending transactions");
-		for (Integer txId : transactionLog.keySet()) {
-			System.out.println("\t transaction #"+txId+" contains:");
-			for (Triplet<String,String,String> trip : transactionLog.get(txId))
-				System.out.println("\t\t"+trip.getValue0()+" ==>> old:"+trip.getValue1() + ", new:"+trip.getValue2());
-		}
-		
+	/**
+	 * the undo records of the innermost transaction - one per distinct name it wrote
+	 */
+	@Override
+	public int transactionWrites() {
+		int depth = transactionLog.depth();
+		return depth==0 ? 0 : transactionLog.size()-transactionLog.levelStart(depth);
 	}
 	
 	/**
-	 * utility exception to clean up the handling of input errors
-	 * @author ronbuchanan
+	 * a copy of the database - O(n), but it's a flat copy of the table so it's pretty quick
 	 */
-	private static class BadInput extends Exception {
-		private static final long serialVersionUID = -9124882605241878066L;
-		public BadInput(String msg){
-			super(msg);
-		}
+	@Override
+	public Iterable<Map.Entry<String,String>> snapshot() {
+		if (transactionLog.depth()>0)
+			throw new IllegalStateException("snapshots can't be taken inside a transaction");
+		return database.copy();
 	}
+	
+	/**
+	 * print out the contents of the data structures
+	 */
+	@Override
+	public void dump(PrintWriter out) {
+		out.println("database entries");
+		for (Map.Entry<String,String> entry : database)
+			out.println("\t"+entry.getKey()+"="+entry.getValue());
+		
+		out.println("index entries");
+		for (String value : index().values())
+			out.println("\t"+value+" is the value for "+ index().count(value) + " entries");
 
+		out.println("currentTxId = "+transactionLog.depth());
+		out.println("pending transactions");
+		for (int txId = 1; txId<=transactionLog.depth(); txId++) {
+			out.println("\t transaction #"+txId+" contains:");
+			int end = txId<transactionLog.depth() ? transactionLog.levelStart(txId+1) : transactionLog.size();
+			for (int record = transactionLog.levelStart(txId); record<end; record++)
+				out.println("\t\t"+transactionLog.name(record)+" ==>> old:"+transactionLog.oldValue(record) + ", new:"+transactionLog.newValue(record));
+		}
+		
+	}
+	
 	public static void main(String[] args) throws Exception {
-		System.out.println("Starting ... ");
+		boolean debug = false;
+		boolean snapshot = false;
+		boolean concurrent = false;
+		boolean sessions = false;
+		boolean mvcc = false;
+		boolean invertedIndex = false;
+		String store = "hash";
+		String mappedPath = null;
+		boolean mappedSync = false;
+		String script = null;
+		String walPath = null;
+		long walFlushMillis = 0;
+		String savePath = null;
+		long saveEverySeconds = 0;
+		int port = 0;
+		long multiTimeoutSeconds = RespServer.DEFAULT_MULTI_TIMEOUT_MILLIS/1000;
+		String workload = null;
+		boolean generate = false;
+		String replay = null;
+		int untimed = 0;
+		long operations = 1000000;
+		int records = 100000;
+		int values = 1000;
+		int transactionPercent = 0;
+		long seed = 1;
+		long maxMemory = 0;
+		for (int i=0; i<args.length; i++) {
+			switch (args[i].toLowerCase()) {
+			case "-debug":		debug = true; break;
+			case "-snapshot":	snapshot = true; break;
+			case "-concurrent":	concurrent = true; break;
+			case "-sessions":	sessions = true; break;
+			case "-mvcc":		mvcc = true; break;
+			case "-index":		invertedIndex = true; break;
+			case "-store":		store = args[++i]; break;
+			case "-mapped":		mappedPath = args[++i]; break;
+			case "-mapped-sync":	mappedSync = true; break;
+			case "-file":		script = i+1<args.length ? args[++i] : "-"; break;
+			case "-wal":		walPath = args[++i]; break;
+			case "-wal-flush":	walFlushMillis = Long.parseLong(args[++i]); break;
+			case "-save":		savePath = args[++i]; break;
+			case "-save-every":	saveEverySeconds = Long.parseLong(args[++i]); break;
+			case "-port":		port = Integer.parseInt(args[++i]); break;
+			case "-multi-timeout":	multiTimeoutSeconds = Long.parseLong(args[++i]); break;
+			case "-workload":	workload = args[++i]; break;
+			case "-generate":	generate = true; break;
+			case "-replay":		replay = args[++i]; break;
+			case "-untimed":	untimed = Integer.parseInt(args[++i]); break;
+			case "-operations":	operations = Long.parseLong(args[++i]); break;
+			case "-records":	records = Integer.parseInt(args[++i]); break;
+			case "-values":		values = Integer.parseInt(args[++i]); break;
+			case "-transactions":	transactionPercent = Integer.parseInt(args[++i]); break;
+			case "-seed":		seed = Long.parseLong(args[++i]); break;
+			case "-maxmemory":	maxMemory = bytes(args[++i]); break;
+			default:			System.out.println("ignoring unrecognized option: " + args[i]);
+			}
+		}
 
-		boolean debug = args.length>0 && "-debug".equals(args[0].toLowerCase());
-		ToyInMemDB db = new ToyInMemDB();
-		
-		java.io.Console console = System.console();
-		while(true) {
-			String sysin = console.readLine(">> ");
-			if (sysin==null || sysin.trim().length()==0)
-				continue;
-			
-			String[] input = sysin.split(" ");
-			try {
-				switch (input[0].toUpperCase()) {
-				case "SET": 		
-					{
-						if (input.length!=3)
-							throw new BadInput("improper command: SET accepts 2 parameters: [name] and [value]");
+		//the stores, the inverted index and the memory limit belong to the undo log engine, so refuse to start 
+		//rather than quietly run without them (and answer SCAN, PREFIX or KEYS_WITH with errors)
+		List<String> engines = new ArrayList<>();
+		if (snapshot)
+			engines.add("-snapshot");
+		if (concurrent)
+			engines.add("-concurrent");
+		if (sessions)
+			engines.add("-sessions");
+		if (mvcc)
+			engines.add("-mvcc");
+		String unsupported = !"hash".equalsIgnoreCase(store) ? "-store " + store 
+				: mappedPath!=null || mappedSync ? "-mapped" 
+				: invertedIndex ? "-index" 
+				: maxMemory>0 ? "-maxmemory" 
+				: null;
+		String conflict = engines.size()>1 ? "choose one of " + String.join(", ", engines) 
+				: !engines.isEmpty() && unsupported!=null ? unsupported + " only works with the default engine, not with " + engines.get(0) 
+				: mappedPath!=null && !"hash".equalsIgnoreCase(store) ? "-mapped is a store of its own, it can't be used with -store " + store 
+				: null;
+		if (conflict!=null) {
+			System.err.println(conflict);
+			System.exit(1);
+		}
 
-						String name = input[1];
-						String value = input[2];
-						db.set(name, value);							
-					}
-					break;
-				case "GET":
-					{
-						if (input.length!=2)
-							throw new BadInput("improper command: GET accepts 1 parameter: [name]");
-						String name = input[1];
-						String value = db.get(name);
-						System.out.println(value);	
-					}
-					break;
-				case "DELETE": 
-					{		
-						if (input.length!=2)
-							throw new BadInput("improper command: DELETE accepts 1 parameter: [name]");
+		//a generated workload can be written out as a trace rather than run
+		Workload generated = workload==null ? null : new Workload(workload.charAt(0), records, values, transactionPercent, seed);
+		if (generate && generated!=null) {
+			PrintWriter out = new PrintWriter(new BufferedWriter(
+					new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE));
+			generated.load(out::println);
+			generated.run(operations, out::println);
+			out.flush();
+			return;
+		}
 
-						String name = input[1];
-						db.delete(name);
-					}
-					break;
-				case "COUNT":	
-					{
-						if (input.length!=2)
-							throw new BadInput("improper command: COUNT accepts 1 parameter: [value]");
-						
-						String value = input[1];
-						int count = db.count(value);
-						System.out.println(count);	
-					}
-					break;
-				case "BEGIN":	
-					{
-						if (input.length!=1)
-							throw new BadInput("improper command: BEGIN does not accept any parameters");
-						db.begin(); 	
-					}
-					break;
-				case "ROLLBACK":
-					{
-						if (input.length!=1)
-							throw new BadInput("improper command: ROLLBACK does not accept any parameters");
-						db.rollback();			
-					}
-					break;
-				case "COMMIT":
-					{
-						if (input.length!=1)
-							throw new BadInput("improper command: COMMIT does not accept any parameters");
-						db.commit();
+		//the undo log engine is the default, the snapshot engine trades slower writes for O(1) rollback, the 
+		//concurrent engine can be shared between threads, the session and mvcc stores isolate each client's 
+		//transactions
+		MvccStore versions = mvcc ? new MvccStore() : null;
+		MappedKeyStore mapped = mappedPath==null ? null : MappedKeyStore.open(Paths.get(mappedPath), mappedSync);
+		UndoJournal journal = null;
+		if (mapped!=null) {
+			//writes go straight into the mapped files, so undo whatever transaction was open when it last stopped
+			journal = new UndoJournal(Paths.get(mappedPath).resolve("undo"), mappedSync);
+			int undone = journal.recover(mapped);
+			if (undone>0)
+				System.out.println("rolled back " + undone + " uncommitted writes to " + mappedPath);
+		}
+		Supplier<InMemDB> open = sessions ? new SessionStore()::open 
+				: mvcc ? versions::open 
+				: null;
+		InMemDB db = open!=null ? open.get()
+				: snapshot ? new SnapshotInMemDB() 
+				: concurrent ? new ConcurrentInMemDB() 
+				: new ToyInMemDB(invertedIndex, mapped!=null ? mapped : KeyStore.create(store), journal);
+		ToyInMemDB toy = db instanceof ToyInMemDB ? (ToyInMemDB) db : null;
+		if (toy!=null)
+			InMemDBMonitor.register(toy);
+		
+		//start from the last snapshot, if there is one
+		long walPosition = 0;
+		if (savePath!=null && Files.exists(Paths.get(savePath)))
+			walPosition = SnapshotFile.load(Paths.get(savePath), db);
+		
+		//with a write ahead log, bring the database the rest of the way up to date before logging anything new
+		WriteAheadLog wal = null;
+		if (walPath!=null) {
+			wal = new WriteAheadLog(Paths.get(walPath), walFlushMillis);
+			wal.replay(db, walPosition);
+			db = new DurableInMemDB(db, wal);
+		}
+		
+		//the limit applies from here on, so what's already been saved can always be loaded
+		if (maxMemory>0)
+			toy.limitMemory(maxMemory);
+		
+		Snapshotter snapshots = savePath==null ? null : new Snapshotter(Paths.get(savePath), wal, saveEverySeconds);
+		try {
+			java.io.Console console = System.console();
+			if (generated!=null || replay!=null) {
+				WorkloadDriver driver = new WorkloadDriver();
+				if (generated!=null) {
+					generated.load(driver::add);
+					untimed = driver.size();
+					generated.run(operations, driver::add);
+				} else {
+					try (BufferedReader in = Files.newBufferedReader(Paths.get(replay), StandardCharsets.UTF_8)) {
+						driver.read(in);
 					}
-					break;
-				case "END": 
-					System.out.println("\nsession complete, terminating ..."); 
-					return;
-				case "DUMP":		
-					if (debug) { db.dump(); break; }
-				default:
-					System.out.println("unrecognized function: " + input[0]);
 				}
-			} catch (BadInput e) {
-				System.err.print(e.getMessage());
+				driver.run(db, untimed);
+				driver.report(System.out);
+			} else if (port>0) {
+				WriteAheadLog log = wal;
+				try (RespServer server = open==null ? new RespServer(db, port, snapshots)
+						: new RespServer(() -> log==null ? open.get() : new DurableInMemDB(open.get(), log), port, snapshots)) {
+					server.multiTimeout(multiTimeoutSeconds*1000);
+					System.out.println("listening on port " + port);
+					server.run();
+				}
+			} else if (script!=null || console==null)
+				runBatch(db, script, debug, snapshots);
+			else
+				runConsole(db, console, debug, snapshots);
+		} finally {
+			if (snapshots!=null)
+				snapshots.close();
+			if (wal!=null)
+				wal.close();
+			if (versions!=null)
+				versions.close();
+			if (mapped!=null) {
+				//a transaction still open at the end is abandoned, not committed
+				while (db.rollback())
+					;
+				journal.close();
+				mapped.close();
 			}
 		}
 	}
+	
+	/**
+	 * a size in bytes, with an optional k, m or g suffix (powers of 1024)
+	 */
+	private static long bytes(String size) {
+		String digits = size.toLowerCase();
+		int shift = 0;
+		switch (digits.charAt(digits.length()-1)) {
+		case 'k':	shift = 10; break;
+		case 'm':	shift = 20; break;
+		case 'g':	shift = 30; break;
+		default:	return Long.parseLong(digits);
+		}
+		return Long.parseLong(digits.substring(0, digits.length()-1)) << shift;
+	}
+	
+	/**
+	 * batch mode - read the commands from a file (or piped in) and buffer up the output, the writer only goes 
+	 * to the OS when the buffer fills up and at the end
+	 */
+	private static void runBatch(InMemDB db, String script, boolean debug, Snapshotter snapshots) throws IOException {
+		PrintWriter out = new PrintWriter(new BufferedWriter(
+				new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), OUTPUT_BUFFER_SIZE));
+		PrintWriter err = new PrintWriter(new OutputStreamWriter(System.err, StandardCharsets.UTF_8), true);
+		try (BufferedReader in = script==null || "-".equals(script)
+				? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), INPUT_BUFFER_SIZE)
+				: new BufferedReader(new InputStreamReader(Files.newInputStream(Paths.get(script)), StandardCharsets.UTF_8), INPUT_BUFFER_SIZE)) {
+			new CommandInterpreter(db, out, err, debug, snapshots).run(in);
+		}
+	}
+	
+	/**
+	 * interactive mode - a line at a time from the console
+	 */
+	private static void runConsole(InMemDB db, java.io.Console console, boolean debug, Snapshotter snapshots) {
+		System.out.println("Starting ... ");
+		PrintWriter err = new PrintWriter(new OutputStreamWriter(System.err, StandardCharsets.UTF_8), true);
+		CommandInterpreter interpreter = new CommandInterpreter(db, new PrintWriter(System.out, true), err, debug, snapshots);
+		while(true) {
+			String sysin = console.readLine(">> ");
+			if (sysin==null || !interpreter.execute(sysin))
+				return;
+		}
+	}
 }
@@ -0,0 +1,17 @@
+package com.ronaldbuchanan.assessment;
+
+/**
+ * a commit lost a write-write conflict with another session - the transaction has been discarded
+ *
+ * @author ronbuchanan
+ */
+public class TransactionConflictException extends RuntimeException {
+	private static final long serialVersionUID = -6309474717651846206L;
+
+	/**
+	 * @param name - the name that was written by both
+	 */
+	public TransactionConflictException(String name) {
+		super("TRANSACTION CONFLICT: " + name + " was changed by another session, transaction discarded");
+	}
+}
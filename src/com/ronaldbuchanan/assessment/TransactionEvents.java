@@ -0,0 +1,71 @@
+package com.ronaldbuchanan.assessment;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder events for the undo log engine's transactions, so a latency spike in a recording can be
+ * lined up with the rollback, commit or runaway transaction behind it
+ *
+ * when no recording is running (or these events are disabled in its settings) an event is a couple of
+ * checks that JIT compiles away, so they are always emitted.  Rollbacks and commits only make it into a
+ * recording when they take longer than their threshold (1 ms unless the recording's settings say otherwise).
+ *
+ * @author ronbuchanan
+ */
+final class TransactionEvents {
+	private TransactionEvents() {
+	}
+
+	@Name("com.ronaldbuchanan.assessment.Rollback")
+	@Label("Rollback")
+	@Category({"Toy Database", "Transactions"})
+	@Description("A rollback of the innermost transaction, replaying its undo records")
+	@Threshold("1 ms")
+	@StackTrace(false)
+	static final class Rollback extends Event {
+		@Label("Depth")
+		@Description("The number of outstanding transactions, including the one rolled back")
+		int depth;
+
+		@Label("Undo Records")
+		@Description("The number of undo records replayed")
+		int undoRecords;
+	}
+
+	@Name("com.ronaldbuchanan.assessment.Commit")
+	@Label("Commit")
+	@Category({"Toy Database", "Transactions"})
+	@Description("A commit of all the outstanding transactions")
+	@Threshold("1 ms")
+	@StackTrace(false)
+	static final class Commit extends Event {
+		@Label("Depth")
+		@Description("The number of outstanding transactions committed")
+		int depth;
+
+		@Label("Undo Records")
+		@Description("The number of undo records discarded")
+		int undoRecords;
+	}
+
+	@Name("com.ronaldbuchanan.assessment.LargeTransaction")
+	@Label("Large Transaction")
+	@Category({"Toy Database", "Transactions"})
+	@Description("The outstanding transactions have reached another power of two undo records (from 4096)")
+	@StackTrace(false)
+	static final class LargeTransaction extends Event {
+		@Label("Depth")
+		@Description("The number of outstanding transactions")
+		int depth;
+
+		@Label("Undo Records")
+		@Description("The number of undo records across all the outstanding transactions")
+		int undoRecords;
+	}
+}
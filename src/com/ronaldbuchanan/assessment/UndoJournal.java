@@ -0,0 +1,184 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * the pre-images of the outstanding transactions' writes, kept in a file - for a store that writes in place
+ * to durable files (MappedKeyStore), where the in-memory undo log wouldn't survive the process
+ *
+ * each pre-image is appended before the write it covers is made, as a checksummed record:
+ * 		[int payload length][int crc32 of payload][int name length][name utf-8]
+ * 		[int value length, -1 if it wasn't set][value utf-8]
+ * and the file is emptied when the last transaction is committed or rolled back.  Opening the store after a
+ * crash (or a kill) in the middle of a transaction puts the pre-images back, newest first, so the earliest
+ * pre-image of each name wins and the store is left as it was before the outermost BEGIN.  A record torn by
+ * the crash belongs to a write that was never made, so it is just dropped.
+ *
+ * nested rollbacks don't need to touch the file - the earlier pre-images still restore the right state.  So
+ * only the first pre-image of a name since the outermost BEGIN is needed, and the journal grows with the
+ * names a transaction touches rather than with its writes.
+ *
+ * records are written to the file (so they survive the process dying) but only fsynced when asked for,
+ * as with the store's redo log
+ *
+ * @author ronbuchanan
+ */
+final class UndoJournal implements Closeable {
+	private static final int HEADER_SIZE = 8;
+	private static final int READ_SIZE = 1 << 16;
+
+	private final FileChannel channel;
+	private final boolean sync;
+	private final CRC32 crc = new CRC32();
+	private ByteBuffer record = ByteBuffer.allocate(1 << 10);
+	private long size;
+
+	/**
+	 * @param path
+	 * @param sync - fsync every record
+	 */
+	UndoJournal(Path path, boolean sync) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.sync = sync;
+		this.size = channel.size();
+	}
+
+	/**
+	 * undo the writes of the transactions that were outstanding when the process stopped, then empty the
+	 * journal - must be done before anything else is written to the store
+	 * @param store
+	 * @return the number of pre-images restored
+	 */
+	int recover(KeyStore store) throws IOException {
+		ArrayList<String> names = new ArrayList<>();
+		ArrayList<String> values = new ArrayList<>();
+		CRC32 check = new CRC32();
+
+		//read in chunks (a long transaction's journal can outgrow any one buffer), each record whole
+		ByteBuffer journal = ByteBuffer.allocate(READ_SIZE);
+		journal.flip();
+		channel.position(0);
+		long position = 0;
+		while (position+HEADER_SIZE<=size) {
+			if (!fill(journal, HEADER_SIZE))
+				break;
+			int start = journal.position();
+			int length = journal.getInt(start);
+			int checksum = journal.getInt(start+4);
+			if (length<4 || position+HEADER_SIZE+length>size)
+				break;
+			if (journal.capacity()<HEADER_SIZE+length)
+				journal = ByteBuffer.allocate(HEADER_SIZE+length).put(journal).flip();
+			if (!fill(journal, HEADER_SIZE+length))
+				break;
+			start = journal.position();
+			check.reset();
+			check.update(journal.array(), start+HEADER_SIZE, length);
+			if ((int) check.getValue()!=checksum)
+				break;
+
+			journal.position(start+HEADER_SIZE);
+			names.add(readString(journal));
+			values.add(readString(journal));
+			journal.position(start+HEADER_SIZE+length);
+			position += HEADER_SIZE+length;
+		}
+
+		for (int i=names.size()-1; i>=0; i--) {
+			if (values.get(i)==null)
+				store.remove(names.get(i));
+			else
+				store.put(names.get(i), values.get(i));
+		}
+		clear();
+		return names.size();
+	}
+
+	/**
+	 * journal the value a name had before a write in a transaction
+	 * @param name
+	 * @param oldValue - null if it wasn't set
+	 */
+	void record(String name, String oldValue) {
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		byte[] valueBytes = oldValue==null ? null : oldValue.getBytes(StandardCharsets.UTF_8);
+		int length = 8 + nameBytes.length + (valueBytes==null ? 0 : valueBytes.length);
+		if (record.capacity()<HEADER_SIZE+length)
+			record = ByteBuffer.allocate(Math.max(record.capacity()*2, HEADER_SIZE+length));
+
+		record.clear();
+		record.position(HEADER_SIZE);
+		record.putInt(nameBytes.length).put(nameBytes);
+		if (valueBytes==null)
+			record.putInt(-1);
+		else
+			record.putInt(valueBytes.length).put(valueBytes);
+		crc.reset();
+		crc.update(record.array(), HEADER_SIZE, length);
+		record.putInt(0, length).putInt(4, (int) crc.getValue());
+		record.flip();
+
+		try {
+			while (record.hasRemaining())
+				size += channel.write(record, size);
+			if (sync)
+				channel.force(false);
+		} catch (IOException e) {
+			throw new UncheckedIOException("unable to write to the undo journal", e);
+		}
+	}
+
+	/**
+	 * the last transaction has been committed or rolled back
+	 */
+	void clear() {
+		if (size==0)
+			return;
+		try {
+			channel.truncate(0);
+			if (sync)
+				channel.force(false);
+			size = 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException("unable to clear the undo journal", e);
+		}
+	}
+
+	/**
+	 * read from the file until a buffer holds at least the bytes asked for
+	 * @return false if the file ends first
+	 */
+	private boolean fill(ByteBuffer buffer, int bytes) throws IOException {
+		while (buffer.remaining()<bytes) {
+			buffer.compact();
+			int read = channel.read(buffer);
+			buffer.flip();
+			if (read<0)
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = buffer.getInt();
+		if (length<0)
+			return null;
+		String s = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position()+length);
+		return s;
+	}
+}
@@ -0,0 +1,221 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.Arrays;
+
+/**
+ * the undo records of all the outstanding (nested) transactions
+ *
+ * records are kept in parallel arrays (name, pre-image, current value) with the transactions stacked on
+ * top of each other, so logging a write doesn't allocate anything (other than the occasional doubling
+ * of the arrays).  Only one record is kept per name per transaction: an open addressing index maps each
+ * name to its most recent record so repeated writes to a name just update that record's new value.
+ *
+ * @author ronbuchanan
+ */
+final class UndoLog {
+	private static final int INITIAL_CAPACITY = 16;
+
+	//the records, one per name per transaction
+	private String[] names = new String[INITIAL_CAPACITY];
+	private String[] oldValues = new String[INITIAL_CAPACITY];
+	private String[] newValues = new String[INITIAL_CAPACITY];
+	private int[] hashes = new int[INITIAL_CAPACITY];
+	private int[] previous = new int[INITIAL_CAPACITY]; //record for the same name in an enclosing transaction (-1 if none)
+	private int size = 0;
+
+	//index of the first record of each transaction
+	private int[] levelStarts = new int[INITIAL_CAPACITY];
+	private int depth = 0;
+
+	//open addressing (linear probing) index of name => most recent record+1 (0 is an empty slot)
+	private int[] slots = new int[INITIAL_CAPACITY*2];
+	private int occupied = 0;
+
+	/**
+	 * the number of outstanding transactions
+	 */
+	int depth() {
+		return depth;
+	}
+
+	/**
+	 * the total number of records across all the outstanding transactions
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * index of the first record of a transaction
+	 * @param level - 1 is the outermost transaction
+	 */
+	int levelStart(int level) {
+		return levelStarts[level-1];
+	}
+
+	String name(int record) {
+		return names[record];
+	}
+
+	String oldValue(int record) {
+		return oldValues[record];
+	}
+
+	String newValue(int record) {
+		return newValues[record];
+	}
+
+	/**
+	 * whether a name has a record in any of the outstanding transactions
+	 */
+	boolean contains(String name) {
+		int hash = hash(name);
+		int mask = slots.length-1;
+		for (int pos = hash & mask, slot; (slot = slots[pos])!=0; pos = (pos+1) & mask) {
+			int record = slot-1;
+			if (hashes[record]==hash && names[record].equals(name))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * start a new transaction
+	 */
+	void begin() {
+		if (depth==levelStarts.length)
+			levelStarts = Arrays.copyOf(levelStarts, depth*2);
+		levelStarts[depth++] = size;
+	}
+
+	/**
+	 * record a write in the current transaction - the first write to a name keeps its pre-image,
+	 * later writes to the same name only update the new value
+	 * @param name
+	 * @param oldValue
+	 * @param newValue
+	 */
+	void record(String name, String oldValue, String newValue) {
+		int hash = hash(name);
+		int mask = slots.length-1;
+		int pos = hash & mask;
+		int found = -1;
+		for (int slot; (slot = slots[pos])!=0; pos = (pos+1) & mask) {
+			int record = slot-1;
+			if (hashes[record]==hash && names[record].equals(name)) {
+				found = record;
+				break;
+			}
+		}
+
+		if (found>=levelStarts[depth-1]) {
+			newValues[found] = newValue; //already logged in this transaction
+			return;
+		}
+
+		if (size==names.length)
+			grow();
+		names[size] = name;
+		oldValues[size] = oldValue;
+		newValues[size] = newValue;
+		hashes[size] = hash;
+		previous[size] = found;
+		slots[pos] = ++size;
+
+		if (found<0 && ++occupied*2>slots.length)
+			rehash(slots.length*2);
+	}
+
+	/**
+	 * discard the records of the current transaction (the caller has already applied them)
+	 */
+	void end() {
+		int start = levelStarts[--depth];
+		int mask = slots.length-1;
+		while (size>start) {
+			int record = --size;
+
+			//the record is the most recent one for its name, so its slot points right at it
+			int pos = hashes[record] & mask;
+			while (slots[pos]!=record+1)
+				pos = (pos+1) & mask;
+
+			if (previous[record]>=0) {
+				slots[pos] = previous[record]+1;
+			} else {
+				removeSlot(pos, mask);
+				occupied--;
+			}
+
+			names[record] = null;
+			oldValues[record] = null;
+			newValues[record] = null;
+		}
+	}
+
+	/**
+	 * discard everything (releasing the space if a big transaction has grown the arrays)
+	 */
+	void clear() {
+		if (names.length>INITIAL_CAPACITY*64) {
+			names = new String[INITIAL_CAPACITY];
+			oldValues = new String[INITIAL_CAPACITY];
+			newValues = new String[INITIAL_CAPACITY];
+			hashes = new int[INITIAL_CAPACITY];
+			previous = new int[INITIAL_CAPACITY];
+			slots = new int[INITIAL_CAPACITY*2];
+		} else {
+			Arrays.fill(names, 0, size, null);
+			Arrays.fill(oldValues, 0, size, null);
+			Arrays.fill(newValues, 0, size, null);
+			Arrays.fill(slots, 0);
+		}
+		size = 0;
+		depth = 0;
+		occupied = 0;
+	}
+
+	private void grow() {
+		int capacity = names.length*2;
+		names = Arrays.copyOf(names, capacity);
+		oldValues = Arrays.copyOf(oldValues, capacity);
+		newValues = Arrays.copyOf(newValues, capacity);
+		hashes = Arrays.copyOf(hashes, capacity);
+		previous = Arrays.copyOf(previous, capacity);
+	}
+
+	/**
+	 * rebuild the index - later records overwrite earlier ones for the same name
+	 */
+	private void rehash(int capacity) {
+		slots = new int[capacity];
+		int mask = capacity-1;
+		for (int record=0; record<size; record++) {
+			int pos = hashes[record] & mask;
+			for (int slot; (slot = slots[pos])!=0 && !names[slot-1].equals(names[record]); )
+				pos = (pos+1) & mask;
+			slots[pos] = record+1;
+		}
+	}
+
+	/**
+	 * backward shift deletion - pulls later entries of the probe sequence into the hole so lookups
+	 * never stop early (no tombstones needed)
+	 */
+	private void removeSlot(int hole, int mask) {
+		for (int pos = (hole+1) & mask; slots[pos]!=0; pos = (pos+1) & mask) {
+			int home = hashes[slots[pos]-1] & mask;
+			boolean movable = hole<=pos ? (home<=hole || home>pos) : (home<=hole && home>pos);
+			if (movable) {
+				slots[hole] = slots[pos];
+				hole = pos;
+			}
+		}
+		slots[hole] = 0;
+	}
+
+	private static int hash(String name) {
+		int h = name.hashCode();
+		return h ^ (h >>> 16);
+	}
+}
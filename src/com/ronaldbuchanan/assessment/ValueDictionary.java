@@ -0,0 +1,111 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+/**
+ * the distinct values, each with a small int id and the number of names holding it
+ *
+ * DictionaryKeyStore keeps just the ids, so a value repeated across a million names is a single String
+ * (rather than a copy per SET) and 4 bytes per name.  An id goes back on the free list once nothing holds
+ * its value, so the dictionary stays as small as the number of distinct values in use.
+ *
+ * the store maintains the counts as it's written, so as a ValueIndex add() and remove() have nothing to do
+ * and COUNT is a lookup of the id and then of the count
+ *
+ * @author ronbuchanan
+ */
+final class ValueDictionary implements ValueIndex {
+	/*
+	 * Principal data structures:
+	 *
+	 * 		ids - value => id
+	 *
+	 * 		values, counts - by id, the value and the number of names holding it (0 for a free id)
+	 *
+	 * 		free - the ids no longer in use, reused before new ones are handed out
+	 */
+
+	private final HashMap<String,Integer> ids = new HashMap<>();
+	private String[] values = new String[16];
+	private int[] counts = new int[16];
+	private int[] free = new int[16];
+	private int freeCount = 0;
+	private int nextId = 0;
+
+	/**
+	 * one more name holds a value
+	 * @param value
+	 * @return its id
+	 */
+	int acquire(String value) {
+		Integer id = ids.get(value);
+		if (id!=null) {
+			counts[id]++;
+			return id;
+		}
+
+		int newId = freeCount>0 ? free[--freeCount] : nextId++;
+		if (newId==values.length) {
+			values = Arrays.copyOf(values, newId*2);
+			counts = Arrays.copyOf(counts, newId*2);
+		}
+		values[newId] = value;
+		counts[newId] = 1;
+		ids.put(value, newId);
+		return newId;
+	}
+
+	/**
+	 * one less name holds a value, which is dropped when none do
+	 * @param id
+	 */
+	void release(int id) {
+		if (--counts[id]>0)
+			return;
+
+		ids.remove(values[id]);
+		values[id] = null;
+		if (freeCount==free.length)
+			free = Arrays.copyOf(free, freeCount*2);
+		free[freeCount++] = id;
+	}
+
+	/**
+	 * @param id
+	 * @return the value with an id
+	 */
+	String value(int id) {
+		return values[id];
+	}
+
+	@Override
+	public void add(String value, String name) {
+	}
+
+	@Override
+	public void remove(String value, String name) {
+	}
+
+	@Override
+	public int count(String value) {
+		Integer id = ids.get(value);
+		return id==null ? 0 : counts[id];
+	}
+
+	@Override
+	public int size() {
+		return ids.size();
+	}
+
+	@Override
+	public Iterable<String> values() {
+		return ids.keySet();
+	}
+
+	@Override
+	public Iterator<String> names(String value) {
+		throw new UnsupportedOperationException("KEYS_WITH requires the inverted value index (start with -index)");
+	}
+}
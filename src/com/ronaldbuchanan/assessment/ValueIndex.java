@@ -0,0 +1,49 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.Iterator;
+
+/**
+ * the index over the values in the database, maintained as names are set, deleted and rolled back
+ *
+ * every implementation keeps the occurrence counts (so COUNT is O(1)), and values that are no longer
+ * in use are dropped right away - otherwise high cardinality values (timestamps, uuids) would pile up forever
+ *
+ * @author ronbuchanan
+ */
+interface ValueIndex {
+	/**
+	 * a name now holds the value
+	 * @param value
+	 * @param name
+	 */
+	void add(String value, String name);
+
+	/**
+	 * a name no longer holds the value
+	 * @param value
+	 * @param name
+	 */
+	void remove(String value, String name);
+
+	/**
+	 * get the number of names holding a value
+	 * @param value
+	 */
+	int count(String value);
+
+	/**
+	 * get the number of distinct values in use
+	 */
+	int size();
+
+	/**
+	 * the distinct values in use
+	 */
+	Iterable<String> values();
+
+	/**
+	 * the names holding a value, only supported by an index that tracks them
+	 * @param value
+	 */
+	Iterator<String> names(String value);
+}
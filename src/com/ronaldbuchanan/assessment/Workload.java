@@ -0,0 +1,204 @@
+package com.ronaldbuchanan.assessment;
+
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * YCSB style workloads, written out in the command language (so a trace can be saved, edited and replayed
+ * by WorkloadDriver, or just piped into ToyInMemDB)
+ *
+ * the load phase sets every record, the run phase is the workload's mix of operations:
+ *
+ * 		a - update heavy: 50% GET, 50% SET
+ * 		b - read mostly: 95% GET, 5% SET
+ * 		c - read only: 100% GET
+ * 		d - read latest: 95% GET, 5% inserts, the newest records the most popular
+ * 		e - short ranges: 95% SCAN of 1 to 100 records, 5% inserts (SCAN needs -store radix)
+ * 		f - read-modify-write: 50% GET, 50% GET then SET of the same record
+ * 		t - transaction heavy: a's mix, with every operation in a transaction
+ *
+ * records are picked with a zipfian distribution (a few very hot, a long tail), scattered over the key
+ * space by hashing so the hot ones aren't all neighbours - except in d, where the newest are the hottest.
+ * Names are zero padded ("user0000000042") so they sort in insertion order, which is what lets e's SCANs
+ * cover consecutive records.
+ *
+ * any of them can also put a percentage of their operations in transactions: 1 to 10 operations,
+ * a quarter of them with a nested level that is rolled back, and one in ten rolled back as a whole
+ *
+ * the generated trace only depends on the parameters and the seed
+ *
+ * @author ronbuchanan
+ */
+final class Workload {
+	private static final double THETA = 0.99;
+
+	private final char kind;
+	private final int records;
+	private final int values;
+	private final int transactionPercent;
+	private final Random random;
+
+	private double read;
+	private double update;
+	private double insert;
+	private double scan;
+
+	private int inserted;
+	private final Zipfian zipfian;
+
+	/**
+	 * @param kind - a to f, or t
+	 * @param records - the number of records loaded (inserts add more)
+	 * @param values - the number of distinct values written
+	 * @param transactionPercent - the percentage of operations that begin a transaction (100 for t)
+	 * @param seed
+	 */
+	Workload(char kind, int records, int values, int transactionPercent, long seed) {
+		if (records<1)
+			throw new IllegalArgumentException("a workload needs at least 1 record");
+		this.kind = Character.toLowerCase(kind);
+		this.records = records;
+		this.values = values;
+		this.random = new Random(seed);
+
+		switch (this.kind) {
+		case 'a':	read = 0.5; update = 0.5; break;
+		case 'b':	read = 0.95; update = 0.05; break;
+		case 'c':	read = 1; break;
+		case 'd':	read = 0.95; insert = 0.05; break;
+		case 'e':	scan = 0.95; insert = 0.05; break;
+		case 'f':	read = 0.5; break; //the rest are read-modify-writes
+		case 't':	read = 0.5; update = 0.5; transactionPercent = 100; break;
+		default:	throw new IllegalArgumentException("unknown workload: " + kind + " (expected a, b, c, d, e, f or t)");
+		}
+		this.transactionPercent = transactionPercent;
+		this.inserted = records;
+		this.zipfian = new Zipfian(records);
+	}
+
+	/**
+	 * the SETs that load the records
+	 * @param out
+	 */
+	void load(Consumer<String> out) {
+		for (int i=0; i<records; i++)
+			out.accept("SET " + name(i) + " " + value());
+	}
+
+	/**
+	 * the run phase
+	 * @param operations - the number of operations (BEGIN, ROLLBACK and COMMIT aren't counted)
+	 * @param out
+	 */
+	void run(long operations, Consumer<String> out) {
+		long done = 0;
+		while (done<operations) {
+			if (transactionPercent==0 || random.nextInt(100)>=transactionPercent) {
+				operation(out);
+				done++;
+				continue;
+			}
+
+			int size = (int) Math.min(1+random.nextInt(10), operations-done);
+			int nested = size>1 && random.nextInt(4)==0 ? size/2 : -1;
+			out.accept("BEGIN");
+			for (int i=0; i<size; i++) {
+				if (i==nested)
+					out.accept("BEGIN");
+				operation(out);
+			}
+			if (nested>=0)
+				out.accept("ROLLBACK");
+			out.accept(random.nextInt(10)==0 ? "ROLLBACK" : "COMMIT");
+			done += size;
+		}
+	}
+
+	private void operation(Consumer<String> out) {
+		double op = random.nextDouble();
+		if (op<read) {
+			out.accept("GET " + name(pick()));
+		} else if (op<read+update) {
+			out.accept("SET " + name(pick()) + " " + value());
+		} else if (op<read+update+insert) {
+			zipfian.grow(inserted+1);
+			out.accept("SET " + name(inserted++) + " " + value());
+		} else if (op<read+update+insert+scan) {
+			int start = pick();
+			out.accept("SCAN " + name(start) + " " + name(start+1+random.nextInt(100)));
+		} else {
+			String name = name(pick());
+			out.accept("GET " + name);
+			out.accept("SET " + name + " " + value());
+		}
+	}
+
+	/**
+	 * a record - zipfian, scattered over the records, or the newest first for d
+	 */
+	private int pick() {
+		long rank = zipfian.next(random);
+		if (kind=='d')
+			return (int) (inserted-1-rank);
+		return (int) (scramble(rank) % inserted);
+	}
+
+	private String value() {
+		return "value" + random.nextInt(values);
+	}
+
+	static String name(int record) {
+		String number = Integer.toString(record);
+		return "user" + "0000000000".substring(number.length()) + number;
+	}
+
+	/**
+	 * FNV-1a of the rank, so the popular records are spread over the key space
+	 */
+	private static long scramble(long rank) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i=0; i<8; i++) {
+			hash ^= rank & 0xff;
+			hash *= 0x100000001b3L;
+			rank >>>= 8;
+		}
+		return hash & Long.MAX_VALUE;
+	}
+
+	/**
+	 * Gray et al's zipfian generator (as used by YCSB) - rank 0 is the most popular, and the item count can
+	 * grow without starting over
+	 */
+	static final class Zipfian {
+		private final double zeta2 = zeta(0, 2, 0);
+		private final double alpha = 1/(1-THETA);
+		private long items = 0;
+		private double zetan = 0;
+		private double eta;
+
+		Zipfian(long items) {
+			grow(items);
+		}
+
+		void grow(long newItems) {
+			zetan = zeta(items, newItems, zetan);
+			items = newItems;
+			eta = (1-Math.pow(2.0/items, 1-THETA)) / (1-zeta2/zetan);
+		}
+
+		long next(Random random) {
+			double u = random.nextDouble();
+			double uz = u*zetan;
+			long rank = uz<1 ? 0
+					: uz<1+Math.pow(0.5, THETA) ? 1
+					: (long) (items*Math.pow(eta*u-eta+1, alpha));
+			return Math.min(rank, items-1);
+		}
+
+		private static double zeta(long from, long to, double sum) {
+			for (long i=from; i<to; i++)
+				sum += 1/Math.pow(i+1, THETA);
+			return sum;
+		}
+	}
+}
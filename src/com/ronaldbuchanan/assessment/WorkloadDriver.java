@@ -0,0 +1,180 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * replays a trace in the command language (a generated Workload or a recorded script) straight against an
+ * InMemDB - no terminal and no output - timing each command, and reports the throughput and the latency
+ * percentiles of each verb
+ *
+ * the trace is parsed before anything runs, so the timings are the database's own (plus a couple of
+ * System.nanoTime() calls, 20ns or so).  KEYS_WITH, SCAN and PREFIX are timed until their names have all
+ * been read.  A command the engine refuses (SCAN without an ordered store, a transaction conflict, a SET
+ * over the memory limit) is counted as an error rather than stopping the run.
+ *
+ * @author ronbuchanan
+ */
+final class WorkloadDriver {
+	private static final CommandInterpreter.Verb[] VERBS = CommandInterpreter.Verb.values();
+
+	private final CommandTokenizer tokenizer = new CommandTokenizer();
+	private CommandInterpreter.Verb[] verbs = new CommandInterpreter.Verb[1024];
+	private String[] firsts = new String[1024];
+	private String[] seconds = new String[1024];
+	private int size = 0;
+
+	private final LatencyHistogram[] latencies = new LatencyHistogram[VERBS.length];
+	private final long[] errors = new long[VERBS.length];
+	private final String[] firstErrors = new String[VERBS.length];
+	private long elapsed;
+
+	WorkloadDriver() {
+		for (int i=0; i<latencies.length; i++)
+			latencies[i] = new LatencyHistogram();
+	}
+
+	/**
+	 * parse a trace, up to its END
+	 * @param in
+	 */
+	void read(BufferedReader in) throws IOException {
+		String line;
+		while ((line = in.readLine())!=null && add(line))
+			;
+	}
+
+	/**
+	 * parse a command onto the end of the trace
+	 * @param line
+	 * @return false for END
+	 */
+	boolean add(String line) {
+		if (tokenizer.reset(line)==0)
+			return true;
+		CommandInterpreter.Verb verb = tokenizer.verb(VERBS);
+		if (verb==null)
+			throw new IllegalArgumentException("command " + (size+1) + ": unrecognized function: " + tokenizer.token(0));
+
+		int arguments;
+		switch (verb) {
+		case SET:
+		case SCAN:
+			arguments = 2;
+			break;
+		case GET:
+		case DELETE:
+		case COUNT:
+		case KEYS_WITH:
+		case PREFIX:
+			arguments = 1;
+			break;
+		case BEGIN:
+		case ROLLBACK:
+		case COMMIT:
+			arguments = 0;
+			break;
+		case END:
+			return false;
+		default:
+			throw new IllegalArgumentException("command " + (size+1) + ": " + verb + " can't be replayed");
+		}
+		if (tokenizer.count()-1!=arguments)
+			throw new IllegalArgumentException("command " + (size+1) + ": " + verb + " accepts " + arguments + " parameters");
+
+		if (size==verbs.length) {
+			verbs = Arrays.copyOf(verbs, size*2);
+			firsts = Arrays.copyOf(firsts, size*2);
+			seconds = Arrays.copyOf(seconds, size*2);
+		}
+		verbs[size] = verb;
+		firsts[size] = arguments>0 ? tokenizer.token(1) : null;
+		seconds[size] = arguments>1 ? tokenizer.token(2) : null;
+		size++;
+		return true;
+	}
+
+	/**
+	 * @return the number of commands in the trace
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * run the trace
+	 * @param db
+	 * @param untimed - the number of commands at the start (a load phase, say) to run without timing them
+	 */
+	void run(InMemDB db, int untimed) {
+		for (int i=0; i<Math.min(untimed, size); i++)
+			execute(db, i);
+
+		long start = System.nanoTime();
+		for (int i=untimed; i<size; i++) {
+			long begin = System.nanoTime();
+			boolean ok = execute(db, i);
+			long end = System.nanoTime();
+			int verb = verbs[i].ordinal();
+			if (ok)
+				latencies[verb].record(end-begin);
+			else
+				errors[verb]++;
+		}
+		elapsed += System.nanoTime()-start;
+	}
+
+	/**
+	 * @return false if the engine refused the command
+	 */
+	private boolean execute(InMemDB db, int i) {
+		try {
+			switch (verbs[i]) {
+			case SET:		db.set(firsts[i], seconds[i]); break;
+			case GET:		db.get(firsts[i]); break;
+			case DELETE:	db.delete(firsts[i]); break;
+			case COUNT:		db.count(firsts[i]); break;
+			case KEYS_WITH:	drain(db.keysWith(firsts[i])); break;
+			case SCAN:		drain(db.scan(firsts[i], seconds[i])); break;
+			case PREFIX:	drain(db.prefix(firsts[i])); break;
+			case BEGIN:		db.begin(); break;
+			case ROLLBACK:	db.rollback(); break;
+			case COMMIT:	db.commit(); break;
+			default:		throw new IllegalStateException(verbs[i].toString());
+			}
+			return true;
+		} catch (UnsupportedOperationException | TransactionConflictException | MemoryLimitException e) {
+			int verb = verbs[i].ordinal();
+			if (firstErrors[verb]==null)
+				firstErrors[verb] = e.getMessage();
+			return false;
+		}
+	}
+
+	private static void drain(Iterator<String> names) {
+		while (names.hasNext())
+			names.next();
+	}
+
+	/**
+	 * the throughput, and the latencies of each verb in microseconds
+	 * @param out
+	 */
+	void report(PrintStream out) {
+		long commands = 0;
+		for (int i=0; i<VERBS.length; i++)
+			commands += latencies[i].count() + errors[i];
+		double seconds = elapsed/1e9;
+		out.printf("%d commands in %.3f seconds: %.0f per second%n", commands, seconds, seconds==0 ? 0 : commands/seconds);
+		out.println(LatencyHistogram.header("microseconds"));
+		for (int i=0; i<VERBS.length; i++)
+			if (latencies[i].count()>0)
+				out.println(latencies[i].summary(VERBS[i].toString(), 1e3));
+		for (int i=0; i<VERBS.length; i++)
+			if (errors[i]>0)
+				out.printf("%s failed %d times: %s%n", VERBS[i], errors[i], firstErrors[i]);
+	}
+}
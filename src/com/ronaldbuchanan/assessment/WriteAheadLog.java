@@ -0,0 +1,468 @@
+package com.ronaldbuchanan.assessment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * append-only log of committed writes
+ *
+ * each commit is written as one checksummed group, so a commit is either replayed completely or not at all:
+ * 		[int payload length][int crc32 of payload][payload]
+ * the payload is a sequence of operations:
+ * 		SET:	[byte 1][varint name length][name utf-8][varint value length][value utf-8]
+ * 		DELETE:	[byte 2][varint name length][name utf-8]
+ *
+ * commits are made durable with group commit - the first committer to get to the disk writes and fsyncs
+ * everything appended so far, and anyone who appended while it was busy finds their commit already covered
+ * (or becomes the next leader and takes the whole accumulated batch with it).  With a flush interval the
+ * committers don't wait at all and a background thread fsyncs on the interval instead (bounded data loss
+ * on a crash, in exchange for not paying for an fsync per commit).
+ *
+ * the log is kept in segments, files named after the log plus the position their first commit starts at
+ * (wal.0000000000000000000, wal.0000000000001048576, ...), so positions carry on from one segment to the
+ * next.  A snapshot starts a new segment at the position it is taken from, and once it has been written the
+ * segments before it are deleted - so the log only ever holds what was committed since the last snapshot.
+ *
+ * @author ronbuchanan
+ */
+public class WriteAheadLog implements Closeable {
+	static final byte SET = 1;
+	static final byte DELETE = 2;
+
+	private static final int HEADER_SIZE = 8;
+	private static final int POSITION_DIGITS = 19;
+
+	private final Path path;
+	private FileChannel channel; //the current segment (guarded by flushLock once replayed)
+	private final long flushIntervalMillis;
+	private final Thread flusher;
+
+	//appended but not yet written - swapped with spare by the flushing thread (guarded by this)
+	private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+	private ByteBuffer spare = ByteBuffer.allocate(1 << 16);
+	private long appended = 0;
+	private long start; //position of the current segment
+	private long end; //position just past the last commit appended
+	private final CRC32 crc = new CRC32();
+
+	//the number of commits known to be on disk (guarded by flushLock)
+	private final Object flushLock = new Object();
+	private volatile long durable = 0;
+	private volatile boolean closed = false;
+
+	/**
+	 * @param path - the log, its segments are kept next to it
+	 * @param flushIntervalMillis - 0 to fsync on every commit, otherwise how often a background thread does it
+	 */
+	public WriteAheadLog(Path path, long flushIntervalMillis) throws IOException {
+		this.path = path;
+		this.flushIntervalMillis = flushIntervalMillis;
+
+		//a log written before there were segments is the first one
+		List<Long> segments = segments();
+		if (segments.isEmpty() && Files.isRegularFile(path))
+			Files.move(path, segment(0));
+
+		segments = segments();
+		start = segments.isEmpty() ? 0 : segments.get(segments.size()-1);
+		channel = FileChannel.open(segment(start), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		end = start+channel.size();
+		channel.position(channel.size());
+
+		if (flushIntervalMillis>0) {
+			flusher = new Thread(this::flushPeriodically, "wal-flusher");
+			flusher.setDaemon(true);
+			flusher.start();
+		} else {
+			flusher = null;
+		}
+	}
+
+	/**
+	 * replay every complete commit into a database (which must not be logging to this WAL) - a torn commit
+	 * at the end (crash mid-write) is cut off so new commits follow the last good one.  Must be done before
+	 * anything new is committed.
+	 * @param db
+	 * @param from - position to start from (see position()), the whole log is replayed if it is past the end
+	 * @return the number of commits replayed
+	 */
+	public long replay(InMemDB db, long from) throws IOException {
+		List<Long> segments = segments();
+		long position = from<=end ? from : segments.get(0);
+		if (position<segments.get(0))
+			throw new IOException("the write ahead log starts at " + segments.get(0) + ", after " + position 
+					+ " - the segments in between have been deleted");
+
+		long commits = 0;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		CRC32 check = new CRC32();
+		for (int i=0; i<segments.size(); i++) {
+			long segmentStart = segments.get(i);
+			if (position<segmentStart)
+				throw new IOException("the write ahead log is missing the commits from " + position + " to " + segmentStart);
+			FileChannel segment = segmentStart==start ? channel 
+					: FileChannel.open(segment(segmentStart), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			long size = segmentStart+segment.size();
+			while (position+HEADER_SIZE<=size) {
+				header.clear();
+				readFully(segment, header, position-segmentStart);
+				int length = header.getInt(0);
+				int checksum = header.getInt(4);
+				if (length<0 || position+HEADER_SIZE+length>size)
+					break;
+
+				ByteBuffer payload = ByteBuffer.allocate(length);
+				readFully(segment, payload, position-segmentStart+HEADER_SIZE);
+				check.reset();
+				check.update(payload.array(), 0, length);
+				if ((int) check.getValue()!=checksum)
+					break;
+
+				payload.flip();
+				while (payload.hasRemaining()) {
+					byte op = payload.get();
+					String name = readString(payload);
+					if (op==SET)
+						db.set(name, readString(payload));
+					else
+						db.delete(name);
+				}
+
+				commits++;
+				position += HEADER_SIZE+length;
+			}
+
+			if (position<size) {
+				//torn - cut it off here, along with anything after it, and carry on from the last good commit
+				segment.truncate(position-segmentStart);
+				if (segment!=channel) {
+					channel.close();
+					for (int later=i+1; later<segments.size(); later++)
+						Files.deleteIfExists(segment(segments.get(later)));
+					channel = segment;
+					synchronized (this) {
+						start = segmentStart;
+					}
+				}
+				break;
+			}
+			if (segment!=channel)
+				segment.close();
+			position = Math.max(position, size);
+		}
+
+		channel.position(position-start);
+		synchronized (this) {
+			end = position;
+		}
+		return commits;
+	}
+
+	/**
+	 * append a commit, returning once it is durable (or right away when flushing on an interval)
+	 * @param batch
+	 */
+	public void commit(Batch batch) throws IOException {
+		if (batch.length==0)
+			return;
+
+		long commit;
+		synchronized (this) {
+			if (closed)
+				throw new IOException("write ahead log is closed");
+			if (pending.remaining()<HEADER_SIZE+batch.length)
+				pending = grow(pending, HEADER_SIZE+batch.length);
+			crc.reset();
+			crc.update(batch.bytes, 0, batch.length);
+			pending.putInt(batch.length).putInt((int) crc.getValue()).put(batch.bytes, 0, batch.length);
+			commit = ++appended;
+			end += HEADER_SIZE+batch.length;
+		}
+
+		if (flushIntervalMillis==0)
+			flush(commit);
+	}
+
+	/**
+	 * the position just past the last commit appended - replaying from here skips everything before it
+	 */
+	public synchronized long position() {
+		return end;
+	}
+
+	/**
+	 * make what's been appended durable and start a new segment, so the ones before it can be deleted once a
+	 * snapshot covers them
+	 * @return the position the new segment starts at (the current one, if nothing has been appended to it)
+	 */
+	public long rotate() throws IOException {
+		synchronized (flushLock) {
+			long commit;
+			synchronized (this) {
+				commit = appended;
+			}
+			flush(commit);
+
+			//whatever has been appended since is still pending, and goes to the new segment
+			synchronized (this) {
+				if (closed)
+					throw new IOException("write ahead log is closed");
+				long next = end-pending.position();
+				if (next==start)
+					return next;
+				FileChannel segment = FileChannel.open(segment(next), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				channel.close();
+				channel = segment;
+				start = next;
+				return next;
+			}
+		}
+	}
+
+	/**
+	 * delete the segments before a position, once a snapshot taken from it has been written
+	 * @param position - from rotate(), so no segment straddles it
+	 */
+	public void deleteBefore(long position) throws IOException {
+		long current;
+		synchronized (this) {
+			current = start;
+		}
+		for (long segment : segments())
+			if (segment<position && segment<current)
+				Files.deleteIfExists(segment(segment));
+	}
+
+	/**
+	 * the file of the segment starting at a position
+	 */
+	private Path segment(long position) {
+		String digits = Long.toString(position);
+		StringBuilder name = new StringBuilder(path.getFileName().toString()).append('.');
+		for (int i=digits.length(); i<POSITION_DIGITS; i++)
+			name.append('0');
+		return path.resolveSibling(name.append(digits).toString());
+	}
+
+	/**
+	 * the positions of the segments on disk, in order
+	 */
+	private List<Long> segments() throws IOException {
+		List<Long> segments = new ArrayList<>();
+		String prefix = path.getFileName().toString() + ".";
+		Path dir = path.toAbsolutePath().getParent();
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, file -> file.getFileName().toString().startsWith(prefix))) {
+			for (Path file : files) {
+				String suffix = file.getFileName().toString().substring(prefix.length());
+				if (suffix.length()==POSITION_DIGITS && suffix.chars().allMatch(Character::isDigit))
+					segments.add(Long.parseLong(suffix));
+			}
+		}
+		Collections.sort(segments);
+		return segments;
+	}
+
+	/**
+	 * make everything appended up to (at least) a commit durable
+	 * @param commit
+	 */
+	private void flush(long commit) throws IOException {
+		synchronized (flushLock) {
+			if (durable>=commit)
+				return; //covered by somebody else's fsync while we were waiting
+
+			//take everything appended so far, committers keep appending to the other buffer meanwhile
+			ByteBuffer batch;
+			long upTo;
+			synchronized (this) {
+				batch = pending;
+				pending = spare;
+				upTo = appended;
+			}
+
+			boolean flushed = false;
+			try {
+				batch.flip();
+				while (batch.hasRemaining())
+					channel.write(batch);
+				channel.force(false);
+				durable = upTo;
+				flushed = true;
+			} finally {
+				synchronized (this) {
+					if (flushed) {
+						batch.clear();
+						spare = batch;
+					} else {
+						//put back whatever didn't get written, ahead of what has been appended since, so the
+						//next flush picks it up (anything written but not fsynced is covered by its fsync)
+						batch.compact();
+						pending.flip();
+						if (batch.remaining()<pending.remaining())
+							batch = grow(batch, pending.remaining());
+						batch.put(pending);
+						pending.clear();
+						spare = pending;
+						pending = batch;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * fsync on the interval until closed - close() wakes it rather than interrupting it, since an interrupt
+	 * landing in the middle of a write or fsync closes the channel
+	 */
+	private void flushPeriodically() {
+		for (;;) {
+			long commit;
+			synchronized (this) {
+				if (!closed) {
+					try {
+						wait(flushIntervalMillis);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+				if (closed)
+					return; //close() flushes the rest
+				commit = appended;
+			}
+			try {
+				flush(commit);
+			} catch (IOException e) {
+				System.err.println("write ahead log flush failed: " + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * flush whatever is outstanding and close the file
+	 */
+	@Override
+	public void close() throws IOException {
+		long commit;
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			commit = appended;
+			notifyAll();
+		}
+		//wait for the flusher to finish whatever it's writing (an interrupt now would close the channel under it)
+		boolean interrupted = false;
+		while (flusher!=null && flusher.isAlive()) {
+			try {
+				flusher.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		try {
+			flush(commit);
+			channel.close();
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int read = channel.read(buffer, position+buffer.position());
+			if (read<0)
+				throw new IOException("unexpected end of write ahead log");
+		}
+	}
+
+	private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+		ByteBuffer bigger = ByteBuffer.allocate(Math.max(buffer.capacity()*2, buffer.position()+needed));
+		buffer.flip();
+		return bigger.put(buffer);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		int length = 0;
+		for (int shift = 0; ; shift += 7) {
+			byte b = buffer.get();
+			length |= (b & 0x7f) << shift;
+			if (b>=0)
+				break;
+		}
+		String s = new String(buffer.array(), buffer.arrayOffset()+buffer.position(), length, StandardCharsets.UTF_8);
+		buffer.position(buffer.position()+length);
+		return s;
+	}
+
+	/**
+	 * the encoded writes of one (possibly nested) transaction, built up until it commits
+	 *
+	 * nested transactions are just marks in the buffer, rolling one back truncates to its mark
+	 */
+	public static final class Batch {
+		private byte[] bytes = new byte[256];
+		private int length = 0;
+
+		void set(String name, String value) {
+			put(SET);
+			putString(name);
+			putString(value);
+		}
+
+		void delete(String name) {
+			put(DELETE);
+			putString(name);
+		}
+
+		/**
+		 * the current end of the batch, to truncate back to
+		 */
+		int mark() {
+			return length;
+		}
+
+		void truncate(int mark) {
+			length = mark;
+		}
+
+		int length() {
+			return length;
+		}
+
+		private void put(byte b) {
+			ensure(1);
+			bytes[length++] = b;
+		}
+
+		private void putString(String s) {
+			byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+			ensure(5+utf8.length);
+			int n = utf8.length;
+			while ((n & ~0x7f)!=0) {
+				bytes[length++] = (byte) ((n & 0x7f) | 0x80);
+				n >>>= 7;
+			}
+			bytes[length++] = (byte) n;
+			System.arraycopy(utf8, 0, bytes, length, utf8.length);
+			length += utf8.length;
+		}
+
+		private void ensure(int needed) {
+			if (length+needed>bytes.length)
+				bytes = Arrays.copyOf(bytes, Math.max(bytes.length*2, length+needed));
+		}
+	}
+}
@@ -0,0 +1,238 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * commands given in any case, with any spacing, and with the wrong number of arguments
+ *
+ * @author ronbuchanan
+ */
+class CommandInterpreterTest {
+	@Test
+	void verbsIgnoreCaseAndSpacing() {
+		StringWriter out = new StringWriter();
+		StringWriter err = new StringWriter();
+		CommandInterpreter interpreter = interpreter(out, err);
+		interpreter.execute("set a 10");
+		interpreter.execute("  SeT\tb   10 ");
+		interpreter.execute("get a");
+		interpreter.execute("\tCOUNT 10");
+		interpreter.execute("");
+		interpreter.execute("   ");
+		assertEquals(lines("10", "2"), out.toString());
+		assertEquals("", err.toString());
+	}
+
+	@Test
+	void wrongArgumentCountsAreRejected() {
+		StringWriter out = new StringWriter();
+		StringWriter err = new StringWriter();
+		CommandInterpreter interpreter = interpreter(out, err);
+		interpreter.execute("SET a");
+		interpreter.execute("SET a 1 2");
+		interpreter.execute("GET");
+		interpreter.execute("DELETE a b");
+		interpreter.execute("BEGIN now");
+		interpreter.execute("SET a b c d e f g h i j");
+		interpreter.execute("GET a");
+		assertEquals(lines(
+				"improper command: SET accepts 2 parameters: [name] and [value]",
+				"improper command: SET accepts 2 parameters: [name] and [value]",
+				"improper command: GET accepts 1 parameter: [name]",
+				"improper command: DELETE accepts 1 parameter: [name]",
+				"improper command: BEGIN does not accept any parameters",
+				"improper command: SET accepts 2 parameters: [name] and [value]"), err.toString());
+		assertEquals(lines("NULL"), out.toString());
+	}
+
+	@Test
+	void unknownVerbsAreReported() {
+		StringWriter out = new StringWriter();
+		CommandInterpreter interpreter = interpreter(out, new StringWriter());
+		interpreter.execute("SETX a 1");
+		interpreter.execute("DUMP");
+		assertEquals(lines("unrecognized function: SETX", "unrecognized function: DUMP"), out.toString());
+	}
+
+	/**
+	 * SCAN and PREFIX inside a transaction (over -store radix) list its uncommitted names until it's rolled back
+	 */
+	@Test
+	void scansFollowTheTransaction() {
+		StringWriter out = new StringWriter();
+		StringWriter err = new StringWriter();
+		CommandInterpreter interpreter = interpreter(new ToyInMemDB(false, new RadixKeyStore()), out, err);
+		interpreter.execute("SET b 1");
+		interpreter.execute("SET d 1");
+		interpreter.execute("BEGIN");
+		interpreter.execute("SET a 2");
+		interpreter.execute("SET c 2");
+		interpreter.execute("DELETE d");
+		interpreter.execute("SCAN a z");
+		interpreter.execute("PREFIX c");
+		interpreter.execute("ROLLBACK");
+		interpreter.execute("SCAN a z");
+		interpreter.execute("PREFIX c");
+		assertEquals(lines("a", "b", "c", "c", "b", "d"), out.toString());
+		assertEquals("", err.toString());
+	}
+
+	@Test
+	void scanArgumentsAreChecked() {
+		StringWriter out = new StringWriter();
+		StringWriter err = new StringWriter();
+		CommandInterpreter interpreter = interpreter(new ToyInMemDB(false, new RadixKeyStore()), out, err);
+		interpreter.execute("SCAN a");
+		interpreter.execute("SCAN a b c");
+		interpreter.execute("PREFIX");
+		interpreter.execute("PREFIX a b");
+		assertEquals(lines(
+				"improper command: SCAN accepts 2 parameters: [start] and [end]",
+				"improper command: SCAN accepts 2 parameters: [start] and [end]",
+				"improper command: PREFIX accepts 1 parameter: [prefix]",
+				"improper command: PREFIX accepts 1 parameter: [prefix]"), err.toString());
+		assertEquals("", out.toString());
+
+		//a hash store can't list names in order
+		interpreter = interpreter(out, err);
+		interpreter.execute("SCAN a z");
+		interpreter.execute("PREFIX a");
+		assertEquals(lines(
+				"SCAN and PREFIX require an ordered store (start with -store radix)",
+				"SCAN and PREFIX require an ordered store (start with -store radix)"), out.toString());
+	}
+
+	/**
+	 * STATS counts only the commands that got through (not bad input, unsupported or unknown ones, nor STATS
+	 * itself), and STATS RESET starts it over
+	 */
+	@Test
+	void statsCountSuccessfulCommands() {
+		StringWriter out = new StringWriter();
+		StringWriter err = new StringWriter();
+		CommandInterpreter interpreter = interpreter(out, err);
+		interpreter.execute("SET a 1");
+		interpreter.execute("SET b 1");
+		interpreter.execute("GET a");
+		interpreter.execute("COUNT 1");
+		interpreter.execute("SET a");
+		interpreter.execute("GET");
+		interpreter.execute("SCAN a z");
+		interpreter.execute("SETX a 1");
+		out.getBuffer().setLength(0);
+
+		interpreter.execute("STATS");
+		Map<String,String[]> latencies = section(out.toString(), "microseconds");
+		assertEquals("[SET, GET, COUNT]", latencies.keySet().toString());
+		assertEquals("2", latencies.get("SET")[1]);
+		assertEquals("1", latencies.get("GET")[1]);
+		assertEquals("1", latencies.get("COUNT")[1]);
+		assertTrue(section(out.toString(), "undo records per rollback").isEmpty());
+
+		out.getBuffer().setLength(0);
+		interpreter.execute("stats reset");
+		assertEquals(lines("STATS RESET"), out.toString());
+		out.getBuffer().setLength(0);
+		interpreter.execute("STATS");
+		assertTrue(section(out.toString(), "microseconds").isEmpty());
+		interpreter.execute("GET a");
+		out.getBuffer().setLength(0);
+		interpreter.execute("STATS");
+		assertEquals("1", section(out.toString(), "microseconds").get("GET")[1]);
+	}
+
+	@Test
+	void statsArgumentsAreChecked() {
+		StringWriter out = new StringWriter();
+		StringWriter err = new StringWriter();
+		CommandInterpreter interpreter = interpreter(out, err);
+		interpreter.execute("SET a 1");
+		interpreter.execute("STATS NOW");
+		interpreter.execute("STATS RESET NOW");
+		assertEquals(lines(
+				"improper command: STATS accepts 1 optional parameter: RESET",
+				"improper command: STATS accepts 1 optional parameter: RESET"), err.toString());
+		assertEquals("", out.toString());
+
+		//neither reset anything
+		interpreter.execute("STATS");
+		assertEquals("1", section(out.toString(), "microseconds").get("SET")[1]);
+	}
+
+	/**
+	 * each rollback records the undo records of the level it rolled back - one per name written there - and a
+	 * ROLLBACK with no transaction records nothing
+	 */
+	@Test
+	void rollbacksRecordTheirUndoRecords() {
+		StringWriter out = new StringWriter();
+		StringWriter err = new StringWriter();
+		CommandInterpreter interpreter = interpreter(out, err);
+		interpreter.execute("BEGIN");
+		interpreter.execute("SET a 1");
+		interpreter.execute("SET b 1");
+		interpreter.execute("SET a 2");
+		interpreter.execute("DELETE a");
+		interpreter.execute("ROLLBACK");
+		interpreter.execute("BEGIN");
+		interpreter.execute("BEGIN");
+		interpreter.execute("SET c 1");
+		interpreter.execute("ROLLBACK");
+		interpreter.execute("ROLLBACK");
+		interpreter.execute("ROLLBACK");
+		assertEquals(lines("TRANSACTION NOT FOUND"), out.toString());
+		out.getBuffer().setLength(0);
+
+		interpreter.execute("STATS");
+		assertEquals("4", section(out.toString(), "microseconds").get("ROLLBACK")[1]);
+		String[] undone = section(out.toString(), "undo records per rollback").get("ROLLBACK");
+		assertEquals("3", undone[1]);
+		assertEquals("1.00", undone[2]);
+		assertEquals("2.00", undone[7]);
+		assertEquals("", err.toString());
+	}
+
+	/**
+	 * the lines of one section of STATS output, by label - each the label, count, mean, percentiles and max
+	 * @param stats - the output
+	 * @param units - the section, as its header ends
+	 */
+	private static Map<String,String[]> section(String stats, String units) {
+		Map<String,String[]> section = new LinkedHashMap<>();
+		boolean in = false;
+		for (String line : stats.split("\\R")) {
+			if (line.startsWith(" ")) {
+				in = line.endsWith("(" + units + ")");
+			} else if (in && !line.isEmpty()) {
+				String[] columns = line.trim().split("\\s+");
+				section.put(columns[0], columns);
+			}
+		}
+		return section;
+	}
+
+	private static CommandInterpreter interpreter(StringWriter out, StringWriter err) {
+		return interpreter(new ToyInMemDB(), out, err);
+	}
+
+	private static CommandInterpreter interpreter(InMemDB db, StringWriter out, StringWriter err) {
+		return new CommandInterpreter(db, new PrintWriter(out, true), new PrintWriter(err, true), false);
+	}
+
+	private static String lines(String... lines) {
+		StringWriter expected = new StringWriter();
+		PrintWriter writer = new PrintWriter(expected);
+		for (String line : lines)
+			writer.println(line);
+		writer.flush();
+		return expected.toString();
+	}
+}
@@ -0,0 +1,62 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * splitting lines in place and matching the verb ignoring case
+ *
+ * @author ronbuchanan
+ */
+class CommandTokenizerTest {
+	private static final CommandInterpreter.Verb[] VERBS = CommandInterpreter.Verb.values();
+
+	@Test
+	void splitsOnAnyWhitespace() {
+		CommandTokenizer tokenizer = new CommandTokenizer();
+		assertEquals(3, tokenizer.reset("  SET\ta \t value  "));
+		assertEquals("SET", tokenizer.token(0));
+		assertEquals("a", tokenizer.token(1));
+		assertEquals("value", tokenizer.token(2));
+
+		assertEquals(0, tokenizer.reset(""));
+		assertEquals(0, tokenizer.reset(" \t "));
+		assertNull(tokenizer.verb(VERBS));
+
+		//reused for the next line
+		assertEquals(1, tokenizer.reset("begin"));
+		assertEquals(CommandInterpreter.Verb.BEGIN, tokenizer.verb(VERBS));
+	}
+
+	@Test
+	void matchesVerbsIgnoringCase() {
+		CommandTokenizer tokenizer = new CommandTokenizer();
+		tokenizer.reset("set a 1");
+		assertEquals(CommandInterpreter.Verb.SET, tokenizer.verb(VERBS));
+		tokenizer.reset("Keys_With 1");
+		assertEquals(CommandInterpreter.Verb.KEYS_WITH, tokenizer.verb(VERBS));
+		tokenizer.reset("rOlLbAcK");
+		assertEquals(CommandInterpreter.Verb.ROLLBACK, tokenizer.verb(VERBS));
+
+		//a prefix, an extension or a different verb of the same length doesn't match
+		tokenizer.reset("SE a 1");
+		assertNull(tokenizer.verb(VERBS));
+		tokenizer.reset("SETS a 1");
+		assertNull(tokenizer.verb(VERBS));
+		tokenizer.reset("SAT a 1");
+		assertNull(tokenizer.verb(VERBS));
+	}
+
+	/**
+	 * tokens past the ones kept are still counted, so a line with too many arguments is caught
+	 */
+	@Test
+	void countsEveryToken() {
+		CommandTokenizer tokenizer = new CommandTokenizer();
+		assertEquals(12, tokenizer.reset("SET a b c d e f g h i j k"));
+		assertEquals(12, tokenizer.count());
+		assertEquals("a", tokenizer.token(1));
+	}
+}
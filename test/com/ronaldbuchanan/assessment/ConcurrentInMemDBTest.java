@@ -0,0 +1,137 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * the thread safe engine shared between threads writing the same names
+ *
+ * @author ronbuchanan
+ */
+class ConcurrentInMemDBTest {
+	private static final int THREADS = 4;
+	private static final int OPERATIONS = 50000;
+
+	/**
+	 * whatever order the writes to the same names land in, the counts have to match what's left
+	 */
+	@Test
+	void countsMatchTheContents() throws Exception {
+		ConcurrentInMemDB db = new ConcurrentInMemDB();
+		run(THREADS, thread -> {
+			Random random = new Random(thread);
+			for (int op=0; op<OPERATIONS; op++) {
+				String name = "name" + random.nextInt(64);
+				if (random.nextInt(3)==0)
+					db.delete(name);
+				else
+					db.set(name, "value" + random.nextInt(8));
+			}
+		});
+		assertCounts(db);
+	}
+
+	/**
+	 * each thread's transactions over its own names (nested, committed and rolled back at random) while the
+	 * other threads do the same, and everyone also writes some shared names outside of a transaction - a
+	 * rollback has to restore just the thread's own writes
+	 */
+	@Test
+	void rollbackRestoresOnlyTheThreadsOwnWrites() throws Exception {
+		ConcurrentInMemDB db = new ConcurrentInMemDB();
+		List<Map<String,String>> expected = new ArrayList<>();
+		for (int i=0; i<THREADS; i++)
+			expected.add(null);
+
+		run(THREADS, thread -> {
+			Random random = new Random(thread);
+			HashMap<String,String> model = new HashMap<>();
+			ArrayDeque<HashMap<String,String>> levels = new ArrayDeque<>();
+			for (int op=0; op<OPERATIONS; op++) {
+				int kind = random.nextInt(20);
+				String name = "t" + thread + ":" + random.nextInt(32);
+				String value = "value" + random.nextInt(8);
+				if (kind==0) {
+					db.begin();
+					levels.push(new HashMap<>(model));
+				} else if (kind==1 && !levels.isEmpty()) {
+					db.rollback();
+					model = levels.pop();
+				} else if (kind==2 && !levels.isEmpty()) {
+					db.commit();
+					levels.clear();
+				} else if (kind<6) {
+					db.set("shared" + random.nextInt(8), value); //other threads' names, not in the model
+				} else if (kind<10) {
+					db.delete(name);
+					model.remove(name);
+				} else {
+					db.set(name, value);
+					model.put(name, value);
+				}
+				assertEquals(levels.size(), db.transactionDepth());
+			}
+			while (db.rollback())
+				model = levels.pop();
+			expected.set(thread, model);
+		});
+
+		for (int thread=0; thread<THREADS; thread++) {
+			HashMap<String,String> actual = new HashMap<>();
+			for (Map.Entry<String,String> entry : db.snapshot())
+				if (entry.getKey().startsWith("t" + thread + ":"))
+					actual.put(entry.getKey(), entry.getValue());
+			assertEquals(expected.get(thread), actual, "thread " + thread);
+		}
+		assertCounts(db);
+	}
+
+	private static void assertCounts(ConcurrentInMemDB db) {
+		HashMap<String,Integer> counts = new HashMap<>();
+		int size = 0;
+		for (Map.Entry<String,String> entry : db.snapshot()) {
+			counts.merge(entry.getValue(), 1, Integer::sum);
+			size++;
+		}
+		assertEquals(size, db.size());
+		assertEquals(counts.size(), db.distinctValues());
+		for (Map.Entry<String,Integer> count : counts.entrySet())
+			assertEquals(count.getValue().intValue(), db.count(count.getKey()), count.getKey());
+	}
+
+	private interface Work {
+		void run(int thread) throws Exception;
+	}
+
+	/**
+	 * run the work on some threads at once, failing if any of them did
+	 */
+	private static void run(int threads, Work work) throws Exception {
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread[] running = new Thread[threads];
+		for (int i=0; i<threads; i++) {
+			int thread = i;
+			running[i] = new Thread(() -> {
+				try {
+					work.run(thread);
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				}
+			});
+			running[i].start();
+		}
+		for (Thread thread : running)
+			thread.join();
+		if (failure.get()!=null)
+			throw new AssertionError(failure.get());
+	}
+}
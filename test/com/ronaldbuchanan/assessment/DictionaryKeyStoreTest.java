@@ -0,0 +1,76 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * the dictionary encoded store against a HashMap, including the value counts it keeps, and the reuse of the
+ * ids of values nobody holds any more
+ *
+ * @author ronbuchanan
+ */
+class DictionaryKeyStoreTest {
+	@Test
+	void matchesAHashMap() {
+		for (long seed=1; seed<=5; seed++) {
+			DictionaryKeyStore store = new DictionaryKeyStore();
+			//a few common values and a tail of rare ones, so ids keep being freed and reused
+			KeyStoreModel model = new KeyStoreModel(new HashMap<>(), new Random(seed), KeyStoreModel.names(3000),
+					random -> random.nextInt(4)==0 ? "rare" + random.nextInt(5000) : "value" + random.nextInt(10));
+			for (int op=0; op<100000; op++) {
+				model.step(store);
+				if (op%10000==0) {
+					model.check(store);
+					model.checkCounts(store.valueCounts());
+				}
+			}
+			model.check(store);
+			model.checkCounts(store.valueCounts());
+
+			model.drain(store, 0);
+			model.checkCounts(store.valueCounts());
+			assertEquals(16, store.capacity());
+		}
+	}
+
+	/**
+	 * a value's id goes back on the free list once nothing holds it, and comes out again for the next new one
+	 */
+	@Test
+	void releasedIdsAreReused() {
+		ValueDictionary dictionary = new ValueDictionary();
+		int a = dictionary.acquire("a");
+		int b = dictionary.acquire("b");
+		assertEquals(b, dictionary.acquire("b"));
+		assertEquals(2, dictionary.count("b"));
+
+		dictionary.release(b);
+		assertEquals("b", dictionary.value(b));
+		dictionary.release(b);
+		assertNull(dictionary.value(b));
+		assertEquals(0, dictionary.count("b"));
+		assertEquals(1, dictionary.size());
+
+		assertEquals(b, dictionary.acquire("c"));
+		assertEquals("c", dictionary.value(b));
+		assertEquals("a", dictionary.value(a));
+		assertEquals(2, dictionary.acquire("d"));
+	}
+
+	/**
+	 * the store keeps a single copy of each distinct value, however many names are set to it
+	 */
+	@Test
+	void valuesAreShared() {
+		DictionaryKeyStore store = new DictionaryKeyStore();
+		store.put("x", new String("value"));
+		store.put("y", new String("value"));
+		assertSame(store.get("x"), store.get("y"));
+	}
+}
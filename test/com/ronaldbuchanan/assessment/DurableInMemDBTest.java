@@ -0,0 +1,129 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * the write ahead log wrapper over the session engines
+ *
+ * @author ronbuchanan
+ */
+class DurableInMemDBTest {
+	@TempDir
+	Path dir;
+
+	/**
+	 * a write that conflicts discards the whole transaction - its batch has to go with it, or the next
+	 * commit logs the discarded writes and later autocommits are never flushed
+	 */
+	@Test
+	void conflictOnWriteDiscardsTheBatch() throws Exception {
+		Path path = dir.resolve("wal");
+		try (MvccStore store = new MvccStore(); WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			InMemDB a = new DurableInMemDB(store.open(), wal);
+			InMemDB b = new DurableInMemDB(store.open(), wal);
+
+			a.begin();
+			a.set("x", "tx");
+			b.set("w", "1");
+			assertThrows(TransactionConflictException.class, () -> a.set("w", "2"));
+			assertEquals(0, a.transactionDepth());
+
+			a.set("b", "3");
+			a.begin();
+			a.set("c", "4");
+			a.commit();
+		}
+
+		try (MvccStore store = new MvccStore(); WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			InMemDB db = store.open();
+			wal.replay(db, 0);
+			assertEquals("NULL", db.get("x"));
+			assertEquals("1", db.get("w"));
+			assertEquals("3", db.get("b"));
+			assertEquals("4", db.get("c"));
+		}
+	}
+
+	/**
+	 * the same for a delete that conflicts
+	 */
+	@Test
+	void conflictOnDeleteDiscardsTheBatch() throws Exception {
+		Path path = dir.resolve("wal");
+		try (MvccStore store = new MvccStore(); WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			InMemDB a = new DurableInMemDB(store.open(), wal);
+			InMemDB b = new DurableInMemDB(store.open(), wal);
+
+			b.set("w", "0");
+			a.begin();
+			a.set("x", "tx");
+			b.set("w", "1");
+			assertThrows(TransactionConflictException.class, () -> a.delete("w"));
+
+			a.set("b", "3");
+		}
+
+		try (MvccStore store = new MvccStore(); WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			InMemDB db = store.open();
+			wal.replay(db, 0);
+			assertEquals("NULL", db.get("x"));
+			assertEquals("1", db.get("w"));
+			assertEquals("3", db.get("b"));
+		}
+	}
+
+	/**
+	 * a write the log fails on is already in the engine, so the wrapper refuses everything after it - later
+	 * writes aren't made, and the unlogged one is never read
+	 */
+	@Test
+	void failedLogRefusesEverythingAfter() throws Exception {
+		Path path = dir.resolve("wal");
+		ToyInMemDB engine = new ToyInMemDB();
+		InMemDB durable;
+		//the log is closed under it, so every write from here on fails
+		try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			durable = new DurableInMemDB(engine, wal);
+			durable.set("a", "1");
+			durable.begin();
+			durable.set("b", "2");
+		}
+		assertThrows(UncheckedIOException.class, durable::commit);
+		assertThrows(UncheckedIOException.class, () -> durable.get("b"));
+		assertThrows(UncheckedIOException.class, () -> durable.count("2"));
+		assertThrows(UncheckedIOException.class, () -> durable.set("c", "3"));
+		assertThrows(UncheckedIOException.class, () -> durable.delete("a"));
+		assertThrows(UncheckedIOException.class, durable::begin);
+		assertThrows(UncheckedIOException.class, durable::snapshot);
+		assertEquals("NULL", engine.get("c"));
+		assertEquals("1", engine.get("a"));
+
+		try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			InMemDB db = new ToyInMemDB();
+			wal.replay(db, 0);
+			assertEquals("1", db.get("a"));
+			assertEquals("NULL", db.get("b"));
+		}
+	}
+
+	/**
+	 * the same for a write outside of a transaction
+	 */
+	@Test
+	void failedAutocommitRefusesEverythingAfter() throws Exception {
+		InMemDB db;
+		try (WriteAheadLog wal = new WriteAheadLog(dir.resolve("wal"), 0)) {
+			db = new DurableInMemDB(new ToyInMemDB(), wal);
+		}
+		assertThrows(UncheckedIOException.class, () -> db.set("a", "1"));
+		assertThrows(UncheckedIOException.class, () -> db.get("a"));
+		assertThrows(UncheckedIOException.class, db::size);
+	}
+}
@@ -0,0 +1,99 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * KEYS_WITH over the inverted index, against a HashMap copied at every BEGIN
+ *
+ * @author ronbuchanan
+ */
+class InvertedValueIndexTest {
+	private static final int NAMES = 12;
+	private static final int VALUES = 4;
+
+	@Test
+	void keysWithMatchesTheModel() {
+		for (long seed=1; seed<=5; seed++)
+			run(new Random(seed), 20000);
+	}
+
+	private static void run(Random random, int operations) {
+		ToyInMemDB db = new ToyInMemDB(true);
+		HashMap<String,String> database = new HashMap<>();
+		ArrayDeque<HashMap<String,String>> levels = new ArrayDeque<>();
+		for (int op=0; op<operations; op++) {
+			String name = "name" + random.nextInt(NAMES);
+			String value = "value" + random.nextInt(VALUES);
+			int kind = random.nextInt(20);
+			if (kind<2) {
+				db.begin();
+				levels.push(new HashMap<>(database));
+			} else if (kind<4) {
+				db.rollback();
+				if (!levels.isEmpty())
+					database = levels.pop();
+			} else if (kind<5) {
+				db.commit();
+				levels.clear();
+			} else if (kind<11) {
+				db.set(name, value);
+				database.put(name, value);
+			} else {
+				db.delete(name);
+				database.remove(name);
+			}
+			check(db, database);
+		}
+	}
+
+	private static void check(ToyInMemDB db, Map<String,String> database) {
+		for (int i=0; i<VALUES; i++) {
+			String value = "value" + i;
+			HashSet<String> expected = new HashSet<>();
+			for (Map.Entry<String,String> entry : database.entrySet())
+				if (entry.getValue().equals(value))
+					expected.add(entry.getKey());
+			Set<String> names = names(db.keysWith(value));
+			assertEquals(expected, names, value);
+			assertEquals(expected.size(), db.count(value), value);
+		}
+	}
+
+	private static Set<String> names(Iterator<String> iterator) {
+		HashSet<String> names = new HashSet<>();
+		while (iterator.hasNext())
+			assertEquals(true, names.add(iterator.next()));
+		return names;
+	}
+
+	/**
+	 * a value nobody holds any more has no entry left, and only the inverted index can answer KEYS_WITH
+	 */
+	@Test
+	void unusedValuesAreDropped() {
+		ToyInMemDB db = new ToyInMemDB(true);
+		db.set("a", "x");
+		db.begin();
+		db.set("a", "y");
+		db.set("b", "y");
+		assertEquals(1, db.distinctValues());
+		assertEquals(Set.of(), names(db.keysWith("x")));
+		db.rollback();
+		assertEquals(Set.of("a"), names(db.keysWith("x")));
+		assertEquals(Set.of(), names(db.keysWith("y")));
+		assertEquals(1, db.distinctValues());
+
+		assertThrows(UnsupportedOperationException.class, () -> new ToyInMemDB().keysWith("x"));
+	}
+}
@@ -0,0 +1,145 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+import java.util.function.Function;
+
+/**
+ * a reference model of a store - a HashMap, or a TreeMap in the store's order for an ordered one - to run
+ * a store against
+ *
+ * the random writes pick from a fixed pool of names, so names keep being overwritten, removed and put back
+ *
+ * @author ronbuchanan
+ */
+final class KeyStoreModel {
+	private final Map<String,String> expected;
+	private final Random random;
+	private final String[] names;
+	private final Function<Random,String> values;
+
+	/**
+	 * @param expected - empty, a SortedMap if the store's entries come out in order
+	 * @param random
+	 * @param names - the pool to pick from
+	 * @param values - makes the value for each put
+	 */
+	KeyStoreModel(Map<String,String> expected, Random random, String[] names, Function<Random,String> values) {
+		this.expected = expected;
+		this.random = random;
+		this.names = names;
+		this.values = values;
+	}
+
+	/**
+	 * name0, name1...
+	 */
+	static String[] names(int count) {
+		String[] names = new String[count];
+		for (int i=0; i<count; i++)
+			names[i] = "name" + i;
+		return names;
+	}
+
+	/**
+	 * what the store should hold
+	 */
+	Map<String,String> expected() {
+		return expected;
+	}
+
+	/**
+	 * run random puts (half), removes and gets against the store and the model, checking every entry now
+	 * and then
+	 * @param store
+	 * @param operations
+	 * @param every - how many operations between checks of every entry, 0 for none
+	 */
+	void run(KeyStore store, int operations, int every) {
+		for (int op=0; op<operations; op++) {
+			step(store);
+			if (every>0 && op%every==0)
+				check(store);
+		}
+		check(store);
+	}
+
+	/**
+	 * a single random put, remove or get
+	 */
+	void step(KeyStore store) {
+		String name = names[random.nextInt(names.length)];
+		int kind = random.nextInt(10);
+		if (kind<5) {
+			String value = values.apply(random);
+			assertEquals(expected.put(name, value), store.put(name, value), name);
+		} else if (kind<8) {
+			assertEquals(expected.remove(name), store.remove(name), name);
+		} else {
+			assertEquals(expected.get(name), store.get(name), name);
+		}
+		assertEquals(expected.size(), store.size());
+	}
+
+	/**
+	 * remove every name in the pool, in order
+	 * @param store
+	 * @param every - how many removes between checks of every entry, 0 for none
+	 */
+	void drain(KeyStore store, int every) {
+		for (int i=0; i<names.length; i++) {
+			assertEquals(expected.remove(names[i]), store.remove(names[i]), names[i]);
+			assertEquals(expected.size(), store.size());
+			if (every>0 && i%every==0)
+				check(store);
+		}
+		check(store);
+		assertEquals(null, store.get(names[0]));
+	}
+
+	/**
+	 * the store's entries (each name once, and in order for a SortedMap model)
+	 */
+	void check(KeyStore store) {
+		if (expected instanceof SortedMap) {
+			assertEquals(list(expected), list(store));
+		} else {
+			HashMap<String,String> entries = new HashMap<>();
+			for (Map.Entry<String,String> entry : store)
+				assertEquals(null, entries.put(entry.getKey(), entry.getValue()), entry.getKey());
+			assertEquals(expected, entries);
+		}
+	}
+
+	/**
+	 * the number of names holding each value, against a store's counts
+	 */
+	void checkCounts(ValueIndex index) {
+		HashMap<String,Integer> counts = new HashMap<>();
+		for (String value : expected.values())
+			counts.merge(value, 1, Integer::sum);
+		assertEquals(counts.size(), index.size());
+		for (Map.Entry<String,Integer> count : counts.entrySet())
+			assertEquals(count.getValue().intValue(), index.count(count.getKey()), count.getKey());
+	}
+
+	/**
+	 * name=value, in iteration order
+	 */
+	static List<String> list(Iterable<Map.Entry<String,String>> entries) {
+		List<String> list = new ArrayList<>();
+		for (Map.Entry<String,String> entry : entries)
+			list.add(entry.getKey() + "=" + entry.getValue());
+		return list;
+	}
+
+	private static List<String> list(Map<String,String> entries) {
+		return list(entries.entrySet());
+	}
+}
@@ -0,0 +1,93 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * the log-linear buckets' bounds, and percentiles against the exact ones of the recorded values
+ *
+ * @author ronbuchanan
+ */
+class LatencyHistogramTest {
+	/**
+	 * every value lands in the bucket whose bounds hold it, and the bucket is within 1/16th of the value
+	 */
+	@Test
+	void bucketsHoldTheirValues() {
+		Random random = new Random(1);
+		for (int i=0; i<100000; i++) {
+			long value = i<4096 ? i : random.nextLong() >>> (1+random.nextInt(63));
+			check(value);
+		}
+		check(Long.MAX_VALUE);
+		for (int shift=0; shift<63; shift++) {
+			check(1L << shift);
+			check((1L << shift) - 1);
+		}
+	}
+
+	private static void check(long value) {
+		int index = LatencyHistogram.index(value);
+		long lowest = LatencyHistogram.lowest(index);
+		long next = LatencyHistogram.lowest(index+1);
+		assertTrue(lowest<=value && (value<next || next==Long.MAX_VALUE), value + " outside [" + lowest + ", " + next + ")");
+		if (value<16)
+			assertEquals(value, lowest);
+		else
+			assertTrue(next-lowest<=value/16+1, value + " in a bucket of " + (next-lowest));
+	}
+
+	@Test
+	void percentilesAreWithinABucket() {
+		Random random = new Random(2);
+		long[] values = new long[100000];
+		LatencyHistogram histogram = new LatencyHistogram();
+		long total = 0;
+		for (int i=0; i<values.length; i++) {
+			//roughly log normal, like latencies
+			values[i] = (long) Math.exp(8 + 2*random.nextGaussian());
+			histogram.record(values[i]);
+			total += values[i];
+		}
+		Arrays.sort(values);
+
+		assertEquals(values.length, histogram.count());
+		assertEquals(values[values.length-1], histogram.max());
+		assertEquals(total/(double) values.length, histogram.mean(), 1e-6);
+		for (double percent : new double[] {0, 1, 25, 50, 90, 99, 99.9, 99.99, 100}) {
+			long exact = values[Math.max(0, (int) Math.ceil(percent/100*values.length)-1)];
+			long reported = histogram.percentile(percent);
+			assertTrue(reported>=exact && reported<=exact+exact/16+1, "p" + percent + " was " + reported + ", exactly " + exact);
+		}
+		assertEquals(histogram.max(), histogram.percentile(100));
+	}
+
+	@Test
+	void addsAndResets() {
+		LatencyHistogram a = new LatencyHistogram();
+		LatencyHistogram b = new LatencyHistogram();
+		assertEquals(0, a.percentile(50));
+		assertEquals(0, a.mean());
+
+		for (int i=1; i<=10; i++)
+			a.record(i);
+		b.record(1000);
+		b.record(-5); //counted as 0
+		a.add(b);
+		assertEquals(12, a.count());
+		assertEquals(1000, a.max());
+		assertEquals(0, a.percentile(0));
+		assertEquals(10, a.percentile(90));
+		assertEquals(1000, a.percentile(100));
+
+		a.reset();
+		assertEquals(0, a.count());
+		assertEquals(0, a.max());
+		assertEquals(0, a.percentile(99));
+	}
+}
@@ -0,0 +1,132 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * the mapped store across restarts - its entries, its index mapped in several regions, and the value counts
+ * it saves so a restart doesn't have to walk everything to answer COUNT
+ *
+ * @author ronbuchanan
+ */
+class MappedKeyStoreTest {
+	@TempDir
+	Path dir;
+
+	/**
+	 * after a clean close the counts are read back on open - they're at hand before anything asks for them
+	 */
+	@Test
+	void reopenKeepsTheCounts() throws Exception {
+		try (MappedKeyStore store = MappedKeyStore.open(dir, false); UndoJournal journal = journal()) {
+			ToyInMemDB db = new ToyInMemDB(false, store, journal);
+			db.set("a", "x");
+			db.set("b", "x");
+			db.set("c", "y");
+			db.set("d", "z");
+			db.delete("d");
+			db.begin();
+			db.set("c", "x");
+			db.rollback();
+		}
+
+		try (MappedKeyStore store = MappedKeyStore.open(dir, false); UndoJournal journal = journal()) {
+			assertTrue(store.hasCounts());
+			assertFalse(Files.exists(dir.resolve("counts")), "the counts file would go stale");
+			journal.recover(store);
+			ToyInMemDB db = new ToyInMemDB(false, store, journal);
+			assertEquals("x", db.get("a"));
+			assertEquals(2, db.count("x"));
+			assertEquals(1, db.count("y"));
+			assertEquals(0, db.count("z"));
+			assertEquals(2, db.distinctValues());
+
+			db.set("c", "x");
+			db.set("e", "w");
+			db.delete("a");
+			assertEquals(2, db.count("x"));
+			assertEquals(0, db.count("y"));
+			assertEquals(1, db.count("w"));
+			assertEquals(3, db.size());
+		}
+
+		try (MappedKeyStore store = MappedKeyStore.open(dir, false)) {
+			assertTrue(store.hasCounts());
+			assertEquals(2, store.valueCounts().count("x"));
+			assertEquals(1, store.valueCounts().count("w"));
+		}
+	}
+
+	/**
+	 * a store that wasn't closed has no counts to read back, so the first COUNT builds them
+	 */
+	@Test
+	void countsAreRebuiltAfterACrash() throws Exception {
+		MappedKeyStore crashed = MappedKeyStore.open(dir, false);
+		crashed.put("a", "x");
+		crashed.put("b", "x");
+		crashed.put("c", "y");
+		//never closed, as a kill would leave it
+
+		try (MappedKeyStore store = MappedKeyStore.open(dir, false)) {
+			assertFalse(store.hasCounts());
+			ToyInMemDB db = new ToyInMemDB(false, store);
+			assertEquals("y", db.get("c"));
+			assertEquals(2, db.count("x"));
+			assertTrue(store.hasCounts());
+			db.set("c", "x");
+			assertEquals(3, db.count("x"));
+		}
+
+		try (MappedKeyStore store = MappedKeyStore.open(dir, false)) {
+			assertTrue(store.hasCounts());
+			assertEquals(3, store.valueCounts().count("x"));
+			assertEquals(0, store.valueCounts().count("y"));
+		}
+	}
+
+	/**
+	 * random writes against a HashMap with small data files and 16 slot index regions, so the index is
+	 * mapped in many pieces and rewritten both ways, closing and reopening the store along the way
+	 */
+	@Test
+	void matchesAHashMap() throws Exception {
+		KeyStoreModel model = new KeyStoreModel(new HashMap<>(), new Random(1), KeyStoreModel.names(2000),
+				random -> random.nextInt(4)==0 ? "v".repeat(random.nextInt(30)) : "value" + random.nextInt(10));
+		MappedKeyStore store = open();
+		try {
+			for (int round=0; round<6; round++) {
+				model.run(store, 10000, 0);
+				store.close();
+				store = open();
+				assertTrue(store.hasCounts());
+				model.check(store);
+				model.checkCounts(store.valueCounts());
+			}
+
+			//drain it, which shrinks the index back down
+			model.drain(store, 0);
+			assertEquals(0, store.size());
+			assertEquals(0, store.valueCounts().size());
+		} finally {
+			store.close();
+		}
+	}
+
+	private MappedKeyStore open() throws Exception {
+		return MappedKeyStore.open(dir, 1 << 10, 4, false);
+	}
+
+	private UndoJournal journal() throws Exception {
+		return new UndoJournal(dir.resolve("undo"), false);
+	}
+}
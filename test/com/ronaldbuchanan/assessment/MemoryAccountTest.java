@@ -0,0 +1,132 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * the running memory estimates against a recount of what the database holds, and the memory limit
+ *
+ * @author ronbuchanan
+ */
+class MemoryAccountTest {
+	@Test
+	void stringsAreRoundedToEightBytes() {
+		assertEquals(40, MemoryAccount.bytes(""));
+		assertEquals(48, MemoryAccount.bytes("a"));
+		assertEquals(48, MemoryAccount.bytes("abcdefgh"));
+		assertEquals(56, MemoryAccount.bytes("abcdefghi"));
+	}
+
+	@Test
+	void changesCancelOut() {
+		MemoryAccount memory = new MemoryAccount();
+		memory.change("name", null, "value");
+		long names = memory.names();
+		memory.change("name", "value", "a much longer value");
+		assertEquals(names, memory.names());
+		assertEquals(MemoryAccount.bytes("a much longer value"), memory.values());
+		memory.change("name", "a much longer value", null);
+		assertEquals(0, memory.names());
+		assertEquals(0, memory.values());
+
+		memory.logged("value");
+		memory.logged(null);
+		memory.unlogged(null);
+		memory.unlogged("value");
+		assertEquals(0, memory.undo());
+		memory.logged("value");
+		memory.committed();
+		assertEquals(0, memory.undo());
+	}
+
+	/**
+	 * after any mix of writes, rollbacks and commits, the estimate is what counting the entries left gives
+	 */
+	@Test
+	void estimateMatchesARecount() {
+		for (long seed=1; seed<=5; seed++) {
+			Random random = new Random(seed);
+			ToyInMemDB db = new ToyInMemDB();
+			HashMap<String,String> database = new HashMap<>();
+			for (int op=0; op<20000; op++) {
+				String name = "name" + random.nextInt(50);
+				String value = "value" + "x".repeat(random.nextInt(20));
+				int kind = random.nextInt(20);
+				if (kind<2)
+					db.begin();
+				else if (kind<3)
+					db.rollback();
+				else if (kind<4)
+					db.commit();
+				else if (kind<12)
+					db.set(name, value);
+				else
+					db.delete(name);
+
+				if (db.transactionDepth()==0) {
+					database.clear();
+					for (Map.Entry<String,String> entry : db.snapshot())
+						database.put(entry.getKey(), entry.getValue());
+					assertEquals(recount(database), db.estimatedBytes());
+				}
+			}
+			while (db.rollback())
+				;
+			database.clear();
+			for (Map.Entry<String,String> entry : db.snapshot())
+				database.put(entry.getKey(), entry.getValue());
+			assertEquals(recount(database), db.estimatedBytes());
+		}
+	}
+
+	private static long recount(Map<String,String> database) {
+		MemoryAccount memory = new MemoryAccount();
+		for (Map.Entry<String,String> entry : database.entrySet())
+			memory.change(entry.getKey(), null, entry.getValue());
+		return memory.names() + memory.values() + MemoryAccount.index((int) database.values().stream().distinct().count(), 0);
+	}
+
+	/**
+	 * SETs are refused once the estimate reaches the limit, everything that frees memory still works
+	 */
+	@Test
+	void limitRefusesSets() {
+		ToyInMemDB db = new ToyInMemDB();
+		db.limitMemory(1 << 12);
+		int set = 0;
+		try {
+			for (; set<1000; set++)
+				db.set("name" + set, "value" + set);
+		} catch (MemoryLimitException e) {
+			assertTrue(e.getMessage().startsWith("OOM command not allowed"));
+		}
+		assertTrue(set>0 && set<1000, set + " names set");
+		assertTrue(db.estimatedBytes()>=1 << 12);
+		assertThrows(MemoryLimitException.class, () -> db.set("one", "more"));
+
+		//a delete frees enough for another SET
+		db.delete("name0");
+		db.set("name0", "value0");
+		assertThrows(MemoryLimitException.class, () -> db.set("name1", "value1"));
+
+		db.begin();
+		db.delete("name1");
+		db.delete("name2");
+		assertEquals(true, db.rollback());
+		assertEquals("value1", db.get("name1"));
+
+		//and the interpreter reports it rather than failing
+		StringWriter out = new StringWriter();
+		new CommandInterpreter(db, new PrintWriter(out, true), new PrintWriter(new StringWriter(), true), false).execute("SET more 1");
+		assertTrue(out.toString().startsWith("OOM command not allowed"), out.toString());
+	}
+}
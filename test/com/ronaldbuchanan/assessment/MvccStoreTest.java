@@ -0,0 +1,99 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * the multi-version store's reads while another session commits
+ *
+ * @author ronbuchanan
+ */
+class MvccStoreTest {
+	private static final int COMMITS = 20000;
+
+	/**
+	 * one session commits pairs of names, another reads them outside of a transaction - it must never see
+	 * half of a commit, never go back to an older value, and a BEGIN straight after a read must see at
+	 * least what the read did
+	 */
+	@Test
+	void readsOutsideATransactionSeeWholeCommits() throws Exception {
+		try (MvccStore store = new MvccStore()) {
+			InMemDB writer = store.open();
+			InMemDB reader = store.open();
+			writer.begin();
+			writer.set("a", "0");
+			writer.set("b", "0");
+			writer.commit();
+
+			AtomicBoolean done = new AtomicBoolean();
+			AtomicReference<Throwable> failure = new AtomicReference<>();
+			Thread thread = new Thread(() -> {
+				try {
+					for (int i=1; i<=COMMITS; i++) {
+						writer.begin();
+						writer.set("a", Integer.toString(i));
+						writer.set("b", Integer.toString(i));
+						writer.commit();
+					}
+				} catch (Throwable t) {
+					failure.set(t);
+				} finally {
+					done.set(true);
+				}
+			});
+			thread.start();
+
+			int last = 0;
+			while (!done.get()) {
+				//b is stamped before a, so reading b first is what would catch a half commit
+				int b = Integer.parseInt(reader.get("b"));
+				int a = Integer.parseInt(reader.get("a"));
+				assertTrue(a>=b, () -> "saw b="+b+" then a="+a);
+				int previous = last;
+				assertTrue(b>=previous, () -> "went back from "+previous+" to "+b);
+				assertEquals(2, reader.size());
+
+				reader.begin();
+				int snapshot = Integer.parseInt(reader.get("a"));
+				assertTrue(snapshot>=a, () -> "the snapshot ("+snapshot+") is older than the read before it ("+a+")");
+				assertEquals(reader.get("a"), reader.get("b"));
+				assertEquals(2, reader.count(Integer.toString(snapshot)));
+				reader.commit();
+				last = snapshot;
+			}
+			thread.join();
+			if (failure.get()!=null)
+				throw new AssertionError(failure.get());
+			assertEquals(Integer.toString(COMMITS), reader.get("a"));
+			assertEquals(2, reader.count(Integer.toString(COMMITS)));
+		}
+	}
+
+	/**
+	 * a read outside of a transaction isn't registered with the collector, so two commits and a collection
+	 * between taking its snapshot and walking the stats can prune the snapshot's stats away
+	 */
+	@Test
+	void collectorPrunesAnUnregisteredReadersStats() {
+		try (MvccStore store = new MvccStore(Long.MAX_VALUE)) {
+			InMemDB writer = store.open();
+			InMemDB reader = store.open();
+			writer.set("a", "0");
+			long snapshot = store.committed();
+			writer.set("b", "1");
+			writer.set("c", "1");
+			store.collect();
+
+			assertNull(store.stats(snapshot));
+			assertEquals(3, reader.size());
+			assertEquals(2, reader.distinctValues());
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * the off heap store against a HashMap, with small slabs and index buffers so the random writes
+ * resize the index across several buffers, grow and shrink it again, and compact and give back slabs
+ *
+ * @author ronbuchanan
+ */
+class OffHeapKeyStoreTest {
+	private static final int SLAB_SIZE = 1 << 10;
+
+	@Test
+	void matchesAHashMap() {
+		for (long seed=1; seed<=5; seed++) {
+			CountingAllocator allocator = new CountingAllocator();
+			OffHeapKeyStore store = new OffHeapKeyStore(allocator, SLAB_SIZE, 4);
+			String[] pool = new String[3000];
+			for (int i=0; i<pool.length; i++)
+				pool[i] = (i%7==0 ? "naïve" : "name") + i;
+			//mostly the same length, so some overwrites are in place and some append
+			KeyStoreModel model = new KeyStoreModel(new HashMap<>(), new Random(seed), pool,
+					random -> random.nextInt(4)==0 ? "v".repeat(random.nextInt(40)) : "value" + random.nextInt(10));
+			model.run(store, 100000, 20000);
+			assertTrue(allocator.freed>0, "no slab or index buffer was given back");
+
+			//drain it, which shrinks the index and leaves every slab dead
+			model.drain(store, 0);
+			//only the active slab is left (the index buffers are smaller)
+			long slabs = allocator.live.keySet().stream().filter(buffer -> buffer.capacity()==SLAB_SIZE).count();
+			assertTrue(slabs<=1, slabs + " slabs still allocated");
+		}
+	}
+
+	/**
+	 * heap buffers, keeping track of the ones not given back
+	 */
+	private static final class CountingAllocator implements SlabAllocator {
+		final IdentityHashMap<ByteBuffer,Boolean> live = new IdentityHashMap<>();
+		int freed = 0;
+
+		@Override
+		public ByteBuffer allocate(int capacity) {
+			ByteBuffer buffer = ByteBuffer.allocate(capacity).order(ByteOrder.nativeOrder());
+			live.put(buffer, true);
+			return buffer;
+		}
+
+		@Override
+		public void free(ByteBuffer slab) {
+			assertTrue(live.remove(slab)!=null, "freed twice");
+			freed++;
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * the open addressing store against a HashMap, through growing, backward shift deletes and shrinking
+ *
+ * @author ronbuchanan
+ */
+class OpenAddressingKeyStoreTest {
+	@Test
+	void matchesAHashMap() {
+		for (long seed=1; seed<=5; seed++) {
+			OpenAddressingKeyStore store = new OpenAddressingKeyStore();
+			KeyStoreModel model = new KeyStoreModel(new HashMap<>(), new Random(seed), KeyStoreModel.names(3000),
+					random -> "value" + random.nextInt(10));
+			model.run(store, 100000, 0);
+
+			//drain it, every lookup still finding what's left as the table shrinks back
+			model.drain(store, 100);
+			assertEquals(0, store.size());
+			assertEquals(16, store.capacity());
+		}
+	}
+
+	/**
+	 * a run of colliding names that wraps around the end of the table - deleting from the front of it has to
+	 * pull the rest back, across the wrap, or they can't be found
+	 */
+	@Test
+	void deletesShiftCollisionsBack() {
+		OpenAddressingKeyStore store = new OpenAddressingKeyStore();
+		List<String> last = names(15, 4);
+		List<String> first = names(0, 2);
+		for (String name : last)
+			store.put(name, name);
+		for (String name : first)
+			store.put(name, name);
+		assertEquals(16, store.capacity());
+
+		assertEquals(last.get(0), store.remove(last.get(0)));
+		assertEquals(first.get(0), store.remove(first.get(0)));
+		assertNull(store.get(last.get(0)));
+		assertNull(store.get(first.get(0)));
+		for (String name : last.subList(1, last.size()))
+			assertEquals(name, store.get(name));
+		assertEquals(first.get(1), store.get(first.get(1)));
+		assertEquals(4, store.size());
+	}
+
+	@Test
+	void growsAndShrinks() {
+		OpenAddressingKeyStore store = new OpenAddressingKeyStore();
+		for (int i=0; i<10000; i++)
+			store.put("name" + i, "v");
+		int grown = store.capacity();
+		assertTrue(grown>=10000*4/3, "capacity " + grown);
+		for (int i=0; i<9990; i++)
+			store.remove("name" + i);
+		assertTrue(store.capacity()<grown/8, "capacity " + store.capacity());
+		for (int i=9990; i<10000; i++)
+			assertEquals("v", store.get("name" + i));
+	}
+
+	/**
+	 * names whose home slot in the initial (16 slot) table is home
+	 */
+	private static List<String> names(int home, int count) {
+		ArrayList<String> names = new ArrayList<>();
+		for (int i=0; names.size()<count; i++)
+			if ((OpenAddressingKeyStore.hash("n" + i) & 15)==home)
+				names.add("n" + i);
+		return names;
+	}
+}
@@ -0,0 +1,119 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * the trie against a HashMap, with keys whose hashes collide outright (collision nodes) or share all but
+ * their top bits (long single-branch paths), through enough removes to collapse them all again - and every
+ * older version has to be left as it was
+ *
+ * @author ronbuchanan
+ */
+class PersistentHashMapTest {
+	@Test
+	void matchesAHashMap() {
+		for (long seed=1; seed<=5; seed++)
+			run(new Random(seed));
+	}
+
+	private static void run(Random random) {
+		//half the hashes differ only in their top bits from another one, and each is shared by several keys
+		int[] hashes = new int[16];
+		for (int i=0; i<hashes.length; i+=2) {
+			hashes[i] = random.nextInt();
+			hashes[i+1] = hashes[i] ^ (1 << (27 + random.nextInt(5)));
+		}
+		Key[] keys = new Key[200];
+		for (int i=0; i<keys.length; i++)
+			keys[i] = new Key(i, i%2==0 ? hashes[random.nextInt(hashes.length)] : random.nextInt());
+
+		PersistentHashMap<Key,String> map = PersistentHashMap.empty();
+		HashMap<Key,String> expected = new HashMap<>();
+		List<PersistentHashMap<Key,String>> versions = new ArrayList<>();
+		List<Map<Key,String>> contents = new ArrayList<>();
+		for (int op=0; op<40000; op++) {
+			Key key = keys[random.nextInt(keys.length)];
+			if (random.nextInt(10)<6) {
+				String value = "value" + random.nextInt(4);
+				PersistentHashMap<Key,String> next = map.put(key, value);
+				if (value.equals(expected.put(key, value)))
+					assertSame(map, next, "a put that changes nothing copies nothing");
+				map = next;
+			} else {
+				PersistentHashMap<Key,String> next = map.remove(key);
+				if (expected.remove(key)==null)
+					assertSame(map, next);
+				map = next;
+			}
+			assertEquals(expected.size(), map.size());
+			assertEquals(expected.get(key), map.get(key));
+
+			if (op % 2000==0) {
+				assertContents(expected, map, keys);
+				versions.add(map);
+				contents.add(new HashMap<>(expected));
+			}
+		}
+
+		//drain it, collapsing every collision node and path
+		for (Key key : keys) {
+			map = map.remove(key);
+			expected.remove(key);
+			assertEquals(expected.size(), map.size());
+			if (expected.size() % 10==0)
+				assertContents(expected, map, keys);
+		}
+		assertEquals(true, map.isEmpty());
+		assertEquals(false, map.iterator().hasNext());
+
+		for (int i=0; i<versions.size(); i++)
+			assertContents(contents.get(i), versions.get(i), keys);
+	}
+
+	private static void assertContents(Map<Key,String> expected, PersistentHashMap<Key,String> map, Key[] keys) {
+		for (Key key : keys)
+			assertEquals(expected.get(key), map.get(key), key.toString());
+		HashMap<Key,String> iterated = new HashMap<>();
+		for (Map.Entry<Key,String> entry : map)
+			assertNull(iterated.put(entry.getKey(), entry.getValue()), "iterated twice: " + entry.getKey());
+		assertEquals(expected, iterated);
+	}
+
+	/**
+	 * a key with a chosen hash code
+	 */
+	private static final class Key {
+		final int id;
+		final int hash;
+
+		Key(int id, int hash) {
+			this.id = id;
+			this.hash = hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && ((Key) o).id==id;
+		}
+
+		@Override
+		public String toString() {
+			return "key" + id + "#" + Integer.toHexString(hash);
+		}
+	}
+}
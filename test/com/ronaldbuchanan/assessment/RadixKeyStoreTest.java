@@ -0,0 +1,130 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * the radix store against a TreeMap in UTF-8 byte order, through enough random writes to burst buckets,
+ * split prefixes and prune nodes
+ *
+ * @author ronbuchanan
+ */
+class RadixKeyStoreTest {
+	private static final Comparator<String> UTF8 = (a, b) -> Arrays.compareUnsigned(
+			a.getBytes(StandardCharsets.UTF_8), b.getBytes(StandardCharsets.UTF_8));
+	private static final String[] PARTS = {"user:", "1", "2", "3", ":", "session", "cart", "a", "ab", "é", "中", "😀", "�"};
+
+	@Test
+	void matchesATreeMap() {
+		for (long seed=1; seed<=5; seed++)
+			run(new Random(seed), 200, 60000);
+		run(new Random(6), 20000, 200000);
+	}
+
+	/**
+	 * "Aa" and "BB" hash alike, so kAaN and kBBN are in the same bucket (few enough not to burst it) with
+	 * the same hash byte - the names themselves have to tell them apart
+	 */
+	@Test
+	void collidingHashesAreToldApart() {
+		RadixKeyStore store = new RadixKeyStore();
+		TreeMap<String,String> expected = new TreeMap<>(UTF8);
+		for (int i=0; i<30; i++) {
+			assertEquals(null, store.put("kAa" + i, "a" + i));
+			expected.put("kAa" + i, "a" + i);
+		}
+		for (int i=0; i<30; i++)
+			assertEquals(null, store.get("kBB" + i));
+		for (int i=0; i<30; i+=2) {
+			assertEquals(null, store.put("kBB" + i, "b" + i));
+			expected.put("kBB" + i, "b" + i);
+		}
+		for (int i=0; i<30; i+=3)
+			assertEquals(expected.remove("kAa" + i), store.remove("kAa" + i));
+		for (int i=0; i<30; i++) {
+			assertEquals(expected.get("kAa" + i), store.get("kAa" + i));
+			assertEquals(expected.get("kBB" + i), store.get("kBB" + i));
+		}
+		assertEquals(expected.size(), store.size());
+		assertEntries(expected, store.iterator());
+	}
+
+	private static void run(Random random, int names, int operations) {
+		RadixKeyStore store = new RadixKeyStore();
+		TreeMap<String,String> expected = new TreeMap<>(UTF8);
+		String[] pool = new String[names];
+		for (int i=0; i<names; i++)
+			pool[i] = name(random);
+		KeyStoreModel model = new KeyStoreModel(expected, random, pool, r -> "value" + r.nextInt(100));
+
+		for (int op=0; op<operations; op++) {
+			model.step(store);
+			if (op % 5000==0) {
+				model.check(store);
+				for (int i=0; i<20; i++)
+					checkRange(random, pool, expected, store);
+			}
+		}
+
+		//drain it, the pruned trie still has to answer everything
+		model.drain(store, 0);
+	}
+
+	private static void checkRange(Random random, String[] pool, TreeMap<String,String> expected, RadixKeyStore store) {
+		String a = random.nextInt(8)==0 ? null : random.nextBoolean() ? pool[random.nextInt(pool.length)] : name(random);
+		String b = random.nextInt(8)==0 ? null : random.nextBoolean() ? pool[random.nextInt(pool.length)] : name(random);
+		NavigableMap<String,String> range;
+		if (a!=null && b!=null && UTF8.compare(a, b)>0)
+			range = new TreeMap<>(UTF8);
+		else if (a==null && b==null)
+			range = expected;
+		else if (a==null)
+			range = expected.headMap(b, false);
+		else if (b==null)
+			range = expected.tailMap(a, true);
+		else
+			range = expected.subMap(a, true, b, false);
+		assertEntries(range, store.range(a, b));
+
+		String name = pool[random.nextInt(pool.length)];
+		String prefix = name.substring(0, random.nextInt(name.length()+1));
+		if (!prefix.isEmpty() && Character.isHighSurrogate(prefix.charAt(prefix.length()-1)))
+			prefix = prefix.substring(0, prefix.length()-1); //don't split a character
+		TreeMap<String,String> prefixed = new TreeMap<>(UTF8);
+		for (Map.Entry<String,String> entry : expected.tailMap(prefix, true).entrySet()) {
+			if (!entry.getKey().startsWith(prefix))
+				break;
+			prefixed.put(entry.getKey(), entry.getValue());
+		}
+		assertEntries(prefixed, store.prefixed(prefix));
+	}
+
+	private static void assertEntries(Map<String,String> expected, Iterator<Map.Entry<String,String>> actual) {
+		assertEquals(KeyStoreModel.list(expected.entrySet()), KeyStoreModel.list(() -> actual));
+	}
+
+	/**
+	 * names with lots of shared prefixes, the odd multi-byte character, and some long enough to need more
+	 * than a byte for their length
+	 */
+	private static String name(Random random) {
+		StringBuilder name = new StringBuilder();
+		int parts = 1 + random.nextInt(6);
+		for (int i=0; i<parts; i++)
+			name.append(PARTS[random.nextInt(PARTS.length)]);
+		if (random.nextInt(50)==0)
+			name.append("x".repeat(200 + random.nextInt(200)));
+		name.append(random.nextInt(20));
+		return name.toString();
+	}
+}
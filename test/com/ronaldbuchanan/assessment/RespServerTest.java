@@ -0,0 +1,223 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * parsing of the RESP requests
+ *
+ * @author ronbuchanan
+ */
+class RespServerTest {
+	@TempDir
+	Path dir;
+
+	private static ByteBuffer buffer(String request) {
+		return ByteBuffer.wrap(request.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void parsesArraysAndInlineCommands() throws Exception {
+		ByteBuffer in = buffer("*3\r\n$3\r\nSET\r\n$1\r\nk\r\n$1\r\nv\r\nGET k\r\n");
+		assertArrayEquals(new String[] {"SET", "k", "v"}, RespServer.parse(in));
+		assertArrayEquals(new String[] {"GET", "k"}, RespServer.parse(in));
+		assertNull(RespServer.parse(in));
+	}
+
+	@Test
+	void waitsForTheRestOfACommand() throws Exception {
+		String request = "*20\r\n" + "$1\r\na\r\n".repeat(20);
+		ByteBuffer partial = buffer(request.substring(0, request.length()-3));
+		assertNull(RespServer.parse(partial));
+		assertArrayEquals("a".repeat(20).split(""), RespServer.parse(buffer(request)));
+	}
+
+	@Test
+	void rejectsHugeArrays() {
+		assertThrows(RespServer.ProtocolError.class, () -> RespServer.parse(buffer("*2147483647\r\n")));
+		assertThrows(RespServer.ProtocolError.class, () -> RespServer.parse(buffer("*1048577\r\n$1\r\na\r\n")));
+	}
+
+	/**
+	 * a stored value of "NULL" is still a value
+	 */
+	@Test
+	void storedNullIsAValue() throws Exception {
+		int port;
+		try (ServerSocket probe = new ServerSocket(0)) {
+			port = probe.getLocalPort();
+		}
+		RespServer server = new RespServer(new ToyInMemDB(), port, null);
+		Thread thread = new Thread(() -> {
+			try {
+				server.run();
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		thread.start();
+
+		try (Socket socket = new Socket("localhost", port)) {
+			OutputStream out = socket.getOutputStream();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			out.write("SET k NULL\r\nGET k\r\nDEL k\r\nGET k\r\nDEL k\r\nSHUTDOWN\r\n".getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			assertEquals("+OK", in.readLine());
+			assertEquals("$4", in.readLine());
+			assertEquals("NULL", in.readLine());
+			assertEquals(":1", in.readLine());
+			assertEquals("$-1", in.readLine());
+			assertEquals(":0", in.readLine());
+		}
+		thread.join(10000);
+	}
+
+	/**
+	 * a client that goes quiet inside MULTI holds everyone else up - until the timeout disconnects it and
+	 * rolls its transaction back
+	 */
+	@Test
+	void idleMultiIsRolledBack() throws Exception {
+		int port;
+		try (ServerSocket probe = new ServerSocket(0)) {
+			port = probe.getLocalPort();
+		}
+		RespServer server = new RespServer(new ToyInMemDB(), port, null);
+		server.multiTimeout(300);
+		Thread thread = new Thread(() -> {
+			try {
+				server.run();
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		thread.start();
+
+		try (Socket idle = new Socket("localhost", port); Socket held = new Socket("localhost", port)) {
+			OutputStream idleOut = idle.getOutputStream();
+			BufferedReader idleIn = new BufferedReader(new InputStreamReader(idle.getInputStream(), StandardCharsets.UTF_8));
+			idleOut.write("MULTI\r\nSET a 1\r\n".getBytes(StandardCharsets.UTF_8));
+			idleOut.flush();
+			assertEquals("+OK", idleIn.readLine());
+			assertEquals("+OK", idleIn.readLine());
+
+			OutputStream out = held.getOutputStream();
+			BufferedReader in = new BufferedReader(new InputStreamReader(held.getInputStream(), StandardCharsets.UTF_8));
+			long start = System.nanoTime();
+			out.write("GET a\r\nPING\r\n".getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			assertEquals("$-1", in.readLine());
+			assertEquals("+PONG", in.readLine());
+			assertTrue(System.nanoTime()-start>=250000000L, "the commands weren't held");
+
+			assertTrue(idleIn.readLine().startsWith("-ERR MULTI idle"));
+			assertNull(idleIn.readLine());
+
+			out.write("SHUTDOWN\r\n".getBytes(StandardCharsets.UTF_8));
+			out.flush();
+		}
+		thread.join(10000);
+	}
+
+	/**
+	 * a store that fails a command fails just that command, and an error reply stays on one line whatever
+	 * the command name held
+	 */
+	@Test
+	void failedCommandsDontStopTheServer() throws Exception {
+		int port;
+		try (ServerSocket probe = new ServerSocket(0)) {
+			port = probe.getLocalPort();
+		}
+		ToyInMemDB db = new ToyInMemDB() {
+			@Override
+			public void set(String name, String value) {
+				if (name.equals("full"))
+					throw new IllegalStateException("store is full");
+				super.set(name, value);
+			}
+		};
+		RespServer server = new RespServer(db, port, null);
+		Thread thread = new Thread(() -> {
+			try {
+				server.run();
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+		});
+		thread.start();
+
+		try (Socket socket = new Socket("localhost", port)) {
+			OutputStream out = socket.getOutputStream();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			out.write("MULTI\r\nSET full 1\r\nSET k 1\r\nEXEC\r\n*1\r\n$4\r\nA\r\nB\r\nGET k\r\nSHUTDOWN\r\n".getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			assertEquals("+OK", in.readLine());
+			assertEquals("-ERR store is full", in.readLine());
+			assertEquals("+OK", in.readLine());
+			assertEquals("+OK", in.readLine());
+			assertEquals("-ERR unknown command 'A  B'", in.readLine());
+			assertEquals("$1", in.readLine());
+			assertEquals("1", in.readLine());
+		}
+		thread.join(10000);
+	}
+
+	/**
+	 * a write the write ahead log fails on is already in the engine - the server stops rather than let
+	 * anyone read it
+	 */
+	@Test
+	void failedLogStopsTheServer() throws Exception {
+		int port;
+		try (ServerSocket probe = new ServerSocket(0)) {
+			port = probe.getLocalPort();
+		}
+		WriteAheadLog wal = new WriteAheadLog(dir.resolve("wal"), 0);
+		RespServer server = new RespServer(new DurableInMemDB(new ToyInMemDB(), wal), port, null);
+		AtomicReference<Throwable> stopped = new AtomicReference<>();
+		Thread thread = new Thread(() -> {
+			try {
+				server.run();
+			} catch (Throwable t) {
+				stopped.set(t);
+			}
+		});
+		thread.start();
+
+		try (Socket socket = new Socket("localhost", port)) {
+			OutputStream out = socket.getOutputStream();
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+			out.write("SET a 1\r\n".getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			assertEquals("+OK", in.readLine());
+
+			wal.close();
+			out.write("SET b 2\r\nGET b\r\n".getBytes(StandardCharsets.UTF_8));
+			out.flush();
+			assertTrue(in.readLine().startsWith("-ERR unable to write to the write ahead log"));
+			assertNull(in.readLine());
+		}
+		thread.join(10000);
+		assertTrue(stopped.get() instanceof UncheckedIOException, String.valueOf(stopped.get()));
+		assertThrows(ConnectException.class, () -> new Socket("localhost", port).close());
+	}
+}
@@ -0,0 +1,190 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * snapshot isolation between sessions, and first committer wins
+ *
+ * @author ronbuchanan
+ */
+class SessionStoreTest {
+	@Test
+	void transactionsAreIsolated() {
+		SessionStore store = new SessionStore();
+		Session a = store.open();
+		Session b = store.open();
+		a.set("x", "1");
+
+		a.begin();
+		a.set("y", "1");
+		a.set("x", "2");
+		assertEquals("NULL", b.get("y"));
+		assertEquals("1", b.get("x"));
+		assertEquals(1, b.size());
+		assertEquals(1, b.count("1"));
+
+		//b's write after a's snapshot is invisible to a
+		b.set("z", "1");
+		assertEquals("NULL", a.get("z"));
+		assertEquals(2, a.size());
+		assertEquals(1, a.count("1"));
+
+		a.begin();
+		a.delete("y");
+		assertEquals("NULL", a.get("y"));
+		a.rollback();
+		assertEquals("1", a.get("y"));
+
+		a.commit();
+		assertEquals("2", b.get("x"));
+		assertEquals("1", b.get("y"));
+		assertEquals("1", a.get("z"));
+		assertEquals(3, b.size());
+		assertEquals(2, b.count("1"));
+		assertEquals(1, b.count("2"));
+	}
+
+	@Test
+	void firstCommitterWins() {
+		SessionStore store = new SessionStore();
+		Session a = store.open();
+		Session b = store.open();
+		a.set("x", "0");
+
+		a.begin();
+		b.begin();
+		a.set("x", "a");
+		a.set("other", "a");
+		b.set("x", "b");
+		b.commit();
+		assertThrows(TransactionConflictException.class, a::commit);
+		assertEquals(0, a.transactionDepth());
+		assertEquals("b", a.get("x"));
+		assertEquals("NULL", a.get("other"));
+
+		//writes to different names, or to names written before the transaction began, don't conflict
+		a.begin();
+		b.begin();
+		a.set("x", "a");
+		b.set("y", "b");
+		b.commit();
+		a.commit();
+		assertEquals("a", b.get("x"));
+		assertEquals("b", a.get("y"));
+	}
+
+	/**
+	 * a name put back to the very same value (the same String) since the transaction began has still been
+	 * written - the value alone can't tell
+	 */
+	@Test
+	void valuePutBackIsAConflict() {
+		SessionStore store = new SessionStore();
+		Session a = store.open();
+		Session b = store.open();
+		String v = "v";
+		b.set("x", v);
+		b.set("y", v);
+
+		a.begin();
+		a.set("x", "a");
+		b.set("x", "w");
+		b.set("x", v);
+		assertThrows(TransactionConflictException.class, a::commit);
+
+		//deleted and set again
+		a.begin();
+		a.set("y", "a");
+		b.delete("y");
+		b.set("y", v);
+		assertThrows(TransactionConflictException.class, a::commit);
+
+		//set and deleted again, so missing both before and after
+		a.begin();
+		a.set("z", "a");
+		b.set("z", v);
+		b.delete("z");
+		assertThrows(TransactionConflictException.class, a::commit);
+		assertEquals("NULL", b.get("z"));
+	}
+
+	/**
+	 * once the tombstones from before a transaction began have been dropped, a name it found missing may
+	 * have been written since - writing one has to count as a conflict
+	 */
+	@Test
+	void droppedTombstonesConflict() {
+		SessionStore store = new SessionStore();
+		Session a = store.open();
+		Session b = store.open();
+		a.begin();
+		a.set("missing", "a");
+		for (int i=0; i<5000; i++) {
+			b.set("name" + i, "v");
+			b.delete("name" + i);
+		}
+		assertThrows(TransactionConflictException.class, a::commit);
+
+		//a transaction that began after them is fine
+		a.begin();
+		a.set("missing", "a");
+		a.set("name0", "a");
+		a.commit();
+		assertEquals("a", b.get("missing"));
+		assertEquals("a", b.get("name0"));
+	}
+
+	/**
+	 * a name's own tombstone from before the transaction began, dropped while it runs, isn't a write since
+	 * (dropping later ones is, see droppedTombstonesConflict)
+	 */
+	@Test
+	void droppedOlderTombstonesDontConflict() {
+		SessionStore store = new SessionStore();
+		Session a = store.open();
+		Session b = store.open();
+		b.set("x", "v");
+		b.delete("x");
+		for (int i=1; i<1024; i++) {
+			b.set("name" + i, "v");
+			b.delete("name" + i);
+		}
+
+		//one more tombstone drops x's, which is older than the transaction
+		a.begin();
+		a.set("x", "a");
+		b.set("other", "v");
+		b.delete("other");
+		a.commit();
+		assertEquals("a", b.get("x"));
+	}
+
+	/**
+	 * a delete and a stored value that reads like the delete marker have to stay apart, whichever comes last
+	 */
+	@Test
+	void deleteIsNotAValue() {
+		SessionStore store = new SessionStore();
+		Session a = store.open();
+		Session b = store.open();
+
+		a.begin();
+		a.set("x", "<deleted>");
+		a.delete("x");
+		a.commit();
+		assertEquals("NULL", b.get("x"));
+		assertEquals(0, b.size());
+
+		b.set("y", "1");
+		a.begin();
+		a.delete("y");
+		a.set("y", "<deleted>");
+		a.commit();
+		assertEquals("<deleted>", b.get("y"));
+		assertEquals(1, b.count("<deleted>"));
+		assertEquals(0, b.count("1"));
+	}
+}
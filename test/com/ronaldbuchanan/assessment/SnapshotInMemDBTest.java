@@ -0,0 +1,44 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * the copy-on-write engine against the reference model
+ *
+ * @author ronbuchanan
+ */
+class SnapshotInMemDBTest {
+	@Test
+	void matchesTheModel() {
+		for (long seed=1; seed<=5; seed++)
+			TransactionModel.run(new SnapshotInMemDB(), new Random(seed), 12, 20000);
+	}
+
+	/**
+	 * rolling back restores the version from begin() as it was, however much was written since
+	 */
+	@Test
+	void rollbackRestoresTheVersion() {
+		SnapshotInMemDB db = new SnapshotInMemDB();
+		db.set("a", "1");
+		db.begin();
+		for (int i=0; i<10000; i++)
+			db.set("name" + i, "v" + (i%3));
+		db.delete("a");
+		db.begin();
+		db.set("a", "2");
+		assertEquals(true, db.rollback());
+		assertEquals("NULL", db.get("a"));
+		assertEquals(10000, db.size());
+		assertEquals(true, db.rollback());
+		assertEquals("1", db.get("a"));
+		assertEquals(1, db.size());
+		assertEquals(0, db.count("v0"));
+		assertEquals(1, db.distinctValues());
+		assertEquals(false, db.rollback());
+	}
+}
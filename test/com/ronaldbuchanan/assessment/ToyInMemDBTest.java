@@ -0,0 +1,119 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * the undo log engine against the reference model, and the undo records it keeps per transaction
+ *
+ * @author ronbuchanan
+ */
+class ToyInMemDBTest {
+	@Test
+	void matchesTheModel() {
+		for (long seed=1; seed<=5; seed++) {
+			TransactionModel.run(new ToyInMemDB(), new Random(seed), 12, 20000);
+			TransactionModel.run(new ToyInMemDB(true), new Random(seed), 12, 20000);
+			TransactionModel.run(new ToyInMemDB(false, new RadixKeyStore()), new Random(seed), 12, 20000);
+		}
+	}
+
+	/**
+	 * a name written over and over in one transaction keeps a single undo record, and rolling back still
+	 * restores what it held when the transaction began
+	 */
+	@Test
+	void writesToANameCoalesce() {
+		ToyInMemDB db = new ToyInMemDB();
+		db.set("a", "0");
+		db.begin();
+		for (int i=0; i<1000; i++)
+			db.set("a", "v" + i);
+		db.delete("a");
+		db.set("b", "1");
+		db.delete("b");
+		assertEquals(2, db.undoRecords());
+		assertEquals(2, db.transactionWrites());
+
+		//the same names again one level down get records of their own
+		db.begin();
+		db.set("a", "x");
+		db.delete("a");
+		db.set("a", "y");
+		assertEquals(3, db.undoRecords());
+		assertEquals(1, db.transactionWrites());
+		assertEquals(true, db.rollback());
+		assertEquals("NULL", db.get("a"));
+		assertEquals(2, db.undoRecords());
+
+		assertEquals(true, db.rollback());
+		assertEquals("0", db.get("a"));
+		assertEquals("NULL", db.get("b"));
+		assertEquals(1, db.size());
+		assertEquals(1, db.count("0"));
+		assertEquals(0, db.undoRecords());
+	}
+
+	/**
+	 * committing drops every level's records
+	 */
+	@Test
+	void commitDropsTheLog() {
+		ToyInMemDB db = new ToyInMemDB();
+		db.begin();
+		db.set("a", "1");
+		db.begin();
+		db.set("a", "2");
+		db.set("b", "2");
+		assertEquals(3, db.undoRecords());
+		db.commit();
+		assertEquals(0, db.undoRecords());
+		assertEquals(0, db.transactionDepth());
+		assertEquals(false, db.rollback());
+		assertEquals("2", db.get("a"));
+		assertEquals(2, db.count("2"));
+	}
+
+	/**
+	 * SCAN and PREFIX read the ordered store as it is, so inside a transaction they list its uncommitted
+	 * writes, and after a rollback they don't
+	 */
+	@Test
+	void scansSeeTheTransactionsWrites() {
+		ToyInMemDB db = new ToyInMemDB(false, new RadixKeyStore());
+		db.set("user:1", "a");
+		db.set("user:3", "a");
+		db.set("other", "a");
+
+		db.begin();
+		db.set("user:2", "b");
+		db.delete("user:3");
+		db.begin();
+		db.set("user:4", "c");
+		assertEquals(List.of("user:1", "user:2", "user:4"), names(db.prefix("user:")));
+		assertEquals(List.of("user:2", "user:4"), names(db.scan("user:2", "user:5")));
+
+		assertEquals(true, db.rollback());
+		assertEquals(List.of("user:1", "user:2"), names(db.prefix("user:")));
+		assertEquals(true, db.rollback());
+		assertEquals(List.of("user:1", "user:3"), names(db.prefix("user:")));
+		assertEquals(List.of("other", "user:1", "user:3"), names(db.scan("a", "z")));
+
+		db.begin();
+		db.set("user:0", "d");
+		db.commit();
+		assertEquals(List.of("user:0", "user:1"), names(db.scan("user:0", "user:2")));
+	}
+
+	private static List<String> names(Iterator<String> iterator) {
+		ArrayList<String> names = new ArrayList<>();
+		iterator.forEachRemaining(names::add);
+		return names;
+	}
+}
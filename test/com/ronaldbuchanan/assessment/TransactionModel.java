@@ -0,0 +1,76 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * a reference model of the commands - a HashMap, copied at every BEGIN - to run an engine against
+ *
+ * the random commands favour a few names, so the same name is written at several levels of the nested
+ * transactions and often set and then deleted (or deleted and set again) within one
+ *
+ * @author ronbuchanan
+ */
+final class TransactionModel {
+	private HashMap<String,String> database = new HashMap<>();
+	private final ArrayDeque<HashMap<String,String>> levels = new ArrayDeque<>();
+
+	/**
+	 * run random commands against an engine and the model, checking everything the engine reports after
+	 * each of them
+	 * @param db - an empty engine
+	 * @param random
+	 * @param names - how many names to pick from
+	 * @param operations
+	 */
+	static void run(InMemDB db, Random random, int names, int operations) {
+		TransactionModel model = new TransactionModel();
+		for (int op=0; op<operations; op++) {
+			String name = "name" + random.nextInt(names);
+			String value = "value" + random.nextInt(4);
+			int kind = random.nextInt(20);
+			if (kind<2) {
+				db.begin();
+				model.levels.push(new HashMap<>(model.database));
+			} else if (kind<4) {
+				assertEquals(!model.levels.isEmpty(), db.rollback());
+				if (!model.levels.isEmpty())
+					model.database = model.levels.pop();
+			} else if (kind<5) {
+				db.commit();
+				model.levels.clear();
+			} else if (kind<11) {
+				db.set(name, value);
+				model.database.put(name, value);
+			} else {
+				db.delete(name);
+				model.database.remove(name);
+			}
+			model.check(db, names);
+		}
+
+		//unwind whatever is left, level by level
+		while (!model.levels.isEmpty()) {
+			assertEquals(true, db.rollback());
+			model.database = model.levels.pop();
+			model.check(db, names);
+		}
+	}
+
+	private void check(InMemDB db, int names) {
+		assertEquals(levels.size(), db.transactionDepth());
+		assertEquals(database.size(), db.size());
+		for (int i=0; i<names; i++)
+			assertEquals(database.get("name" + i), db.lookup("name" + i), "name" + i);
+
+		HashMap<String,Integer> counts = new HashMap<>();
+		for (String value : database.values())
+			counts.merge(value, 1, Integer::sum);
+		assertEquals(counts.size(), db.distinctValues());
+		for (int i=0; i<4; i++)
+			assertEquals(counts.getOrDefault("value" + i, 0).intValue(), db.count("value" + i), "value" + i);
+	}
+}
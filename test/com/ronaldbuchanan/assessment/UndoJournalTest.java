@@ -0,0 +1,129 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * transactions over a mapped store, which writes in place - the journal has to undo whatever was
+ * outstanding when the process stopped
+ *
+ * @author ronbuchanan
+ */
+class UndoJournalTest {
+	@TempDir
+	Path dir;
+
+	/**
+	 * the process stops without committing or rolling back (the mapped files and the journal are left as a
+	 * kill would leave them)
+	 */
+	@Test
+	void uncommittedWritesAreUndoneOnReopen() throws Exception {
+		try (MappedKeyStore store = MappedKeyStore.open(dir, false); UndoJournal journal = journal()) {
+			ToyInMemDB db = new ToyInMemDB(false, store, journal);
+			db.set("a", "1");
+			db.set("d", "4");
+			db.begin();
+			db.set("a", "2");
+			db.begin();
+			db.set("a", "3");
+			db.set("b", "3");
+			db.rollback();
+			db.set("c", "3");
+			db.delete("d");
+			db.set("a", "5");
+		}
+
+		try (MappedKeyStore store = MappedKeyStore.open(dir, false); UndoJournal journal = journal()) {
+			journal.recover(store);
+			assertEquals("1", store.get("a"));
+			assertNull(store.get("b"));
+			assertNull(store.get("c"));
+			assertEquals("4", store.get("d"));
+			assertEquals(2, store.size());
+		}
+	}
+
+	@Test
+	void committedWritesStay() throws Exception {
+		try (MappedKeyStore store = MappedKeyStore.open(dir, false); UndoJournal journal = journal()) {
+			ToyInMemDB db = new ToyInMemDB(false, store, journal);
+			db.set("a", "1");
+			db.begin();
+			db.set("a", "2");
+			db.set("b", "2");
+			db.commit();
+			db.begin();
+			db.set("c", "3");
+			db.rollback();
+		}
+
+		try (MappedKeyStore store = MappedKeyStore.open(dir, false); UndoJournal journal = journal()) {
+			assertEquals(0, journal.recover(store));
+			assertEquals("2", store.get("a"));
+			assertEquals("2", store.get("b"));
+			assertNull(store.get("c"));
+		}
+	}
+
+	/**
+	 * only the first pre-image of a name since the outermost BEGIN is journalled, and writes that change
+	 * nothing aren't journalled at all
+	 */
+	@Test
+	void onlyFirstPreImagesAreJournalled() throws Exception {
+		try (MappedKeyStore store = MappedKeyStore.open(dir, false); UndoJournal journal = journal()) {
+			ToyInMemDB db = new ToyInMemDB(false, store, journal);
+			db.set("a", "1");
+			db.set("b", "1");
+			db.begin();
+			db.set("b", "1");
+			for (int i=0; i<1000; i++)
+				db.set("a", Integer.toString(i));
+			db.begin();
+			db.set("a", "x");
+			db.delete("a");
+			db.delete("c");
+		}
+
+		try (MappedKeyStore store = MappedKeyStore.open(dir, false); UndoJournal journal = journal()) {
+			assertEquals(1, journal.recover(store));
+			assertEquals("1", store.get("a"));
+			assertEquals("1", store.get("b"));
+		}
+	}
+
+	/**
+	 * the journal is read in chunks - records straddling them, and records bigger than one, come back whole
+	 */
+	@Test
+	void largeJournalsAreReadInChunks() throws Exception {
+		String big = "v".repeat(200_000);
+		try (MappedKeyStore store = MappedKeyStore.open(dir, false); UndoJournal journal = journal()) {
+			ToyInMemDB db = new ToyInMemDB(false, store, journal);
+			for (int i=0; i<100; i++)
+				db.set("name" + i, i + "v".repeat(3000));
+			db.set("big", big);
+			db.begin();
+			for (int i=0; i<100; i++)
+				db.delete("name" + i);
+			db.set("big", "small");
+		}
+
+		try (MappedKeyStore store = MappedKeyStore.open(dir, false); UndoJournal journal = journal()) {
+			assertEquals(101, journal.recover(store));
+			for (int i=0; i<100; i++)
+				assertEquals(i + "v".repeat(3000), store.get("name" + i));
+			assertEquals(big, store.get("big"));
+		}
+	}
+
+	private UndoJournal journal() throws Exception {
+		return new UndoJournal(dir.resolve("undo"), false);
+	}
+}
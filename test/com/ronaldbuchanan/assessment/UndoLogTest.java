@@ -0,0 +1,103 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * the undo log against a model of its levels - a list of records per transaction, one per name - with
+ * enough names to grow the arrays and rehash the index, the same names written at several levels and
+ * levels ended or the whole log cleared at random
+ *
+ * @author ronbuchanan
+ */
+class UndoLogTest {
+	@Test
+	void matchesTheModel() {
+		for (long seed=1; seed<=5; seed++) {
+			run(new Random(seed), 8, 20000);
+			run(new Random(seed), 2000, 50000);
+		}
+	}
+
+	/**
+	 * names with the same hash code
+	 */
+	@Test
+	void collidingNames() {
+		UndoLog log = new UndoLog();
+		List<List<String[]>> model = new ArrayList<>();
+		String[] names = {"Aa", "BB", "AaAa", "AaBB", "BBAa", "BBBB"};
+		Random random = new Random(1);
+		for (int op=0; op<5000; op++) {
+			if (model.isEmpty() || random.nextInt(10)==0)
+				begin(log, model);
+			else if (random.nextInt(10)==0)
+				end(log, model);
+			else
+				record(log, model, names[random.nextInt(names.length)], "old" + op, "new" + op);
+			check(log, model);
+		}
+	}
+
+	private static void run(Random random, int names, int operations) {
+		UndoLog log = new UndoLog();
+		List<List<String[]>> model = new ArrayList<>();
+		for (int op=0; op<operations; op++) {
+			int kind = random.nextInt(100);
+			if (model.isEmpty() || kind<3) {
+				begin(log, model);
+			} else if (kind<6) {
+				end(log, model);
+			} else if (random.nextInt(operations/10)==0) {
+				log.clear(); //rarely, so big logs release their arrays
+				model.clear();
+			} else {
+				String name = "name" + random.nextInt(names);
+				record(log, model, name, random.nextBoolean() ? null : "old" + op, random.nextBoolean() ? null : "new" + op);
+			}
+			check(log, model);
+		}
+	}
+
+	private static void begin(UndoLog log, List<List<String[]>> model) {
+		log.begin();
+		model.add(new ArrayList<>());
+	}
+
+	private static void end(UndoLog log, List<List<String[]>> model) {
+		log.end();
+		model.remove(model.size()-1);
+	}
+
+	private static void record(UndoLog log, List<List<String[]>> model, String name, String oldValue, String newValue) {
+		log.record(name, oldValue, newValue);
+		List<String[]> level = model.get(model.size()-1);
+		for (String[] record : level) {
+			if (record[0].equals(name)) {
+				record[2] = newValue;
+				return;
+			}
+		}
+		level.add(new String[] {name, oldValue, newValue});
+	}
+
+	private static void check(UndoLog log, List<List<String[]>> model) {
+		assertEquals(model.size(), log.depth());
+		int record = 0;
+		for (int level=0; level<model.size(); level++) {
+			assertEquals(record, log.levelStart(level+1), "level " + (level+1));
+			for (String[] expected : model.get(level)) {
+				assertEquals(expected[0], log.name(record));
+				assertEquals(expected[1], log.oldValue(record), expected[0]);
+				assertEquals(expected[2], log.newValue(record), expected[0]);
+				record++;
+			}
+		}
+		assertEquals(record, log.size());
+	}
+}
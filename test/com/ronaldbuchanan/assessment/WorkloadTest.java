@@ -0,0 +1,142 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * the zipfian generator's range and skew, and the mix of commands each workload writes
+ *
+ * @author ronbuchanan
+ */
+class WorkloadTest {
+	private static final int RECORDS = 1000;
+	private static final int OPERATIONS = 100000;
+
+	@Test
+	void zipfianStaysInRangeAndFavoursLowRanks() {
+		Workload.Zipfian zipfian = new Workload.Zipfian(RECORDS);
+		Random random = new Random(1);
+		int[] hits = new int[RECORDS];
+		for (int i=0; i<OPERATIONS; i++) {
+			long rank = zipfian.next(random);
+			assertTrue(rank>=0 && rank<RECORDS, "rank " + rank);
+			hits[(int) rank]++;
+		}
+		assertTrue(hits[0]>hits[1] && hits[1]>hits[10] && hits[10]>hits[100], "not skewed");
+		//with theta 0.99 the top rank takes around an eighth of the picks over 1000 items
+		assertTrue(hits[0]>OPERATIONS/12 && hits[0]<OPERATIONS/6, "rank 0 had " + hits[0]);
+
+		//growing extends the range without starting over
+		zipfian.grow(RECORDS*2);
+		long highest = 0;
+		for (int i=0; i<OPERATIONS; i++) {
+			long rank = zipfian.next(random);
+			assertTrue(rank>=0 && rank<RECORDS*2, "rank " + rank);
+			highest = Math.max(highest, rank);
+		}
+		assertTrue(highest>=RECORDS, "never picked a new item");
+	}
+
+	@Test
+	void mixesMatchYcsb() {
+		assertMix('a', 0.5, 0.5, 0, 0);
+		assertMix('b', 0.95, 0.05, 0, 0);
+		assertMix('c', 1, 0, 0, 0);
+		assertMix('d', 0.95, 0, 0.05, 0);
+		assertMix('e', 0, 0, 0.05, 0.95);
+		assertMix('t', 0.5, 0.5, 0, 0);
+
+		//f's read-modify-writes are a GET then a SET of the same name
+		List<String> trace = run('f', 0);
+		int pairs = 0;
+		for (int i=1; i<trace.size(); i++) {
+			if (trace.get(i).startsWith("SET ")) {
+				assertEquals("GET " + trace.get(i).split(" ")[1], trace.get(i-1));
+				pairs++;
+			}
+		}
+		assertEquals(0.5, (double) pairs/OPERATIONS, 0.01);
+	}
+
+	/**
+	 * checks the share of each kind of operation, that inserts add the next record, and that everything else
+	 * picks a record that has been inserted (a SCAN may run past the last one)
+	 */
+	private static void assertMix(char kind, double read, double update, double insert, double scan) {
+		HashMap<String,Integer> counts = new HashMap<>();
+		int inserted = RECORDS;
+		for (String command : run(kind, 0)) {
+			String[] tokens = command.split(" ");
+			String verb = tokens[0];
+			if (verb.equals("BEGIN") || verb.equals("COMMIT") || verb.equals("ROLLBACK"))
+				continue;
+			int record = Integer.parseInt(tokens[1].substring(4));
+			if (verb.equals("SET") && record==inserted) {
+				verb = "INSERT";
+				inserted++;
+			}
+			assertTrue(record<inserted, command);
+			counts.merge(verb, 1, Integer::sum);
+		}
+		assertEquals(read, share(counts, "GET"), 0.01, kind + " reads");
+		assertEquals(update, share(counts, "SET"), 0.01, kind + " updates");
+		assertEquals(insert, share(counts, "INSERT"), 0.01, kind + " inserts");
+		assertEquals(scan, share(counts, "SCAN"), 0.01, kind + " scans");
+	}
+
+	private static double share(HashMap<String,Integer> counts, String verb) {
+		return (double) counts.getOrDefault(verb, 0)/OPERATIONS;
+	}
+
+	/**
+	 * t puts every operation in a transaction, and the others a percentage of them
+	 */
+	@Test
+	void transactionsWrapOperations() {
+		List<String> trace = run('t', 0);
+		int depth = 0;
+		for (String command : trace) {
+			if (command.equals("BEGIN"))
+				depth++;
+			else if (command.equals("COMMIT"))
+				depth = 0;
+			else if (command.equals("ROLLBACK"))
+				depth--;
+			else
+				assertTrue(depth>0, command + " outside a transaction");
+			assertTrue(depth>=0 && depth<=2, "depth " + depth);
+		}
+		assertEquals(0, depth);
+
+		int begins = 0;
+		for (String command : run('b', 10))
+			if (command.equals("BEGIN"))
+				begins++;
+		assertTrue(begins>0 && begins<OPERATIONS/10, begins + " BEGINs");
+	}
+
+	@Test
+	void sameSeedSameTrace() {
+		assertEquals(run('a', 5), run('a', 5));
+		Workload workload = new Workload('c', RECORDS, 10, 0, 1);
+		ArrayList<String> load = new ArrayList<>();
+		workload.load(load::add);
+		assertEquals(RECORDS, load.size());
+		assertEquals("SET user0000000000 ", load.get(0).substring(0, 19));
+		assertThrows(IllegalArgumentException.class, () -> new Workload('g', RECORDS, 10, 0, 1));
+	}
+
+	private static List<String> run(char kind, int transactionPercent) {
+		ArrayList<String> trace = new ArrayList<>();
+		new Workload(kind, RECORDS, 10, transactionPercent, 42).run(OPERATIONS, trace::add);
+		return trace;
+	}
+}
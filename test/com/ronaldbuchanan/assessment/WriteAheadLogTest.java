@@ -0,0 +1,202 @@
+package com.ronaldbuchanan.assessment;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * the write ahead log
+ *
+ * @author ronbuchanan
+ */
+class WriteAheadLogTest {
+	@TempDir
+	Path dir;
+
+	/**
+	 * closing while the background flusher is busy has to keep every commit appended before it
+	 */
+	@Test
+	void closeKeepsEveryCommitWithAFlushInterval() throws Exception {
+		for (int round=0; round<50; round++) {
+			Path path = dir.resolve("wal" + round);
+			try (WriteAheadLog wal = new WriteAheadLog(path, 1)) {
+				InMemDB db = new DurableInMemDB(new ToyInMemDB(), wal);
+				for (int i=0; i<2000; i++)
+					db.set("name" + i, "value" + i);
+			}
+
+			try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+				InMemDB db = new ToyInMemDB();
+				assertEquals(2000, wal.replay(db, 0));
+				assertEquals(2000, db.size());
+			}
+		}
+	}
+
+	@Test
+	void replaysCommitsAndRollsBackDiscardedWrites() throws Exception {
+		Path path = dir.resolve("wal");
+		try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			InMemDB db = new DurableInMemDB(new ToyInMemDB(), wal);
+			db.set("a", "1");
+			db.begin();
+			db.set("b", "2");
+			db.begin();
+			db.set("c", "3");
+			db.rollback();
+			db.delete("a");
+			db.commit();
+		}
+
+		try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			InMemDB db = new ToyInMemDB();
+			assertEquals(2, wal.replay(db, 0));
+			assertEquals("NULL", db.get("a"));
+			assertEquals("2", db.get("b"));
+			assertEquals("NULL", db.get("c"));
+		}
+	}
+
+	/**
+	 * each snapshot starts a new segment and deletes the ones before it, so the log doesn't grow without
+	 * bound, and the snapshot plus what's left of the log still add up to everything committed
+	 */
+	@Test
+	void snapshotsDeleteTheSegmentsTheyCover() throws Exception {
+		Path path = dir.resolve("wal");
+		Path save = dir.resolve("snapshot");
+		try (WriteAheadLog wal = new WriteAheadLog(path, 0); Snapshotter snapshots = new Snapshotter(save, wal, 0)) {
+			InMemDB db = new DurableInMemDB(new ToyInMemDB(), wal);
+			for (int round=0; round<5; round++) {
+				for (int i=0; i<1000; i++)
+					db.set("name" + i, "value" + round);
+				snapshots.snapshot(db);
+				assertEquals(1, segments());
+			}
+			db.set("name0", "after");
+			db.delete("name1");
+		}
+
+		try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			InMemDB db = new ToyInMemDB();
+			assertEquals(2, wal.replay(db, SnapshotFile.load(save, db)));
+			assertEquals("after", db.get("name0"));
+			assertEquals("NULL", db.get("name1"));
+			assertEquals("value4", db.get("name2"));
+			assertEquals(999, db.size());
+
+			//without the snapshot the commits it covered are gone
+			assertThrows(IOException.class, () -> wal.replay(new ToyInMemDB(), 0));
+		}
+	}
+
+	/**
+	 * a background snapshot cuts the log back too, and the commits made while it was being written stay in it
+	 */
+	@Test
+	void backgroundSnapshotsDeleteTheSegmentsTheyCover() throws Exception {
+		Path path = dir.resolve("wal");
+		Path save = dir.resolve("snapshot");
+		try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			InMemDB db = new DurableInMemDB(new ToyInMemDB(), wal);
+			for (int i=0; i<1000; i++)
+				db.set("name" + i, "value");
+			//closing waits for the snapshot to finish cutting the log back
+			try (Snapshotter snapshots = new Snapshotter(save, wal, 1)) {
+				while (!Files.exists(save)) {
+					snapshots.poll(db);
+					db.set("last", "value");
+					Thread.sleep(10);
+				}
+			}
+			db.set("last", "after");
+			assertEquals(1, segments());
+		}
+
+		try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			InMemDB db = new ToyInMemDB();
+			wal.replay(db, SnapshotFile.load(save, db));
+			assertEquals(1001, db.size());
+			assertEquals("after", db.get("last"));
+		}
+	}
+
+	/**
+	 * segments that weren't deleted (the process died before the snapshot was written) are replayed in order,
+	 * and a commit torn at the end of the last one is cut off
+	 */
+	@Test
+	void replaysAcrossSegments() throws Exception {
+		Path path = dir.resolve("wal");
+		long rotated;
+		try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			InMemDB db = new DurableInMemDB(new ToyInMemDB(), wal);
+			db.set("a", "1");
+			rotated = wal.rotate();
+			assertEquals(rotated, wal.rotate());
+			db.set("a", "2");
+			db.set("b", "2");
+			wal.rotate();
+			db.set("c", "3");
+		}
+		assertEquals(3, segments());
+		try (Stream<Path> files = Files.list(dir); 
+				FileChannel last = FileChannel.open(files.sorted().reduce((a, b) -> b).get(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+			last.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 100, 1, 2, 3}));
+		}
+
+		try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			InMemDB db = new ToyInMemDB();
+			assertEquals(4, wal.replay(db, 0));
+			assertEquals("2", db.get("a"));
+			assertEquals("3", db.get("c"));
+			db = new DurableInMemDB(db, wal);
+			db.set("d", "4");
+		}
+		try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			InMemDB db = new ToyInMemDB();
+			assertEquals(4, wal.replay(db, rotated));
+			assertEquals("2", db.get("a"));
+			assertEquals("4", db.get("d"));
+			assertEquals(4, db.size());
+		}
+	}
+
+	/**
+	 * a log from before there were segments becomes the first one
+	 */
+	@Test
+	void opensAnUnsegmentedLog() throws Exception {
+		Path path = dir.resolve("wal");
+		try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			new DurableInMemDB(new ToyInMemDB(), wal).set("a", "1");
+		}
+		try (Stream<Path> files = Files.list(dir)) {
+			Files.move(files.findFirst().get(), path);
+		}
+		try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+			InMemDB db = new ToyInMemDB();
+			assertEquals(1, wal.replay(db, 0));
+			assertEquals("1", db.get("a"));
+		}
+		assertEquals(false, Files.exists(path));
+		assertEquals(1, segments());
+	}
+
+	private long segments() throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.filter(file -> file.getFileName().toString().startsWith("wal.")).count();
+		}
+	}
+}